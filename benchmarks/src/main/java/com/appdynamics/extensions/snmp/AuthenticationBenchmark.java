@@ -0,0 +1,92 @@
+package com.appdynamics.extensions.snmp;
+
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.snmp4j.security.AuthenticationProtocol;
+import org.snmp4j.security.ByteArrayWindow;
+import org.snmp4j.security.SecurityProtocols;
+import org.snmp4j.smi.OID;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Computing and verifying the HMAC of a v3 message, as the USM does for every authenticated trap sent and received.
+ * The protocol instance is shared, the contended benchmarks run it from several threads like the sender pool does.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AuthenticationBenchmark {
+
+    //where the msgAuthenticationParameters of a v3 trap are, after the header and engine ID
+    private static final int DIGEST_OFFSET = 64;
+
+    @Param({"MD5", "SHA"})
+    String authProtocol;
+
+    @Param({"300", "800", "1500"})
+    int messageSize;
+
+    private AuthenticationProtocol protocol;
+    private byte[] key;
+
+    @State(Scope.Thread)
+    public static class Message {
+
+        byte[] message;
+        ByteArrayWindow digest;
+
+        @Setup
+        public void setUp(AuthenticationBenchmark benchmark) {
+            message = BenchmarkData.message(benchmark.messageSize);
+            digest = new ByteArrayWindow(message, DIGEST_OFFSET, AuthenticationProtocol.MESSAGE_AUTHENTICATION_CODE_LENGTH);
+            if (!benchmark.protocol.authenticate(benchmark.key, message, 0, message.length, digest)) {
+                throw new IllegalStateException("Unable to authenticate the message");
+            }
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        SecurityProtocols securityProtocols = BenchmarkData.securityProtocols();
+        OID id = BenchmarkData.protocolId(authProtocol);
+        protocol = securityProtocols.getAuthenticationProtocol(id);
+        key = securityProtocols.passwordToKey(id, BenchmarkData.AUTH_PASSWORD, BenchmarkData.ENGINE_ID);
+    }
+
+    @Benchmark
+    public boolean authenticate(Message message) {
+        return protocol.authenticate(key, message.message, 0, message.message.length, message.digest);
+    }
+
+    @Benchmark
+    @Threads(BenchmarkData.CONTENDED_THREADS)
+    public boolean authenticateContended(Message message) {
+        return authenticate(message);
+    }
+
+    @Benchmark
+    public boolean isAuthentic(Message message) {
+        return protocol.isAuthentic(key, message.message, 0, message.message.length, message.digest);
+    }
+
+    @Benchmark
+    @Threads(BenchmarkData.CONTENDED_THREADS)
+    public boolean isAuthenticContended(Message message) {
+        return isAuthentic(message);
+    }
+}
@@ -0,0 +1,181 @@
+package com.appdynamics.extensions.snmp;
+
+
+import com.appdynamics.extensions.snmp.config.Configuration;
+import com.appdynamics.extensions.snmp.config.ControllerConfig;
+import com.appdynamics.extensions.snmp.config.SnmpV3Configuration;
+import org.snmp4j.security.AuthMD5;
+import org.snmp4j.security.AuthSHA;
+import org.snmp4j.security.Priv3DES;
+import org.snmp4j.security.PrivAES128;
+import org.snmp4j.security.PrivAES192;
+import org.snmp4j.security.PrivAES256;
+import org.snmp4j.security.PrivDES;
+import org.snmp4j.security.SecurityProtocols;
+import org.snmp4j.smi.OID;
+import org.snmp4j.smi.OctetString;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Argument vectors as the controller passes them to the custom action, and the configuration of the benchmarks.
+ * Enrichment from the controller is off, so building trap data never leaves the JVM.
+ */
+class BenchmarkData {
+
+    /**
+     * Threads of the contended benchmarks, all sharing the protocol instances as the sender threads do.
+     */
+    static final int CONTENDED_THREADS = 4;
+
+    static final OctetString AUTH_PASSWORD = new OctetString("authPassword");
+    static final OctetString PRIV_PASSWORD = new OctetString("privPassword");
+    static final byte[] ENGINE_ID = OctetString.fromHexString("80:00:1f:88:80:e9:63:00:00:d6:1f:f4:49").getValue();
+
+    private static final Map<String, OID> protocols = new HashMap<String, OID>();
+
+    static {
+        protocols.put("MD5", AuthMD5.ID);
+        protocols.put("SHA", AuthSHA.ID);
+        protocols.put("DES", PrivDES.ID);
+        protocols.put("3DES", Priv3DES.ID);
+        protocols.put("AES128", PrivAES128.ID);
+        protocols.put("AES192", PrivAES192.ID);
+        protocols.put("AES256", PrivAES256.ID);
+    }
+
+    /**
+     * @param name as in the snmpV3Configuration of config.yaml, e.g. SHA or AES128
+     * @return the OID of the security protocol
+     */
+    static OID protocolId(String name) {
+        OID id = protocols.get(name);
+        if (id == null) {
+            throw new IllegalArgumentException("Unknown security protocol " + name);
+        }
+        return id;
+    }
+
+    static SecurityProtocols securityProtocols() {
+        SecurityProtocols securityProtocols = SecurityProtocols.getInstance();
+        securityProtocols.addDefaultProtocols();
+        //only registered by default when the SNMP4J extensibility is enabled
+        if (securityProtocols.getPrivacyProtocol(Priv3DES.ID) == null) {
+            securityProtocols.addPrivacyProtocol(new Priv3DES());
+        }
+        return securityProtocols;
+    }
+
+    /**
+     * @return a message of the given size with the bytes a BER encoded trap would have, roughly
+     */
+    static byte[] message(int size) {
+        byte[] message = new byte[size];
+        for (int i = 0; i < size; i++) {
+            message[i] = (byte) (i * 31 + 7);
+        }
+        return message;
+    }
+
+    static Configuration createConfig(int snmpVersion) {
+        Configuration config = new Configuration();
+        config.setSnmpVersion(snmpVersion);
+        config.setCommunity("public");
+        config.setSenderHost("127.0.0.1");
+        config.setReasonCodeTextString("APM");
+        config.setReasonCodeMachineAgentDown("999");
+        config.setReasonCodeKeyWordMachineAgentDown("Machine Agent down");
+        config.setFetchMachineInfoFromApi(false);
+        config.setController(new ControllerConfig());
+        SnmpV3Configuration v3 = new SnmpV3Configuration();
+        v3.setSecurityLevel(Integer.parseInt(SNMPSender.AUTH_PRIV));
+        v3.setUsername("benchmark");
+        v3.setAuthProtocol("SHA");
+        v3.setPassword("authPassword");
+        v3.setPrivProtocol("AES128");
+        v3.setPrivProtocolPassword("privPassword");
+        config.setSnmpV3Configuration(v3);
+        return config;
+    }
+
+    /**
+     * @param evaluationEntities number of nodes violating the health rule, each with one triggered condition
+     */
+    static String[] healthRuleViolationArgs(int evaluationEntities) {
+        return healthRuleViolationArgs(evaluationEntities, "3");
+    }
+
+    static String[] healthRuleViolationArgs(int evaluationEntities, String incidentId) {
+        List<String> args = new ArrayList<String>();
+        args.add("\"ECommerce\""); //appname
+        args.add("\"4\""); //appID
+        args.add("\"Wed Apr 30 09:42:55 PDT 2014\""); //pvn alert time
+        args.add("\"1\""); //priority
+        args.add("\"ERROR\""); //severity
+        args.add("\"SnmpTrapAction\""); //tag
+        args.add("\"CPU utilization is too high\""); //health rule name
+        args.add("\"24\""); //health rule id
+        args.add("\"1\""); //pvn time period in min
+        args.add("\"APPLICATION_COMPONENT_NODE\""); //affected entity type
+        args.add("\"Node1\""); //affected entity name
+        args.add("\"8\""); //affected entity id
+        args.add("\"" + evaluationEntities + "\""); //number of eval entities
+        for (int i = 1; i <= evaluationEntities; i++) {
+            args.add("\"APPLICATION_COMPONENT_NODE\""); //eval entity type
+            args.add("\"Node" + i + "\""); //eval entity name
+            args.add("\"" + (7 + i) + "\""); //eval entity id
+            args.add("\"1\""); //number of triggered cond per eval entity
+            args.add("\"APPLICATION_COMPONENT_NODE\""); //scope type
+            args.add("\"Node" + i + "\""); //scope name
+            args.add("\"" + (7 + i) + "\""); //scope id
+            args.add("\"Hardware Resources|CPU|%Busy Condition\""); //condition name
+            args.add("\"113\""); //condition id
+            args.add("\"GREATER_THAN\""); //operator
+            args.add("\"ABSOLUTE\""); //condition unit type
+            args.add("\"90\""); //threshold value
+            args.add("\"97.0\""); //observed value
+        }
+        args.add("\"CPU utilization is too high triggered at Wed Apr 30 09:42:55 PDT 2014. This policy was violated because the "
+                + "following conditions were met for the Node1 Node for the last 1 minute(s): For Evaluation Entity: Node1 Node - "
+                + "Hardware Resources|CPU|%Busy Condition is greater than 90. Observed value = 97.0\""); //summary message
+        args.add("\"" + incidentId + "\""); //incident id
+        args.add("\"http://controller:8090/controller/#location=APP_INCIDENT_DETAIL&incident=\""); //deep link url
+        args.add("\"POLICY_OPEN_CRITICAL\""); //event type
+        args.add("customer1"); //account name
+        args.add("12sab23asl23"); //account id
+        return args.toArray(new String[args.size()]);
+    }
+
+    static String[] otherEventArgs() {
+        return otherEventArgs("24");
+    }
+
+    static String[] otherEventArgs(String eventNotificationId) {
+        List<String> args = new ArrayList<String>();
+        args.add("\"ECommerce\""); //appname
+        args.add("\"4\""); //appID
+        args.add("\"Wed Apr 30 09:42:55 PDT 2014\""); //event notification time
+        args.add("\"1\""); //priority
+        args.add("\"INFO\""); //severity
+        args.add("\"SnmpTrapAction\""); //tag
+        args.add("\"App Server restart\""); //event notification name
+        args.add("\"" + eventNotificationId + "\""); //event notification id
+        args.add("\"2\""); //event notification time period in mins
+        args.add("\"1\""); //number of event types
+        args.add("\"APP_SERVER_RESTART\""); //event type
+        args.add("\"1\""); //event type num
+        args.add("\"1\""); //num event summaries
+        args.add("\"I\""); //event summary id
+        args.add("\"Wed Apr 30 09:42:55 PDT 2014\""); //event summary time
+        args.add("APP_SERVER_RESTART"); //event summary type
+        args.add("INFO"); //event summary severity
+        args.add("App server on Node1 restarted"); //event summary string
+        args.add("\"http://controller:8090/controller/#location=APP_EVENT_VIEWER_MODAL&eventSummary=\""); //deep link url
+        args.add("customer1"); //account name
+        args.add("12sab23asl23"); //account id
+        return args.toArray(new String[args.size()]);
+    }
+}
@@ -0,0 +1,76 @@
+package com.appdynamics.extensions.snmp;
+
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.snmp4j.security.SecurityProtocols;
+import org.snmp4j.smi.OID;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Localizing the keys of a v3 user, which the USM does once per user and engine: every key hashes 1 MiB of the
+ * repeated password. The privacy key is derived with the authentication protocol and extended to the key length
+ * of the privacy protocol.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class KeyLocalizationBenchmark {
+
+    @Param({"MD5", "SHA"})
+    String authProtocol;
+
+    private SecurityProtocols securityProtocols;
+    private OID authProtocolId;
+
+    @State(Scope.Benchmark)
+    public static class Privacy {
+
+        @Param({"DES", "3DES", "AES128", "AES192", "AES256"})
+        String privProtocol;
+
+        OID privProtocolId;
+
+        @Setup
+        public void setUp() {
+            privProtocolId = BenchmarkData.protocolId(privProtocol);
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        securityProtocols = BenchmarkData.securityProtocols();
+        authProtocolId = BenchmarkData.protocolId(authProtocol);
+    }
+
+    @Benchmark
+    public byte[] authKey() {
+        return securityProtocols.passwordToKey(authProtocolId, BenchmarkData.AUTH_PASSWORD, BenchmarkData.ENGINE_ID);
+    }
+
+    @Benchmark
+    @Threads(BenchmarkData.CONTENDED_THREADS)
+    public byte[] authKeyContended() {
+        return authKey();
+    }
+
+    @Benchmark
+    public byte[] privKey(Privacy privacy) {
+        return securityProtocols.passwordToKey(privacy.privProtocolId, authProtocolId, BenchmarkData.PRIV_PASSWORD,
+                BenchmarkData.ENGINE_ID);
+    }
+}
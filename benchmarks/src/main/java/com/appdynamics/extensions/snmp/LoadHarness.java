@@ -0,0 +1,265 @@
+package com.appdynamics.extensions.snmp;
+
+
+import com.appdynamics.extensions.alerts.customevents.Event;
+import com.appdynamics.extensions.alerts.customevents.EventBuilder;
+import com.appdynamics.extensions.snmp.config.Configuration;
+import com.appdynamics.extensions.snmp.config.Receiver;
+import com.appdynamics.extensions.snmp.config.SnmpV3Configuration;
+import com.appdynamics.extensions.snmp.metrics.LatencyHistogram;
+import com.appdynamics.extensions.snmp.metrics.PipelineMetrics;
+import com.google.common.util.concurrent.RateLimiter;
+import org.apache.log4j.BasicConfigurator;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.snmp4j.security.UsmUser;
+import org.snmp4j.smi.OID;
+import org.snmp4j.smi.OctetString;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * End-to-end load test of the extension against a {@link LoopbackTrapReceiver} in the same JVM, no controller or
+ * SNMP manager needed. Worker threads hand synthetic health rule violations and other events to
+ * {@link SnmpTrapAlertExtension#process} at the given rate, the receiver decodes the traps. Controller enrichment,
+ * the spool and suppression are off, so the numbers are those of building, encoding and sending the traps.
+ * Traps not received by the end of the drain time are lost, including those of events the extension failed to send.
+ *
+ *     java -cp benchmarks.jar com.appdynamics.extensions.snmp.LoadHarness [-option value]...
+ *
+ * Options (defaults in brackets): -snmpVersion 1|2|3 [2], -securityLevel 1|2|3 [3], -authProtocol MD5|SHA [SHA],
+ * -privProtocol DES|3DES|AES128|AES192|AES256 [AES128], -rate events per second, 0 for as fast as possible [1000],
+ * -threads [4], -otherEvents percentage of other events [20], -duration seconds [30], -warmup seconds [5],
+ * -drain seconds to wait for the last traps [5], -port [16162], -receiverThreads [4]
+ */
+public class LoadHarness {
+
+    private static final Map<String, String> defaults = new HashMap<String, String>();
+
+    static {
+        defaults.put("snmpVersion", "2");
+        defaults.put("securityLevel", SNMPSender.AUTH_PRIV);
+        defaults.put("authProtocol", "SHA");
+        defaults.put("privProtocol", "AES128");
+        defaults.put("rate", "1000");
+        defaults.put("threads", "4");
+        defaults.put("otherEvents", "20");
+        defaults.put("duration", "30");
+        defaults.put("warmup", "5");
+        defaults.put("drain", "5");
+        defaults.put("port", "16162");
+        defaults.put("receiverThreads", "4");
+    }
+
+    private final Map<String, String> options;
+    private final SnmpTrapAlertExtension extension;
+    private final LoopbackTrapReceiver receiver;
+    private final EventBuilder eventBuilder = new EventBuilder();
+    private final AtomicLong sequences = new AtomicLong();
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private volatile LatencyHistogram processLatencies = new LatencyHistogram();
+
+    LoadHarness(Map<String, String> options) throws Exception {
+        this.options = options;
+        Configuration config = createConfig();
+        receiver = new LoopbackTrapReceiver(getInt("port"), getInt("receiverThreads"), createUser(config));
+        extension = new SnmpTrapAlertExtension(config, null);
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options;
+        try {
+            options = parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Options: " + defaults);
+            System.exit(1);
+            return;
+        }
+        if (!Logger.getRootLogger().getAllAppenders().hasMoreElements()) {
+            BasicConfigurator.configure();
+            Logger.getRootLogger().setLevel(Level.WARN);
+        }
+        //the sender only knows 3DES if it is registered explicitly
+        BenchmarkData.securityProtocols();
+        LoadHarness harness = new LoadHarness(options);
+        try {
+            harness.run(System.out);
+        } finally {
+            harness.close();
+        }
+    }
+
+    void run(PrintStream out) throws InterruptedException {
+        out.println("Load test with " + options);
+        int warmup = getInt("warmup");
+        if (warmup > 0) {
+            runPhase(warmup);
+            //let the traps of the warmup arrive before they are forgotten
+            Thread.sleep(TimeUnit.SECONDS.toMillis(1));
+            receiver.reset();
+            sent.set(0);
+            failed.set(0);
+            processLatencies = new LatencyHistogram();
+        }
+        long start = System.nanoTime();
+        long end = runPhase(getInt("duration"));
+        long drainUntil = System.nanoTime() + TimeUnit.SECONDS.toNanos(getInt("drain"));
+        while (receiver.getMissing() > 0 && System.nanoTime() < drainUntil) {
+            Thread.sleep(10);
+        }
+        report(out, start, end);
+    }
+
+    /**
+     * Processes events from all threads for the given time.
+     * @return when the last event was processed
+     */
+    private long runPhase(int seconds) throws InterruptedException {
+        int rate = getInt("rate");
+        final RateLimiter rateLimiter = rate > 0 ? RateLimiter.create(rate) : null;
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        final int otherEvents = getInt("otherEvents");
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < getInt("threads"); i++) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    while (System.nanoTime() < deadline) {
+                        if (rateLimiter != null) {
+                            rateLimiter.acquire();
+                        }
+                        process(sequences.incrementAndGet(), otherEvents);
+                    }
+                }
+            }, "LoadHarness-" + i);
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        return System.nanoTime();
+    }
+
+    private void process(long sequence, int otherEvents) {
+        //the sequence number is the incident id of the trap, so the receiver can match it
+        String id = Long.toString(sequence);
+        String[] args = sequence % 100 < otherEvents ? BenchmarkData.otherEventArgs(id)
+                : BenchmarkData.healthRuleViolationArgs(1, id);
+        Event event = eventBuilder.build(args);
+        receiver.expect(sequence);
+        long start = System.nanoTime();
+        boolean processed = extension.process(event);
+        processLatencies.record(System.nanoTime() - start);
+        if (processed) {
+            sent.incrementAndGet();
+        } else {
+            failed.incrementAndGet();
+        }
+    }
+
+    private void report(PrintStream out, long start, long end) {
+        double seconds = (end - start) / (double) TimeUnit.SECONDS.toNanos(1);
+        long received = receiver.getReceived();
+        long lastReceivedAt = Math.max(end, receiver.getLastReceivedAtNanos());
+        double receivedSeconds = (lastReceivedAt - start) / (double) TimeUnit.SECONDS.toNanos(1);
+        out.println(String.format(Locale.ROOT, "events     %10d in %.1f s, %10.1f per sec, %d failed",
+                sent.get() + failed.get(), seconds, (sent.get() + failed.get()) / seconds, failed.get()));
+        out.println(String.format(Locale.ROOT, "traps      %10d in %.1f s, %10.1f per sec, %d lost, %d unknown, %d rejected by the USM",
+                received, receivedSeconds, received / receivedSeconds, receiver.getMissing(), receiver.getUnknown(),
+                receiver.getRejected()));
+        out.println(String.format(Locale.ROOT, "%-10s %10s %10s %10s %10s %10s", "ms", "p50", "p90", "p99", "p99.9", "max"));
+        printPercentiles(out, "process", processLatencies);
+        printPercentiles(out, "trap", receiver.getLatencies());
+        out.println(PipelineMetrics.summary());
+    }
+
+    private static void printPercentiles(PrintStream out, String name, LatencyHistogram histogram) {
+        out.println(String.format(Locale.ROOT, "%-10s %10.3f %10.3f %10.3f %10.3f %10.3f", name,
+                millis(histogram.getValueAtPercentile(50)), millis(histogram.getValueAtPercentile(90)),
+                millis(histogram.getValueAtPercentile(99)), millis(histogram.getValueAtPercentile(99.9)),
+                millis(histogram.getMaxNanos())));
+    }
+
+    private static double millis(long nanos) {
+        return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    void close() throws Exception {
+        extension.close();
+        SnmpTrapAlertExtension.shutdown();
+        receiver.close();
+    }
+
+    private Configuration createConfig() {
+        Configuration config = BenchmarkData.createConfig(getInt("snmpVersion"));
+        Receiver receiver = new Receiver();
+        receiver.setHost("127.0.0.1");
+        receiver.setPort(getInt("port"));
+        config.setReceivers(new Receiver[] {receiver});
+        config.setMibVersion(3);
+        config.setSpoolMaxAttempts(0);
+        SnmpV3Configuration v3 = config.getSnmpV3Configuration();
+        v3.setSecurityLevel(getInt("securityLevel"));
+        v3.setAuthProtocol(options.get("authProtocol"));
+        v3.setPrivProtocol(options.get("privProtocol"));
+        return config;
+    }
+
+    private static UsmUser createUser(Configuration config) {
+        if (config.getSnmpVersion() != SNMPSender.SNMP_V3) {
+            return null;
+        }
+        SnmpV3Configuration v3 = config.getSnmpV3Configuration();
+        OctetString username = new OctetString(v3.getUsername());
+        String securityLevel = Integer.toString(v3.getSecurityLevel());
+        OID authProtocol = null;
+        OID privProtocol = null;
+        if (securityLevel.equals(SNMPSender.AUTH_NO_PRIV) || securityLevel.equals(SNMPSender.AUTH_PRIV)) {
+            authProtocol = BenchmarkData.protocolId(v3.getAuthProtocol());
+        }
+        if (securityLevel.equals(SNMPSender.AUTH_PRIV)) {
+            privProtocol = BenchmarkData.protocolId(v3.getPrivProtocol());
+        }
+        return new UsmUser(username, authProtocol, authProtocol == null ? null : new OctetString(v3.getPassword()),
+                privProtocol, privProtocol == null ? null : new OctetString(v3.getPrivProtocolPassword()));
+    }
+
+    private int getInt(String option) {
+        return Integer.parseInt(options.get(option));
+    }
+
+    static Map<String, String> parse(String[] args) {
+        Map<String, String> options = new TreeMap<String, String>(defaults);
+        for (int i = 0; i < args.length; i += 2) {
+            String option = args[i].startsWith("-") ? args[i].substring(1) : args[i];
+            if (!defaults.containsKey(option)) {
+                throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+            if (i + 1 >= args.length) {
+                throw new IllegalArgumentException("Missing the value of " + args[i]);
+            }
+            options.put(option, args[i + 1]);
+        }
+        for (Map.Entry<String, String> option : options.entrySet()) {
+            if (!option.getKey().endsWith("Protocol")) {
+                try {
+                    Integer.parseInt(option.getValue());
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("-" + option.getKey() + " must be a number, not " + option.getValue());
+                }
+            }
+        }
+        return options;
+    }
+}
@@ -0,0 +1,176 @@
+package com.appdynamics.extensions.snmp;
+
+
+import com.appdynamics.extensions.snmp.metrics.LatencyHistogram;
+import org.snmp4j.CommandResponder;
+import org.snmp4j.CommandResponderEvent;
+import org.snmp4j.MessageDispatcherImpl;
+import org.snmp4j.PDU;
+import org.snmp4j.Snmp;
+import org.snmp4j.event.CounterEvent;
+import org.snmp4j.event.CounterListener;
+import org.snmp4j.mp.CounterSupport;
+import org.snmp4j.mp.MPv1;
+import org.snmp4j.mp.MPv2c;
+import org.snmp4j.mp.MPv3;
+import org.snmp4j.security.SecurityProtocols;
+import org.snmp4j.security.USM;
+import org.snmp4j.security.UsmUser;
+import org.snmp4j.smi.OID;
+import org.snmp4j.smi.OctetString;
+import org.snmp4j.smi.UdpAddress;
+import org.snmp4j.smi.VariableBinding;
+import org.snmp4j.transport.DefaultUdpTransportMapping;
+import org.snmp4j.util.MultiThreadedMessageDispatcher;
+import org.snmp4j.util.ThreadPool;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Trap receiver on the loopback interface for {@link LoadHarness}. It is set up like
+ * {@link org.snmp4j.test.MultiThreadedTrapReceiver}, a pool of threads behind a {@link MultiThreadedMessageDispatcher}
+ * with the v1, v2c and v3 message processing models, but listens on a given port and has the v3 user of the
+ * extension, so v3 traps are authenticated and decrypted like a real manager does.
+ *
+ * Every trap carries the sequence number of its event as incident ID. The receiver matches it to the time the event
+ * was handed to the extension, traps it did not expect are counted as unknown.
+ */
+class LoopbackTrapReceiver implements CommandResponder {
+
+    private static final int RECEIVE_BUFFER_SIZE = 4 * 1024 * 1024;
+    private static final OID SEQUENCE = ADSnmpDataSchema.INCIDENT_ID.getOid();
+    //usmStats, the counters of messages the USM dropped
+    private static final OID USM_STATS = new OID("1.3.6.1.6.3.15.1.1");
+
+    private final ThreadPool threadPool;
+    private final Snmp snmp;
+    private final ConcurrentMap<Long, Long> expected = new ConcurrentHashMap<Long, Long>();
+    private final CounterListener rejectedCounter = new CounterListener() {
+        @Override
+        public void incrementCounter(CounterEvent event) {
+            if (event.getOid().startsWith(USM_STATS)) {
+                rejected.incrementAndGet();
+            }
+        }
+    };
+    private volatile LatencyHistogram latencies = new LatencyHistogram();
+    private final AtomicLong received = new AtomicLong();
+    private final AtomicLong unknown = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private volatile long lastReceivedAtNanos;
+
+    /**
+     * @param user the v3 user of the extension, null for v1 and v2c
+     */
+    LoopbackTrapReceiver(int port, int threads, UsmUser user) throws IOException {
+        threadPool = ThreadPool.create("LoopbackTrapReceiver", threads);
+        MultiThreadedMessageDispatcher dispatcher = new MultiThreadedMessageDispatcher(threadPool,
+                new MessageDispatcherImpl());
+        DefaultUdpTransportMapping transport = new DefaultUdpTransportMapping(new UdpAddress("127.0.0.1/" + port));
+        //bursts of traps must not be dropped by the socket before the dispatcher threads pick them up
+        transport.setReceiveBufferSize(RECEIVE_BUFFER_SIZE);
+        //the receiver is a different engine than the sender, which is the authoritative engine of its traps
+        USM usm = new USM(SecurityProtocols.getInstance(),
+                new OctetString(MPv3.createLocalEngineID(new OctetString("LoopbackTrapReceiver"))), 0);
+        if (user != null) {
+            usm.addUser(user.getSecurityName(), user);
+        }
+        snmp = new Snmp(dispatcher, transport);
+        snmp.getMessageDispatcher().addMessageProcessingModel(new MPv1());
+        snmp.getMessageDispatcher().addMessageProcessingModel(new MPv2c());
+        snmp.getMessageDispatcher().addMessageProcessingModel(new MPv3(usm));
+        snmp.addCommandResponder(this);
+        CounterSupport.getInstance().addCounterListener(rejectedCounter);
+        snmp.listen();
+    }
+
+    /**
+     * Registers the event about to be processed, call it before handing the event to the extension.
+     */
+    void expect(long sequence) {
+        expected.put(sequence, System.nanoTime());
+    }
+
+    @Override
+    public void processPdu(CommandResponderEvent event) {
+        PDU pdu = event.getPDU();
+        if (pdu == null) {
+            return;
+        }
+        long now = System.nanoTime();
+        Long sentAtNanos = null;
+        for (int i = 0; i < pdu.size(); i++) {
+            VariableBinding binding = pdu.get(i);
+            if (binding.getOid().equals(SEQUENCE)) {
+                try {
+                    sentAtNanos = expected.remove(Long.parseLong(binding.getVariable().toString().trim()));
+                } catch (NumberFormatException e) {
+                    //not a trap of the harness
+                }
+                break;
+            }
+        }
+        if (sentAtNanos == null) {
+            unknown.incrementAndGet();
+        } else {
+            received.incrementAndGet();
+            latencies.record(now - sentAtNanos);
+            lastReceivedAtNanos = now;
+        }
+        event.setProcessed(true);
+    }
+
+    /**
+     * Forgets everything received and expected so far, e.g. at the end of the warmup.
+     */
+    void reset() {
+        expected.clear();
+        latencies = new LatencyHistogram();
+        received.set(0);
+        unknown.set(0);
+        rejected.set(0);
+        lastReceivedAtNanos = 0;
+    }
+
+    /**
+     * @return latency from handing the event to the extension until its trap arrived
+     */
+    LatencyHistogram getLatencies() {
+        return latencies;
+    }
+
+    long getReceived() {
+        return received.get();
+    }
+
+    /**
+     * @return traps expected but not received (yet)
+     */
+    long getMissing() {
+        return expected.size();
+    }
+
+    long getUnknown() {
+        return unknown.get();
+    }
+
+    /**
+     * @return v3 messages the USM dropped, e.g. because they could not be authenticated or decrypted
+     */
+    long getRejected() {
+        return rejected.get();
+    }
+
+    long getLastReceivedAtNanos() {
+        return lastReceivedAtNanos;
+    }
+
+    void close() throws IOException {
+        CounterSupport.getInstance().removeCounterListener(rejectedCounter);
+        snmp.close();
+        threadPool.stop();
+    }
+}
@@ -0,0 +1,122 @@
+package com.appdynamics.extensions.snmp;
+
+
+import com.appdynamics.extensions.alerts.customevents.EventBuilder;
+import com.appdynamics.extensions.alerts.customevents.HealthRuleViolationEvent;
+import com.appdynamics.extensions.snmp.mib.AppdCtlrMib;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.snmp4j.MessageException;
+import org.snmp4j.PDU;
+import org.snmp4j.ScopedPDU;
+import org.snmp4j.asn1.BEROutputStream;
+import org.snmp4j.mp.MPv2c;
+import org.snmp4j.mp.MPv3;
+import org.snmp4j.mp.MessageProcessingModel;
+import org.snmp4j.mp.PduHandle;
+import org.snmp4j.mp.SnmpConstants;
+import org.snmp4j.security.AuthSHA;
+import org.snmp4j.security.PrivAES128;
+import org.snmp4j.security.SecurityLevel;
+import org.snmp4j.security.SecurityModel;
+import org.snmp4j.security.SecurityProtocols;
+import org.snmp4j.security.USM;
+import org.snmp4j.security.UsmUser;
+import org.snmp4j.smi.Integer32;
+import org.snmp4j.smi.IpAddress;
+import org.snmp4j.smi.OctetString;
+import org.snmp4j.smi.TimeTicks;
+import org.snmp4j.smi.UdpAddress;
+import org.snmp4j.smi.VariableBinding;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Preparing the complete outgoing message of a trap, as the message processing models do before it is written
+ * to the transport. v3 includes the USM authentication and encryption of the configured security level.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MessageBenchmark {
+
+    private static final int MAX_MESSAGE_SIZE = 65535;
+    private static final OctetString USER = new OctetString("benchmark");
+    private static final UdpAddress RECEIVER = new UdpAddress("127.0.0.1/162");
+
+    @Param({"1", "2", "3"})
+    int securityLevel;
+
+    private ADSnmpData snmpData;
+    private MPv2c mpv2c;
+    private MPv3 mpv3;
+    private byte[] community;
+    private int requestId;
+
+    @Setup
+    public void setUp() {
+        String[] args = BenchmarkData.healthRuleViolationArgs(3);
+        snmpData = new SNMPDataBuilder(BenchmarkData.createConfig(SNMPSender.SNMP_V2))
+                .buildFromHealthRuleViolationEvent((HealthRuleViolationEvent) new EventBuilder().build(args));
+        mpv2c = new MPv2c();
+        community = new OctetString("public").getValue();
+
+        SecurityProtocols.getInstance().addDefaultProtocols();
+        OctetString localEngineId = new OctetString(MPv3.createLocalEngineID());
+        USM usm = new USM(SecurityProtocols.getInstance(), localEngineId, 1, 0);
+        usm.addUser(USER, new UsmUser(USER, AuthSHA.ID, new OctetString("authPassword"),
+                PrivAES128.ID, new OctetString("privPassword")));
+        mpv3 = new MPv3(usm);
+        //the sender is the authoritative engine of a trap
+        mpv3.addEngineID(RECEIVER, localEngineId);
+    }
+
+    @Benchmark
+    public BEROutputStream prepareMPv2c() throws IOException {
+        return prepare(mpv2c, MessageProcessingModel.MPv2c, SecurityModel.SECURITY_MODEL_SNMPv2c, community,
+                SecurityLevel.NOAUTH_NOPRIV, createPdu(new PDU()));
+    }
+
+    @Benchmark
+    public BEROutputStream prepareMPv3() throws IOException {
+        return prepare(mpv3, MessageProcessingModel.MPv3, SecurityModel.SECURITY_MODEL_USM, USER.getValue(),
+                securityLevel, createPdu(new ScopedPDU()));
+    }
+
+    private BEROutputStream prepare(MessageProcessingModel model, int messageProcessingModel, int securityModel,
+                                    byte[] securityName, int securityLevel, PDU pdu) throws IOException {
+        PduHandle handle = new PduHandle(++requestId);
+        pdu.setRequestID(new Integer32(handle.getTransactionID()));
+        BEROutputStream outgoingMessage = new BEROutputStream();
+        int status = model.prepareOutgoingMessage(RECEIVER, MAX_MESSAGE_SIZE, messageProcessingModel, securityModel,
+                securityName, securityLevel, pdu, false, handle, RECEIVER, outgoingMessage);
+        if (status != SnmpConstants.SNMP_MP_OK) {
+            throw new MessageException("Unable to prepare the message, status " + status);
+        }
+        return outgoingMessage;
+    }
+
+    private PDU createPdu(PDU pdu) {
+        TimeTicks sysUpTime = new TimeTicks();
+        sysUpTime.fromMilliseconds(CommonUtils.getSysUptime());
+        pdu.add(new VariableBinding(SnmpConstants.sysUpTime, sysUpTime));
+        pdu.add(new VariableBinding(SnmpConstants.snmpTrapOID, AppdCtlrMib.getNotification(3, EventTypeEnum.POLICY_OPEN_CRITICAL)));
+        pdu.add(new VariableBinding(SnmpConstants.snmpTrapAddress, new IpAddress("127.0.0.1")));
+        ADSnmpDataSchema.addVariableBindings(pdu, snmpData);
+        pdu.setType(PDU.NOTIFICATION);
+        return pdu;
+    }
+}
@@ -0,0 +1,109 @@
+package com.appdynamics.extensions.snmp;
+
+
+import com.appdynamics.extensions.alerts.customevents.EventBuilder;
+import com.appdynamics.extensions.alerts.customevents.HealthRuleViolationEvent;
+import com.appdynamics.extensions.snmp.mib.AppdCtlrMib;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.snmp4j.PDU;
+import org.snmp4j.ScopedPDU;
+import org.snmp4j.asn1.BEROutputStream;
+import org.snmp4j.mp.SnmpConstants;
+import org.snmp4j.smi.IpAddress;
+import org.snmp4j.smi.OID;
+import org.snmp4j.smi.TimeTicks;
+import org.snmp4j.smi.VariableBinding;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building the variable bindings of a trap, parsing OIDs and BER encoding the PDU.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PduBenchmark {
+
+    private ADSnmpData snmpData;
+    private OID trapOid;
+    private String trapOidString;
+    private String variableOidString;
+    private PDU pdu;
+    private ScopedPDU scopedPdu;
+
+    @Setup
+    public void setUp() {
+        String[] args = BenchmarkData.healthRuleViolationArgs(3);
+        snmpData = new SNMPDataBuilder(BenchmarkData.createConfig(SNMPSender.SNMP_V2))
+                .buildFromHealthRuleViolationEvent((HealthRuleViolationEvent) new EventBuilder().build(args));
+        trapOid = AppdCtlrMib.getNotification(3, EventTypeEnum.POLICY_OPEN_CRITICAL);
+        trapOidString = trapOid.toString();
+        variableOidString = AppdCtlrMib.TRIGGERED_BY.toString();
+        pdu = createPdu(new PDU());
+        scopedPdu = (ScopedPDU) createPdu(new ScopedPDU());
+    }
+
+    @Benchmark
+    public PDU addVariableBindings() {
+        PDU pdu = new PDU();
+        ADSnmpDataSchema.addVariableBindings(pdu, snmpData);
+        return pdu;
+    }
+
+    @Benchmark
+    public PDU createTrapPdu() {
+        return createPdu(new PDU());
+    }
+
+    @Benchmark
+    public OID parseTrapOid() {
+        return new OID(trapOidString);
+    }
+
+    @Benchmark
+    public OID parseVariableOid() {
+        return new OID(variableOidString);
+    }
+
+    @Benchmark
+    public ByteBuffer encodePdu() throws IOException {
+        return encode(pdu);
+    }
+
+    @Benchmark
+    public ByteBuffer encodeScopedPdu() throws IOException {
+        return encode(scopedPdu);
+    }
+
+    //the v2c trap as SNMPSender builds it
+    private PDU createPdu(PDU pdu) {
+        TimeTicks sysUpTime = new TimeTicks();
+        sysUpTime.fromMilliseconds(CommonUtils.getSysUptime());
+        pdu.add(new VariableBinding(SnmpConstants.sysUpTime, sysUpTime));
+        pdu.add(new VariableBinding(SnmpConstants.snmpTrapOID, trapOid));
+        pdu.add(new VariableBinding(SnmpConstants.snmpTrapAddress, new IpAddress("127.0.0.1")));
+        ADSnmpDataSchema.addVariableBindings(pdu, snmpData);
+        pdu.setType(PDU.NOTIFICATION);
+        return pdu;
+    }
+
+    private static ByteBuffer encode(PDU pdu) throws IOException {
+        BEROutputStream out = new BEROutputStream(ByteBuffer.allocate(pdu.getBERLength()));
+        pdu.encodeBER(out);
+        return out.getBuffer();
+    }
+}
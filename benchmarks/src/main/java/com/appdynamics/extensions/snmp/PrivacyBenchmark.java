@@ -0,0 +1,101 @@
+package com.appdynamics.extensions.snmp;
+
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.snmp4j.security.AuthSHA;
+import org.snmp4j.security.DecryptParams;
+import org.snmp4j.security.PrivacyProtocol;
+import org.snmp4j.security.SecurityProtocols;
+import org.snmp4j.smi.OID;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encrypting and decrypting the scoped PDU of a v3 message, as the USM does for every authPriv trap sent and received.
+ * The protocol instance, with its salt and cipher pool, is shared; the contended benchmarks run it from several
+ * threads like the sender pool does.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PrivacyBenchmark {
+
+    private static final long ENGINE_BOOTS = 1;
+    private static final long ENGINE_TIME = 3600;
+
+    @Param({"DES", "3DES", "AES128", "AES192", "AES256"})
+    String privProtocol;
+
+    @Param({"300", "800", "1500"})
+    int messageSize;
+
+    private PrivacyProtocol protocol;
+    private byte[] key;
+
+    @State(Scope.Thread)
+    public static class Message {
+
+        byte[] scopedPdu;
+        byte[] encrypted;
+        DecryptParams decryptParams;
+
+        @Setup
+        public void setUp(PrivacyBenchmark benchmark) {
+            scopedPdu = BenchmarkData.message(benchmark.messageSize);
+            decryptParams = new DecryptParams();
+            encrypted = benchmark.encryptScopedPdu(scopedPdu, decryptParams);
+            if (encrypted == null) {
+                throw new IllegalStateException("Unable to encrypt the message");
+            }
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        SecurityProtocols securityProtocols = BenchmarkData.securityProtocols();
+        OID id = BenchmarkData.protocolId(privProtocol);
+        protocol = securityProtocols.getPrivacyProtocol(id);
+        key = securityProtocols.passwordToKey(id, AuthSHA.ID, BenchmarkData.PRIV_PASSWORD, BenchmarkData.ENGINE_ID);
+    }
+
+    @Benchmark
+    public byte[] encrypt(Message message) {
+        return encryptScopedPdu(message.scopedPdu, new DecryptParams());
+    }
+
+    @Benchmark
+    @Threads(BenchmarkData.CONTENDED_THREADS)
+    public byte[] encryptContended(Message message) {
+        return encrypt(message);
+    }
+
+    @Benchmark
+    public byte[] decrypt(Message message) {
+        return protocol.decrypt(message.encrypted, 0, message.encrypted.length, key, ENGINE_BOOTS, ENGINE_TIME,
+                message.decryptParams);
+    }
+
+    @Benchmark
+    @Threads(BenchmarkData.CONTENDED_THREADS)
+    public byte[] decryptContended(Message message) {
+        return decrypt(message);
+    }
+
+    private byte[] encryptScopedPdu(byte[] scopedPdu, DecryptParams decryptParams) {
+        return protocol.encrypt(scopedPdu, 0, scopedPdu.length, key, ENGINE_BOOTS, ENGINE_TIME, decryptParams);
+    }
+}
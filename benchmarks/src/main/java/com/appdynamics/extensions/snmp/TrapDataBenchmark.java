@@ -0,0 +1,71 @@
+package com.appdynamics.extensions.snmp;
+
+
+import com.appdynamics.extensions.alerts.customevents.Event;
+import com.appdynamics.extensions.alerts.customevents.EventBuilder;
+import com.appdynamics.extensions.alerts.customevents.HealthRuleViolationEvent;
+import com.appdynamics.extensions.alerts.customevents.OtherEvent;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing the argument vector of the custom action into an event and mapping it to {@link ADSnmpData}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TrapDataBenchmark {
+
+    private final EventBuilder eventBuilder = new EventBuilder();
+    private SNMPDataBuilder dataBuilder;
+    private String[] otherEventArgs;
+
+    @State(Scope.Benchmark)
+    public static class HealthRuleViolation {
+
+        @Param({"1", "10"})
+        int evaluationEntities;
+
+        String[] args;
+
+        @Setup
+        public void setUp() {
+            args = BenchmarkData.healthRuleViolationArgs(evaluationEntities);
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        dataBuilder = new SNMPDataBuilder(BenchmarkData.createConfig(SNMPSender.SNMP_V2));
+        otherEventArgs = BenchmarkData.otherEventArgs();
+    }
+
+    @Benchmark
+    public Event parseHealthRuleViolation(HealthRuleViolation event) {
+        return eventBuilder.build(event.args);
+    }
+
+    @Benchmark
+    public ADSnmpData buildFromHealthRuleViolation(HealthRuleViolation event) {
+        return dataBuilder.buildFromHealthRuleViolationEvent((HealthRuleViolationEvent) eventBuilder.build(event.args));
+    }
+
+    @Benchmark
+    public ADSnmpData buildFromOtherEvent() {
+        return dataBuilder.buildFromOtherEvent((OtherEvent) eventBuilder.build(otherEventArgs));
+    }
+}
@@ -0,0 +1,337 @@
+package com.appdynamics.extensions.snmp.mib;
+
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Build time compiler for the APPD-CTLR-MIB files. Resolves every object and notification of the
+ * APPD-CTLR-MIB-v&lt;n&gt;.mib modules to its numeric OID and writes AppdCtlrMib.java, which holds the
+ * OIDs as constants and the event type to notification table of every MIB version.
+ *
+ * Usage: MibCompiler &lt;mib directory&gt; &lt;notifications.properties&gt; &lt;output source directory&gt;
+ */
+public class MibCompiler {
+
+    static final String PACKAGE = "com.appdynamics.extensions.snmp.mib";
+    static final String CLASS_NAME = "AppdCtlrMib";
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final Pattern MIB_FILE = Pattern.compile("APPD-CTLR-MIB-v(\\d+)\\.mib");
+    private static final Pattern COMMENT = Pattern.compile("--[^\\n]*");
+    private static final Pattern DEFINITION = Pattern.compile(
+            "^([a-z][A-Za-z0-9-]*)\\s+(OBJECT\\s+IDENTIFIER|MODULE-IDENTITY|OBJECT-TYPE|NOTIFICATION-TYPE|OBJECT-GROUP|NOTIFICATION-GROUP)\\b"
+                    + ".*?::=\\s*\\{\\s*([a-z][A-Za-z0-9-]*)\\s+(\\d+)\\s*\\}",
+            Pattern.MULTILINE | Pattern.DOTALL);
+
+    static final String EVENT_DATA = "eventData";
+    static final String NOTIFICATIONS = "notifications";
+    static final String DEFAULT_KEY = "default";
+    static final String OTHER_EVENT_KEY = "otherEvent";
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 3) {
+            throw new IllegalArgumentException("Usage: MibCompiler <mib directory> <notifications.properties> <output source directory>");
+        }
+        File[] files = new File(args[0]).listFiles();
+        if (files == null) {
+            throw new IOException("MIB directory " + args[0] + " not found");
+        }
+        Map<Integer, Mib> mibs = new TreeMap<Integer, Mib>();
+        for (File file : files) {
+            Matcher matcher = MIB_FILE.matcher(file.getName());
+            if (matcher.matches()) {
+                mibs.put(Integer.valueOf(matcher.group(1)), parse(file));
+            }
+        }
+        if (mibs.isEmpty()) {
+            throw new IOException("No APPD-CTLR-MIB files found in " + args[0]);
+        }
+        Properties notifications = new Properties();
+        InputStream in = new FileInputStream(args[1]);
+        try {
+            notifications.load(in);
+        } finally {
+            in.close();
+        }
+
+        File out = new File(args[2], PACKAGE.replace('.', File.separatorChar) + File.separator + CLASS_NAME + ".java");
+        if (!out.getParentFile().isDirectory() && !out.getParentFile().mkdirs()) {
+            throw new IOException("Unable to create " + out.getParent());
+        }
+        Writer writer = new OutputStreamWriter(Files.newOutputStream(out.toPath()), UTF_8);
+        try {
+            new MibCompiler().write(new PrintWriter(writer), mibs, notifications);
+        } finally {
+            writer.close();
+        }
+        System.out.println("Generated " + out + " from " + mibs.size() + " MIB files");
+    }
+
+    static Mib parse(File file) throws IOException {
+        String text = new String(Files.readAllBytes(file.toPath()), UTF_8);
+        text = COMMENT.matcher(text).replaceAll("");
+        Mib mib = new Mib(file.getName());
+        Matcher matcher = DEFINITION.matcher(text);
+        while (matcher.find()) {
+            String macro = matcher.group(2).replaceAll("\\s+", " ");
+            mib.define(matcher.group(1), macro, matcher.group(3), Integer.parseInt(matcher.group(4)));
+        }
+        mib.resolve();
+        return mib;
+    }
+
+    void write(PrintWriter out, Map<Integer, Mib> mibs, Properties notifications) {
+        int maxVersion = 0;
+        for (Integer version : mibs.keySet()) {
+            maxVersion = Math.max(maxVersion, version);
+        }
+        Mib first = mibs.values().iterator().next();
+        Map<String, int[]> eventData = first.children(EVENT_DATA, "OBJECT-TYPE");
+        for (Mib mib : mibs.values()) {
+            if (!sameOids(eventData, mib.children(EVENT_DATA, "OBJECT-TYPE"))) {
+                throw new IllegalStateException(mib.name + " does not define the same eventData objects as " + first.name);
+            }
+            if (!Arrays.equals(first.oid(EVENT_DATA), mib.oid(EVENT_DATA)) || !Arrays.equals(first.oid(NOTIFICATIONS), mib.oid(NOTIFICATIONS))) {
+                throw new IllegalStateException(mib.name + " moves the eventData or notifications nodes");
+            }
+        }
+
+        out.println("// Generated by " + MibCompiler.class.getSimpleName() + " from " + names(mibs) + ". Do not edit.");
+        out.println("package " + PACKAGE + ";");
+        out.println();
+        out.println();
+        out.println("import com.appdynamics.extensions.snmp.EventTypeEnum;");
+        out.println("import org.snmp4j.smi.OID;");
+        out.println();
+        out.println("import java.util.Arrays;");
+        out.println();
+        out.println("/**");
+        out.println(" * OIDs of the APPD-CTLR-MIB modules in src/main/resources/mib. The OID instances are shared and must not be modified.");
+        out.println(" */");
+        out.println("public final class " + CLASS_NAME + " {");
+        out.println();
+        constant(out, "EVENT_DATA", first.oid(EVENT_DATA));
+        constant(out, "NOTIFICATIONS", first.oid(NOTIFICATIONS));
+        out.println();
+        out.println("    // eventData objects");
+        for (Map.Entry<String, int[]> object : eventData.entrySet()) {
+            constant(out, constantName(object.getKey()), object.getValue());
+        }
+        for (Map.Entry<Integer, Mib> mib : mibs.entrySet()) {
+            out.println();
+            out.println("    // " + mib.getValue().name + " notifications");
+            for (Map.Entry<String, int[]> notification : mib.getValue().children(NOTIFICATIONS, "NOTIFICATION-TYPE").entrySet()) {
+                constant(out, "V" + mib.getKey() + "_" + constantName(notification.getKey()), notification.getValue());
+            }
+        }
+        out.println();
+        out.println("    private static final OID[] DEFAULT_NOTIFICATIONS = new OID[" + (maxVersion + 1) + "];");
+        out.println("    private static final OID[] OTHER_EVENT_NOTIFICATIONS = new OID[" + (maxVersion + 1) + "];");
+        out.println("    private static final OID[][] EVENT_NOTIFICATIONS = new OID[" + (maxVersion + 1) + "][];");
+        out.println();
+        out.println("    static {");
+        for (Map.Entry<Integer, Mib> mib : mibs.entrySet()) {
+            int version = mib.getKey();
+            Map<String, String> mapping = mapping(notifications, version);
+            out.println("        DEFAULT_NOTIFICATIONS[" + version + "] = " + notification(mib.getValue(), version, mapping.remove(DEFAULT_KEY)) + ";");
+            out.println("        OTHER_EVENT_NOTIFICATIONS[" + version + "] = " + notification(mib.getValue(), version, mapping.remove(OTHER_EVENT_KEY)) + ";");
+            out.println("        EVENT_NOTIFICATIONS[" + version + "] = new OID[EventTypeEnum.values().length];");
+            out.println("        Arrays.fill(EVENT_NOTIFICATIONS[" + version + "], DEFAULT_NOTIFICATIONS[" + version + "]);");
+            for (Map.Entry<String, String> eventType : mapping.entrySet()) {
+                out.println("        EVENT_NOTIFICATIONS[" + version + "][EventTypeEnum." + eventType.getKey() + ".ordinal()] = "
+                        + notification(mib.getValue(), version, eventType.getValue()) + ";");
+            }
+        }
+        out.println("    }");
+        out.println();
+        out.println("    private " + CLASS_NAME + "() {");
+        out.println("    }");
+        out.println();
+        out.println("    /**");
+        out.println("     * @return the notification sent for a health rule violation event type, or null for an unknown MIB version");
+        out.println("     */");
+        out.println("    public static OID getNotification(int mibVersion, EventTypeEnum eventType) {");
+        out.println("        if (mibVersion < 0 || mibVersion >= EVENT_NOTIFICATIONS.length || EVENT_NOTIFICATIONS[mibVersion] == null) {");
+        out.println("            return null;");
+        out.println("        }");
+        out.println("        return eventType == null ? DEFAULT_NOTIFICATIONS[mibVersion] : EVENT_NOTIFICATIONS[mibVersion][eventType.ordinal()];");
+        out.println("    }");
+        out.println();
+        out.println("    /**");
+        out.println("     * @return the notification sent for events other than health rule violations, or null for an unknown MIB version");
+        out.println("     */");
+        out.println("    public static OID getOtherEventNotification(int mibVersion) {");
+        out.println("        if (mibVersion < 0 || mibVersion >= OTHER_EVENT_NOTIFICATIONS.length) {");
+        out.println("            return null;");
+        out.println("        }");
+        out.println("        return OTHER_EVENT_NOTIFICATIONS[mibVersion];");
+        out.println("    }");
+        out.println("}");
+        out.flush();
+        if (out.checkError()) {
+            throw new IllegalStateException("Unable to write " + CLASS_NAME);
+        }
+    }
+
+    private static Map<String, String> mapping(Properties notifications, int version) {
+        Map<String, String> mapping = new TreeMap<String, String>();
+        String prefix = version + ".";
+        for (String key : notifications.stringPropertyNames()) {
+            if (key.startsWith(prefix)) {
+                mapping.put(key.substring(prefix.length()), notifications.getProperty(key).trim());
+            }
+        }
+        if (!mapping.containsKey(DEFAULT_KEY) || !mapping.containsKey(OTHER_EVENT_KEY)) {
+            throw new IllegalStateException("notifications.properties has to define " + prefix + DEFAULT_KEY + " and " + prefix + OTHER_EVENT_KEY);
+        }
+        return mapping;
+    }
+
+    private static String notification(Mib mib, int version, String name) {
+        if (NOTIFICATIONS.equals(name)) {
+            return "NOTIFICATIONS";
+        }
+        if (!mib.children(NOTIFICATIONS, "NOTIFICATION-TYPE").containsKey(name)) {
+            throw new IllegalStateException(mib.name + " does not define the notification " + name);
+        }
+        return "V" + version + "_" + constantName(name);
+    }
+
+    private static void constant(PrintWriter out, String name, int[] oid) {
+        StringBuilder value = new StringBuilder();
+        for (int i = 0; i < oid.length; i++) {
+            value.append(i == 0 ? "" : ", ").append(oid[i]);
+        }
+        out.println("    public static final OID " + name + " = new OID(new int[] {" + value + "});");
+    }
+
+    static String constantName(String name) {
+        StringBuilder constant = new StringBuilder();
+        for (char c : name.toCharArray()) {
+            if (Character.isUpperCase(c) && constant.length() > 0) {
+                constant.append('_');
+            }
+            constant.append(c == '-' ? '_' : Character.toUpperCase(c));
+        }
+        return constant.toString();
+    }
+
+    private static boolean sameOids(Map<String, int[]> a, Map<String, int[]> b) {
+        if (!a.keySet().equals(b.keySet())) {
+            return false;
+        }
+        for (Map.Entry<String, int[]> entry : a.entrySet()) {
+            if (!Arrays.equals(entry.getValue(), b.get(entry.getKey()))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String names(Map<Integer, Mib> mibs) {
+        List<String> names = new ArrayList<String>();
+        for (Mib mib : mibs.values()) {
+            names.add(mib.name);
+        }
+        return names.toString();
+    }
+
+    static class Mib {
+
+        private static final Map<String, int[]> ROOTS = new HashMap<String, int[]>();
+
+        static {
+            ROOTS.put("iso", new int[] {1});
+            ROOTS.put("internet", new int[] {1, 3, 6, 1});
+            ROOTS.put("enterprises", new int[] {1, 3, 6, 1, 4, 1});
+        }
+
+        final String name;
+        private final Map<String, Definition> definitions = new LinkedHashMap<String, Definition>();
+        private final Map<String, int[]> oids = new HashMap<String, int[]>(ROOTS);
+
+        Mib(String name) {
+            this.name = name;
+        }
+
+        void define(String name, String macro, String parent, int subId) {
+            if (definitions.put(name, new Definition(macro, parent, subId)) != null) {
+                throw new IllegalStateException(this.name + " defines " + name + " twice");
+            }
+        }
+
+        void resolve() {
+            for (String name : definitions.keySet()) {
+                oid(name);
+            }
+        }
+
+        int[] oid(String name) {
+            int[] oid = oids.get(name);
+            if (oid == null) {
+                if (oids.containsKey(name)) {
+                    throw new IllegalStateException(this.name + " defines " + name + " in terms of itself");
+                }
+                Definition definition = definitions.get(name);
+                if (definition == null) {
+                    throw new IllegalStateException(this.name + " does not define " + name);
+                }
+                //guards against cycles, the entry is replaced once the parent is resolved
+                oids.put(name, null);
+                int[] parent = oid(definition.parent);
+                oid = Arrays.copyOf(parent, parent.length + 1);
+                oid[parent.length] = definition.subId;
+                oids.put(name, oid);
+            }
+            return oid;
+        }
+
+        /**
+         * Children of the node defined with the given macro, ordered by sub identifier.
+         */
+        Map<String, int[]> children(String parent, String macro) {
+            Map<Integer, String> bySubId = new TreeMap<Integer, String>();
+            for (Map.Entry<String, Definition> definition : definitions.entrySet()) {
+                if (definition.getValue().parent.equals(parent) && definition.getValue().macro.equals(macro)) {
+                    bySubId.put(definition.getValue().subId, definition.getKey());
+                }
+            }
+            Map<String, int[]> children = new LinkedHashMap<String, int[]>();
+            for (String child : bySubId.values()) {
+                children.put(child, oid(child));
+            }
+            return children;
+        }
+    }
+
+    private static class Definition {
+
+        final String macro;
+        final String parent;
+        final int subId;
+
+        Definition(String macro, String parent, int subId) {
+            this.macro = macro;
+            this.parent = parent;
+            this.subId = subId;
+        }
+    }
+}
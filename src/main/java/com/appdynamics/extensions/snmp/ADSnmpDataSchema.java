@@ -0,0 +1,143 @@
+package com.appdynamics.extensions.snmp;
+
+
+import com.appdynamics.extensions.snmp.mib.AppdCtlrMib;
+import org.snmp4j.PDU;
+import org.snmp4j.smi.OID;
+import org.snmp4j.smi.OctetString;
+import org.snmp4j.smi.VariableBinding;
+
+/**
+ * Variable bindings of the AppDynamics trap, in MIB order. Each attribute of {@link ADSnmpData} is bound
+ * to its OID from the generated MIB table and read directly, so building a trap does not need reflection or OID parsing.
+ * The same order is used to persist spooled traps.
+ */
+public enum ADSnmpDataSchema {
+
+    APPLICATION(AppdCtlrMib.APPLICATION) {
+        String get(ADSnmpData data) { return data.application; }
+        void set(ADSnmpData data, String value) { data.application = value; }
+    },
+    TRIGGERED_BY(AppdCtlrMib.TRIGGERED_BY) {
+        String get(ADSnmpData data) { return data.triggeredBy; }
+        void set(ADSnmpData data, String value) { data.triggeredBy = value; }
+    },
+    NODES(AppdCtlrMib.NODES) {
+        String get(ADSnmpData data) { return data.nodes; }
+        void set(ADSnmpData data, String value) { data.nodes = value; }
+    },
+    TXNS(AppdCtlrMib.TXNS) {
+        String get(ADSnmpData data) { return data.txns; }
+        void set(ADSnmpData data, String value) { data.txns = value; }
+    },
+    MACHINES(AppdCtlrMib.MACHINES) {
+        String get(ADSnmpData data) { return data.machines; }
+        void set(ADSnmpData data, String value) { data.machines = value; }
+    },
+    TIERS(AppdCtlrMib.TIERS) {
+        String get(ADSnmpData data) { return data.tiers; }
+        void set(ADSnmpData data, String value) { data.tiers = value; }
+    },
+    EVENT_TIME(AppdCtlrMib.EVENT_TIME) {
+        String get(ADSnmpData data) { return data.eventTime; }
+        void set(ADSnmpData data, String value) { data.eventTime = value; }
+    },
+    SEVERITY(AppdCtlrMib.SEVERITY) {
+        String get(ADSnmpData data) { return data.severity; }
+        void set(ADSnmpData data, String value) { data.severity = value; }
+    },
+    TYPE(AppdCtlrMib.TYPE) {
+        String get(ADSnmpData data) { return data.type; }
+        void set(ADSnmpData data, String value) { data.type = value; }
+    },
+    SUBTYPE(AppdCtlrMib.SUBTYPE) {
+        String get(ADSnmpData data) { return data.subtype; }
+        void set(ADSnmpData data, String value) { data.subtype = value; }
+    },
+    SUMMARY(AppdCtlrMib.SUMMARY) {
+        String get(ADSnmpData data) { return data.summary; }
+        void set(ADSnmpData data, String value) { data.summary = value; }
+    },
+    LINK(AppdCtlrMib.LINK) {
+        String get(ADSnmpData data) { return data.link; }
+        void set(ADSnmpData data, String value) { data.link = value; }
+    },
+    TAG(AppdCtlrMib.TAG) {
+        String get(ADSnmpData data) { return data.tag; }
+        void set(ADSnmpData data, String value) { data.tag = value; }
+    },
+    EVENT_TYPE(AppdCtlrMib.EVENT_TYPE) {
+        String get(ADSnmpData data) { return data.eventType; }
+        void set(ADSnmpData data, String value) { data.eventType = value; }
+    },
+    IP_ADDRESSES(AppdCtlrMib.IP_ADDRESSES) {
+        String get(ADSnmpData data) { return data.ipAddresses; }
+        void set(ADSnmpData data, String value) { data.ipAddresses = value; }
+    },
+    INCIDENT_ID(AppdCtlrMib.INCIDENT_ID) {
+        String get(ADSnmpData data) { return data.incidentId; }
+        void set(ADSnmpData data, String value) { data.incidentId = value; }
+    },
+    ACCOUNT_ID(AppdCtlrMib.ACCOUNT_ID) {
+        String get(ADSnmpData data) { return data.accountId; }
+        void set(ADSnmpData data, String value) { data.accountId = value; }
+    },
+    REASON_CODE(notInMib(18)) {
+        String get(ADSnmpData data) { return data.reasonCode; }
+        void set(ADSnmpData data, String value) { data.reasonCode = value; }
+    },
+    CONTROLLER_HOST_NAME(notInMib(19)) {
+        String get(ADSnmpData data) { return data.controllerHostName; }
+        void set(ADSnmpData data, String value) { data.controllerHostName = value; }
+    };
+
+    private static final ADSnmpDataSchema[] FIELDS = values();
+
+    private final OID oid;
+
+    ADSnmpDataSchema(OID oid) {
+        this.oid = oid;
+    }
+
+    //attributes added after the published APPD-CTLR-MIB revisions continue the eventData numbering
+    private static OID notInMib(int subId) {
+        return new OID(AppdCtlrMib.EVENT_DATA.getValue(), new int[] {subId});
+    }
+
+    abstract String get(ADSnmpData data);
+
+    abstract void set(ADSnmpData data, String value);
+
+    public OID getOid() {
+        return (OID) oid.clone();
+    }
+
+    /**
+     * Name of the matching {@link ADSnmpData} attribute, e.g. triggeredBy for TRIGGERED_BY.
+     */
+    public String getAttributeName() {
+        StringBuilder name = new StringBuilder();
+        boolean upper = false;
+        for (char c : name().toCharArray()) {
+            if (c == '_') {
+                upper = true;
+            } else {
+                name.append(upper ? c : Character.toLowerCase(c));
+                upper = false;
+            }
+        }
+        return name.toString();
+    }
+
+    /**
+     * Appends a binding for every attribute that is set.
+     */
+    public static void addVariableBindings(PDU pdu, ADSnmpData data) {
+        for (ADSnmpDataSchema field : FIELDS) {
+            String value = field.get(data);
+            if (value != null) {
+                pdu.add(new VariableBinding(field.oid, new OctetString(value)));
+            }
+        }
+    }
+}
@@ -0,0 +1,283 @@
+package com.appdynamics.extensions.snmp;
+
+
+import com.appdynamics.extensions.snmp.config.Configuration;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalCause;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.log4j.Logger;
+import org.snmp4j.smi.OID;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Suppresses bursts of events of the same incident. The first event of an (account, application, health rule, incident)
+ * starts a window whose length depends on its event type, see suppressionWindowsInSeconds. Events of the incident
+ * within the window are counted instead of sent, and once the window ends a summary trap carrying the latest
+ * suppressed event and the number of suppressed events is sent. The next event starts a new window.
+ *
+ * An event of another type than the one of the window, suppressed or not, ends the window first, so the pending summary
+ * is always sent before e.g. the upgrade or the close of the incident and never re-raises an alarm that was cleared.
+ *
+ * Windows are kept in memory, so suppression only spans the events of one process, e.g. of the daemon or a leader
+ * invocation. At most suppressionMaxKeys windows are tracked, the summary of an evicted window is sent right away.
+ */
+public class AlertSuppressor {
+
+    private static Logger logger = Logger.getLogger(AlertSuppressor.class);
+
+    private static final long SWEEP_INTERVAL_IN_MILLIS = 1000;
+
+    private static final ScheduledExecutorService sweeper = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("snmp-alert-suppression-%d").setDaemon(true).build());
+    private static final Set<AlertSuppressor> openSuppressors = Collections.newSetFromMap(new ConcurrentHashMap<AlertSuppressor, Boolean>());
+
+    /**
+     * Sends the summary trap of a window.
+     */
+    public interface SummarySender {
+        void send(ADSnmpData summary, OID trapOid);
+    }
+
+    private final Map<String, Integer> windowsInSeconds;
+    private final SummarySender summarySender;
+    private final Cache<SuppressionKey, Window> windows;
+    private final ConcurrentMap<SuppressionKey, Window> activeWindows;
+    private ScheduledFuture<?> sweep;
+
+    AlertSuppressor(Map<String, Integer> windowsInSeconds, long maxKeys, SummarySender summarySender) {
+        this.windowsInSeconds = windowsInSeconds;
+        this.summarySender = summarySender;
+        this.windows = CacheBuilder.newBuilder()
+                .maximumSize(maxKeys)
+                .removalListener(new RemovalListener<SuppressionKey, Window>() {
+                    @Override
+                    public void onRemoval(RemovalNotification<SuppressionKey, Window> notification) {
+                        if (notification.getCause() == RemovalCause.SIZE) {
+                            close(notification.getValue(), System.currentTimeMillis());
+                        }
+                    }
+                })
+                .build();
+        this.activeWindows = windows.asMap();
+    }
+
+    /**
+     * @return null if no event type is suppressed
+     */
+    public static AlertSuppressor create(Configuration config, SummarySender summarySender) {
+        Map<String, Integer> windowsInSeconds = config.getSuppressionWindowsInSeconds();
+        if (windowsInSeconds == null || windowsInSeconds.isEmpty()) {
+            return null;
+        }
+        for (String eventType : windowsInSeconds.keySet()) {
+            if (EventTypeEnum.fromName(eventType) == null) {
+                logger.warn("Unknown event type " + eventType + " in suppressionWindowsInSeconds");
+            }
+        }
+        AlertSuppressor suppressor = new AlertSuppressor(Collections.unmodifiableMap(windowsInSeconds),
+                config.getSuppressionMaxKeys(), summarySender);
+        suppressor.start();
+        return suppressor;
+    }
+
+    void start() {
+        openSuppressors.add(this);
+        sweep = sweeper.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                sweep(System.currentTimeMillis());
+            }
+        }, SWEEP_INTERVAL_IN_MILLIS, SWEEP_INTERVAL_IN_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return true if the event has to be sent, false if it was counted towards the summary of its incident
+     */
+    public boolean admit(ADSnmpData snmpData, OID trapOid) {
+        return admit(snmpData, trapOid, System.currentTimeMillis());
+    }
+
+    boolean admit(ADSnmpData snmpData, OID trapOid, long now) {
+        String eventType = snmpData.getEventType();
+        Integer windowInSeconds = windowsInSeconds.get(eventType);
+        boolean suppressed = windowInSeconds != null && windowInSeconds > 0;
+        SuppressionKey key = new SuppressionKey(snmpData);
+        while (true) {
+            Window window = activeWindows.get(key);
+            if (window == null) {
+                if (!suppressed) {
+                    return true;
+                }
+                Window created = new Window(eventType, now, now + TimeUnit.SECONDS.toMillis(windowInSeconds));
+                if (activeWindows.putIfAbsent(key, created) == null) {
+                    return true;
+                }
+                continue;
+            }
+            synchronized (window) {
+                if (!window.closed && now < window.end && window.eventType.equals(eventType)) {
+                    window.suppress(snmpData, trapOid);
+                    return false;
+                }
+            }
+            //the window ended and was not swept yet, or the incident changed its event type (e.g. it was upgraded or
+            //closed). Either way the summary goes out before the event, which may start the next window
+            end(key, window, now);
+        }
+    }
+
+    /**
+     * Ends the windows whose time is up and sends their summaries.
+     */
+    void sweep(long now) {
+        for (Map.Entry<SuppressionKey, Window> entry : activeWindows.entrySet()) {
+            Window window = entry.getValue();
+            boolean ended;
+            synchronized (window) {
+                ended = window.closed || now >= window.end;
+            }
+            if (ended) {
+                end(entry.getKey(), window, now);
+            }
+        }
+    }
+
+    private void end(SuppressionKey key, Window window, long now) {
+        activeWindows.remove(key, window);
+        close(window, now);
+    }
+
+    //sends the summary of the window once
+    private void close(Window window, long now) {
+        ADSnmpData summary;
+        OID trapOid;
+        synchronized (window) {
+            window.closed = true;
+            if (window.suppressed == 0) {
+                return;
+            }
+            summary = window.summarize(now);
+            trapOid = window.latestOid;
+            window.suppressed = 0;
+        }
+        try {
+            summarySender.send(summary, trapOid);
+        } catch (RuntimeException e) {
+            logger.error("Unable to send the summary of suppressed events", e);
+        }
+    }
+
+    int getActiveWindows() {
+        return activeWindows.size();
+    }
+
+    /**
+     * Stops sweeping and sends the summaries of all windows that suppressed events.
+     */
+    public void close() {
+        openSuppressors.remove(this);
+        if (sweep != null) {
+            sweep.cancel(false);
+        }
+        long now = System.currentTimeMillis();
+        for (Map.Entry<SuppressionKey, Window> entry : activeWindows.entrySet()) {
+            end(entry.getKey(), entry.getValue(), now);
+        }
+    }
+
+    /**
+     * Closes all suppressors, sending their pending summaries. Called once the process does not send any more traps.
+     */
+    static void shutdown() {
+        sweeper.shutdownNow();
+        for (AlertSuppressor suppressor : openSuppressors) {
+            suppressor.close();
+        }
+    }
+
+    private static class Window {
+
+        private final String eventType;
+        private final long start;
+        private final long end;
+        private int suppressed;
+        private ADSnmpData latest;
+        private OID latestOid;
+        private boolean closed;
+
+        Window(String eventType, long start, long end) {
+            this.eventType = eventType;
+            this.start = start;
+            this.end = end;
+        }
+
+        void suppress(ADSnmpData snmpData, OID trapOid) {
+            suppressed++;
+            latest = snmpData;
+            latestOid = trapOid;
+        }
+
+        ADSnmpData summarize(long now) {
+            ADSnmpData summary = new ADSnmpData();
+            for (ADSnmpDataSchema field : ADSnmpDataSchema.values()) {
+                field.set(summary, field.get(latest));
+            }
+            long seconds = Math.max(1, TimeUnit.MILLISECONDS.toSeconds(now - start));
+            summary.setSummary(suppressed + " events of this incident suppressed in the last " + seconds
+                    + " seconds, latest: " + latest.getSummary());
+            return summary;
+        }
+    }
+
+    private static class SuppressionKey {
+
+        private final String accountId;
+        private final String application;
+        private final String triggeredBy;
+        private final String incidentId;
+        private final int hash;
+
+        SuppressionKey(ADSnmpData snmpData) {
+            this.accountId = snmpData.getAccountId();
+            this.application = snmpData.getApplication();
+            this.triggeredBy = snmpData.getTriggeredBy();
+            this.incidentId = snmpData.getIncidentId();
+            this.hash = Arrays.hashCode(new Object[]{accountId, application, triggeredBy, incidentId});
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof SuppressionKey)) {
+                return false;
+            }
+            SuppressionKey that = (SuppressionKey) o;
+            return hash == that.hash && equal(accountId, that.accountId) && equal(application, that.application)
+                    && equal(triggeredBy, that.triggeredBy) && equal(incidentId, that.incidentId);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        private static boolean equal(String a, String b) {
+            return a == null ? b == null : a.equals(b);
+        }
+    }
+}
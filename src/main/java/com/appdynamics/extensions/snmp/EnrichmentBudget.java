@@ -0,0 +1,109 @@
+package com.appdynamics.extensions.snmp;
+
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.log4j.Logger;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Runs the controller lookups of one event concurrently and bounds the time the event waits for them.
+ * Lookups that fail, do not complete before the deadline, are submitted after it or find the executor's bounded queue
+ * full are given up, the event is then marked partial.
+ */
+class EnrichmentBudget {
+
+    public static final String ENRICHMENT_THREADS = "appDynamics.snmp.enrichment.threads";
+    public static final int DEFAULT_ENRICHMENT_THREADS = 8;
+    public static final String ENRICHMENT_QUEUE_SIZE = "appDynamics.snmp.enrichment.queueSize";
+    public static final int DEFAULT_ENRICHMENT_QUEUE_SIZE = 256;
+
+    private static Logger logger = Logger.getLogger(EnrichmentBudget.class);
+
+    private static final ExecutorService enrichmentExecutor = createEnrichmentExecutor(
+            Integer.getInteger(ENRICHMENT_THREADS, DEFAULT_ENRICHMENT_THREADS),
+            Integer.getInteger(ENRICHMENT_QUEUE_SIZE, DEFAULT_ENRICHMENT_QUEUE_SIZE));
+
+    private final long deadline;
+    private volatile boolean partial;
+
+    /**
+     * @param timeoutInMillis time from now the lookups may take, 0 or less to wait for all of them
+     */
+    EnrichmentBudget(long timeoutInMillis) {
+        this.deadline = timeoutInMillis > 0 ? System.currentTimeMillis() + timeoutInMillis : Long.MAX_VALUE;
+    }
+
+    /**
+     * @return the pending lookup, or a failed one if the deadline expired or the executor is saturated
+     */
+    <T> Future<T> submit(Callable<T> lookup) {
+        if (isExpired()) {
+            return Futures.immediateFailedFuture(new RejectedExecutionException("enrichment deadline expired"));
+        }
+        try {
+            return enrichmentExecutor.submit(lookup);
+        } catch (RejectedExecutionException e) {
+            return Futures.immediateFailedFuture(e);
+        }
+    }
+
+    /**
+     * @return the result of the lookup, or null if it failed or the deadline expired first
+     */
+    <T> T await(Future<T> lookup, String description) {
+        try {
+            long wait = deadline - System.currentTimeMillis();
+            if (deadline == Long.MAX_VALUE) {
+                return lookup.get();
+            }
+            return lookup.get(Math.max(0, wait), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            logger.warn("Enrichment deadline expired while looking up the " + description);
+            lookup.cancel(true);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RejectedExecutionException) {
+                logger.warn("Skipped looking up the " + description + ": " + e.getCause().getMessage());
+            } else {
+                logger.warn("Unable to look up the " + description, e.getCause());
+            }
+        } catch (CancellationException e) {
+            logger.warn("Lookup of the " + description + " was cancelled");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            lookup.cancel(true);
+        }
+        partial = true;
+        return null;
+    }
+
+    boolean isExpired() {
+        return System.currentTimeMillis() >= deadline;
+    }
+
+    /**
+     * @return true if any lookup did not contribute its result
+     */
+    boolean isPartial() {
+        return partial;
+    }
+
+    //lookups beyond the queue size are rejected instead of piling up behind a slow controller
+    private static ExecutorService createEnrichmentExecutor(int threads, int queueSize) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(Math.max(1, queueSize)),
+                new ThreadFactoryBuilder().setNameFormat("snmp-enrichment-%d").setDaemon(true).build());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+}
@@ -1,6 +1,9 @@
 package com.appdynamics.extensions.snmp;
 
 
+import java.util.HashMap;
+import java.util.Map;
+
 public enum EventTypeEnum {
 
     POLICY_OPEN_WARNING,
@@ -14,5 +17,21 @@ public enum EventTypeEnum {
     POLICY_CONTINUES_CRITICAL,
     POLICY_CONTINUES_WARNING,
     POLICY_CANCELED,
-    POLICY_CLOSE
+    POLICY_CLOSE,
+    NON_POLICY_EVENT;
+
+    private static final Map<String, EventTypeEnum> BY_NAME = new HashMap<String, EventTypeEnum>();
+
+    static {
+        for (EventTypeEnum eventType : values()) {
+            BY_NAME.put(eventType.name(), eventType);
+        }
+    }
+
+    /**
+     * @return the event type with the given name or null if the controller sent an unknown event type
+     */
+    public static EventTypeEnum fromName(String name) {
+        return name == null ? null : BY_NAME.get(name);
+    }
 }
@@ -23,43 +23,17 @@ import java.util.HashMap;
 
 /**
  * Creates a lookup or each attribute of SNMP and assigns an OID value
+ * @see ADSnmpDataSchema
  */
 public class Lookup
 {
-    private static String baseOID = "1.3.6.1.4.1.40684.1.1.1.1.";
     private static HashMap<String, String> map = new HashMap<String, String>();
-    private static String[] names = {
-            "application",
-            "triggeredBy",
-            "nodes",
-            "txns",
-            "machines",
-            "tiers",
-            "eventTime",
-            "severity",
-            "type",
-            "subtype",
-            "summary",
-            "link",
-            "tag",
-            "eventType",
-            "ipAddresses",
-            "incidentId",
-            "accountId",
-            "reasonCode",
-            "controllerHostName"
-    };
 
-    public Lookup()
+    static
     {
-        if(map.size() == 0)
+        for (ADSnmpDataSchema field : ADSnmpDataSchema.values())
         {
-            int idx = 1;
-
-            for (String name : names)
-            {
-                map.put(name, baseOID + idx++);
-            }
+            map.put(field.getAttributeName(), field.getOid().toString());
         }
     }
 
@@ -69,4 +43,3 @@ public class Lookup
         return val;
     }
 }
-
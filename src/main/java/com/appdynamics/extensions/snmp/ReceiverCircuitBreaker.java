@@ -0,0 +1,200 @@
+package com.appdynamics.extensions.snmp;
+
+
+import com.appdynamics.extensions.snmp.config.Configuration;
+import com.appdynamics.extensions.snmp.config.Receiver;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.log4j.Logger;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tracks the health of every receiver. After receiverFailureThreshold consecutive failed sends the receiver's circuit
+ * opens and traps skip it until a background probe reached it again. Probes back off exponentially from
+ * receiverBackoffInSeconds while the receiver stays down.
+ *
+ * Unconfirmed traps over UDP rarely fail on the sending side, an unconnected socket does not even report
+ * ICMP port unreachable. Failures are send errors and timeouts, and probes are INFORM round-trips. Where no
+ * probe is possible (v1, or receivers that only get traps), the circuit half-opens after the backoff and the next trap
+ * decides. So does it after MAX_FAILED_PROBES unanswered probes, as a receiver may be up and refuse our INFORMs.
+ */
+class ReceiverCircuitBreaker {
+
+    private static Logger logger = Logger.getLogger(ReceiverCircuitBreaker.class);
+
+    private static final long MAX_BACKOFF_IN_MILLIS = TimeUnit.MINUTES.toMillis(5);
+    private static final int PROBE_THREADS = 2;
+    static final int MAX_FAILED_PROBES = 3;
+
+    /**
+     * Checks whether a receiver is reachable.
+     */
+    interface Prober {
+
+        /**
+         * @return true if the receiver answered, false if it did not, null if it can not be probed
+         */
+        Boolean probe(Configuration config, Receiver receiver);
+    }
+
+    private final ConcurrentMap<String, ReceiverState> states = new ConcurrentHashMap<String, ReceiverState>();
+    private final Prober prober;
+    private final ScheduledExecutorService probeExecutor = Executors.newScheduledThreadPool(PROBE_THREADS,
+            new ThreadFactoryBuilder().setNameFormat("snmp-receiver-probe-%d").setDaemon(true).build());
+
+    ReceiverCircuitBreaker(Prober prober) {
+        this.prober = prober;
+    }
+
+    /**
+     * @return false if the receiver's circuit is open and the trap should skip it
+     */
+    boolean allows(Receiver receiver) {
+        ReceiverState state = states.get(key(receiver));
+        return state == null || state.allows();
+    }
+
+    void recordSuccess(Receiver receiver) {
+        ReceiverState state = states.get(key(receiver));
+        if (state != null && state.reset()) {
+            logger.info("Receiver " + key(receiver) + " is reachable again");
+        }
+    }
+
+    void recordFailure(Configuration config, Receiver receiver) {
+        ReceiverState state = getState(receiver);
+        long backoff = state.fail(config);
+        if (backoff > 0) {
+            logger.warn("Skipping receiver " + key(receiver) + " for " + backoff + " ms after " + state.failures + " failed sends");
+            scheduleProbe(config, receiver, state, backoff);
+        }
+    }
+
+    private void scheduleProbe(final Configuration config, final Receiver receiver, final ReceiverState state, long delay) {
+        try {
+            probeExecutor.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    probe(config, receiver, state);
+                }
+            }, delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            logger.debug("Not probing receiver " + key(receiver) + ", shutting down");
+        }
+    }
+
+    private void probe(Configuration config, Receiver receiver, ReceiverState state) {
+        Boolean reachable;
+        try {
+            reachable = prober.probe(config, receiver);
+        } catch (RuntimeException e) {
+            logger.debug("Probing receiver " + key(receiver) + " failed", e);
+            reachable = Boolean.FALSE;
+        }
+        if (reachable == null) {
+            state.halfOpen(config);
+            logger.info("Letting the next trap through to receiver " + key(receiver));
+        } else if (reachable) {
+            state.reset();
+            logger.info("Receiver " + key(receiver) + " answered the probe, closing its circuit");
+        } else if (state.probeFailed() >= MAX_FAILED_PROBES) {
+            state.halfOpen(config);
+            logger.warn("Receiver " + key(receiver) + " did not answer " + MAX_FAILED_PROBES + " probes, letting the next trap through");
+        } else {
+            long backoff = state.reopen(config);
+            logger.warn("Receiver " + key(receiver) + " did not answer the probe, next probe in " + backoff + " ms");
+            scheduleProbe(config, receiver, state, backoff);
+        }
+    }
+
+    private ReceiverState getState(Receiver receiver) {
+        String key = key(receiver);
+        ReceiverState state = states.get(key);
+        if (state == null) {
+            ReceiverState created = new ReceiverState();
+            state = states.putIfAbsent(key, created);
+            if (state == null) {
+                state = created;
+            }
+        }
+        return state;
+    }
+
+    void close() {
+        probeExecutor.shutdownNow();
+    }
+
+    private static String key(Receiver receiver) {
+        return receiver.getHost() + ":" + receiver.getPort();
+    }
+
+    static long getBackoff(Configuration config, int opens) {
+        long backoff = TimeUnit.SECONDS.toMillis(Math.max(1, config.getReceiverBackoffInSeconds()));
+        for (int i = 1; i < opens && backoff < MAX_BACKOFF_IN_MILLIS; i++) {
+            backoff *= 2;
+        }
+        return Math.min(backoff, MAX_BACKOFF_IN_MILLIS);
+    }
+
+    private static class ReceiverState {
+
+        private int failures;
+        private int opens;
+        private int failedProbes;
+        private boolean open;
+
+        synchronized boolean allows() {
+            return !open;
+        }
+
+        /**
+         * @return the backoff if this failure opened the circuit, 0 otherwise
+         */
+        synchronized long fail(Configuration config) {
+            failures++;
+            if (open || failures < Math.max(1, config.getReceiverFailureThreshold())) {
+                return 0;
+            }
+            open = true;
+            opens++;
+            return getBackoff(config, opens);
+        }
+
+        synchronized long reopen(Configuration config) {
+            open = true;
+            opens++;
+            return getBackoff(config, opens);
+        }
+
+        /**
+         * @return the number of failed probes since the circuit last (half-)opened
+         */
+        synchronized int probeFailed() {
+            return ++failedProbes;
+        }
+
+        //a single failure opens the circuit again, with a longer backoff
+        synchronized void halfOpen(Configuration config) {
+            open = false;
+            failedProbes = 0;
+            failures = Math.max(0, config.getReceiverFailureThreshold() - 1);
+        }
+
+        /**
+         * @return true if the circuit was open or failures were counted
+         */
+        synchronized boolean reset() {
+            boolean changed = open || failures > 0;
+            open = false;
+            failures = 0;
+            opens = 0;
+            failedProbes = 0;
+            return changed;
+        }
+    }
+}
@@ -5,31 +5,55 @@ import com.appdynamics.extensions.alerts.customevents.*;
 import com.appdynamics.extensions.snmp.api.*;
 import com.appdynamics.extensions.snmp.config.Configuration;
 import com.appdynamics.extensions.snmp.config.ControllerConfig;
+import com.appdynamics.extensions.snmp.metrics.PipelineMetrics;
+import com.appdynamics.extensions.snmp.metrics.PipelineStage;
 import com.google.common.base.Joiner;
 import com.google.common.base.Strings;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.Futures;
 import org.apache.log4j.Logger;
 
 import java.io.UnsupportedEncodingException;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
 
 public class SNMPDataBuilder {
 
     private static final Joiner JOIN_ON_COMMA = Joiner.on(",");
+    //subtype of traps sent before all machines and ip addresses could be looked up
+    public static final String PARTIAL_ENRICHMENT = "PARTIAL_ENRICHMENT";
     private Configuration config;
-    private IService service = new ServiceImpl();
+    private final IService service;
     private final HttpClientBuilder clientBuilder;
     private final EndpointBuilder endpointBuilder;
+    private final TopologyProvider topologyProvider;
 
     private static Logger logger = Logger.getLogger(SNMPDataBuilder.class);
 
 
     SNMPDataBuilder(Configuration config) {
+        this(config, null);
+    }
+
+    /**
+     * @param topologyProvider source to resolve nodes and tiers from, null to always query the controller
+     */
+    SNMPDataBuilder(Configuration config, TopologyProvider topologyProvider) {
+        this(config, topologyProvider, new ServiceImpl());
+    }
+
+    /**
+     * @param service client of the controller REST API, shared by the events of a long running process
+     */
+    SNMPDataBuilder(Configuration config, TopologyProvider topologyProvider, IService service) {
         this.config = config;
+        this.topologyProvider = topologyProvider;
+        this.service = service;
         ControllerConfig controller = config.getController();
-        clientBuilder = new HttpClientBuilder(controller.isUseSsl(), controller.getUserAccount(), controller.getPassword(), controller.getConnectTimeoutInSeconds() * 1000, controller.getSocketTimeoutInSeconds() * 1000);
+        clientBuilder = new HttpClientBuilder(controller);
         endpointBuilder = new EndpointBuilder();
     }
 
@@ -57,13 +81,35 @@ public class SNMPDataBuilder {
         List<String> affectedNodes = getNodes(violationEvent);
         //get tiers
         List<String> affectedTiers = getTiers(violationEvent);
+        //the controller lookups run concurrently, the trap waits for them no longer than the enrichment timeout
+        EnrichmentBudget budget = new EnrichmentBudget(config.getEnrichmentTimeoutInMillis());
+        //for BTs, when the health rule is configured to be triggered when the condition fails on
+        // avergae number of nodes in the tier, the controller doesn't pass tier name but just the application name.
+        //In such cases, tier name needs to be pulled from API.
+        Future<String> btTier = null;
+        if(affectedTiers.isEmpty() && isAffectedEntityType(violationEvent,"BUSINESS_TRANSACTION")){
+            btTier = budget.submit(getTiersFromBTApi(violationEvent));
+        }
+        Future<ResolvedTopology> topology = null;
+        if(config.isFetchMachineInfoFromApi() && (btTier != null || !affectedNodes.isEmpty() || !affectedTiers.isEmpty())){
+            topology = budget.submit(resolveTopology(Integer.parseInt(violationEvent.getAppID())));
+        }
+        if(btTier != null){
+            String btTiers = budget.await(btTier, "tier of business transaction " + violationEvent.getAffectedEntityID());
+            if(!Strings.isNullOrEmpty(btTiers)){
+                affectedTiers.add(btTiers);
+            }
+        }
         //get ip addresses and populate ip addresses, machine names
         if(config.isFetchMachineInfoFromApi()){
-            populateMachineInfo(violationEvent, affectedNodes, affectedTiers, snmpData);
+            populateMachineInfo(violationEvent, topology, budget, affectedNodes, affectedTiers, snmpData);
         } else {
             snmpData.setMachines(" ");
             snmpData.setIpAddresses(" ");
         }
+        if(budget.isPartial()){
+            snmpData.setSubtype(PARTIAL_ENRICHMENT);
+        }
         snmpData.setNodes( JOIN_ON_COMMA.join((affectedNodes)));
         snmpData.setTiers( JOIN_ON_COMMA.join((affectedTiers)));
         snmpData.setReasonCode(getReasonCode(violationEvent.getAffectedEntityType(),violationEvent.getAppID(),violationEvent.getHealthRuleName()));
@@ -72,28 +118,41 @@ public class SNMPDataBuilder {
     }
 
 
-    private void populateMachineInfo(HealthRuleViolationEvent violationEvent, List<String> affectedNodes, List<String> affectedTiers, ADSnmpData snmpData) {
+    private void populateMachineInfo(HealthRuleViolationEvent violationEvent, Future<ResolvedTopology> topologyLookup, EnrichmentBudget budget,
+                                     List<String> affectedNodes, List<String> affectedTiers, ADSnmpData snmpData) {
         logger.debug("Affected Tiers : " + affectedTiers);
         logger.debug("Affected Nodes : " + affectedNodes);
         List<String> machines = Lists.newArrayList();
         List<String> ipAddresses = Lists.newArrayList();
 
-        try {
-            List<Node> nodesInAffectedTiers = null;
-            if(!affectedTiers.isEmpty()){
-                nodesInAffectedTiers  = getAllNodesFromTiers(Integer.parseInt(violationEvent.getAppID()),affectedTiers);
-                collectMachineInfo(machines, ipAddresses, nodesInAffectedTiers);
-            }
-            if(!affectedNodes.isEmpty()){
-                for(String affectedNode : affectedNodes){
-                    List<Node> nodes = getNodeFromNodeName(Integer.parseInt(violationEvent.getAppID()),affectedNode);
-                    collectMachineInfo(machines, ipAddresses, nodes);
-                    //extracting tiers from the nodes and setting it..ugly..needs a clean approach.
-                    affectedTiers.addAll(collectTierInfo(nodes,affectedTiers));
-                }
+        ResolvedTopology topology = null;
+        if(topologyLookup != null){
+            topology = budget.await(topologyLookup, "topology of application " + violationEvent.getAppID());
+        }
+        if(topology == null){
+            topology = new ResolvedTopology(null, false);
+        }
+        int appId = Integer.parseInt(violationEvent.getAppID());
+        //lookups that are not answered by the topology are sent to the controller at once. The topology answers even
+        //after the deadline, only the controller lookups are then skipped and the trap is marked partial
+        List<Future<List<Node>>> nodesInAffectedTiers = Lists.newArrayList();
+        for(String tier : affectedTiers){
+            nodesInAffectedTiers.add(getAllNodesInTier(topology, budget, appId, tier));
+        }
+        List<Future<List<Node>>> affectedNodeLookups = Lists.newArrayList();
+        for(String affectedNode : affectedNodes){
+            affectedNodeLookups.add(getNodeFromNodeName(topology, budget, appId, affectedNode));
+        }
+        for(int i = 0; i < nodesInAffectedTiers.size(); i++){
+            collectMachineInfo(machines, ipAddresses, budget.await(nodesInAffectedTiers.get(i), "nodes of tier " + affectedTiers.get(i)));
+        }
+        for(int i = 0; i < affectedNodeLookups.size(); i++){
+            List<Node> nodes = budget.await(affectedNodeLookups.get(i), "node " + affectedNodes.get(i));
+            if(nodes != null){
+                collectMachineInfo(machines, ipAddresses, nodes);
+                //extracting tiers from the nodes and setting it..ugly..needs a clean approach.
+                affectedTiers.addAll(collectTierInfo(nodes,affectedTiers));
             }
-        } catch (UnsupportedEncodingException e) {
-            logger.error("Encoding error",e);
         }
         snmpData.setMachines(JOIN_ON_COMMA.join(machines));
         snmpData.setIpAddresses(JOIN_ON_COMMA.join(ipAddresses));
@@ -116,39 +175,131 @@ public class SNMPDataBuilder {
         }
     }
 
-    private List<Node> getNodeFromNodeName(int appId, String affectedNode) throws UnsupportedEncodingException {
-        ControllerConfig controller = config.getController();
-        String endpoint = endpointBuilder.getANodeEndpoint(controller,appId,affectedNode);
-        List<Node> nodes = service.getNodes(clientBuilder,endpoint);
-        return nodes;
+    /**
+     * @return the cached topology of the application or null if there is no cache or it could not be loaded
+     */
+    private Topology getTopology(int appId) {
+        if(topologyProvider == null){
+            return null;
+        }
+        try {
+            return topologyProvider.getTopology(appId);
+        } catch (ServiceException e) {
+            logger.warn("Topology of application " + appId + " is not available, querying the controller directly", e);
+            return null;
+        }
     }
 
-    private List<Node> getAllNodesFromTiers(int applicationId,List<String> tiers) throws UnsupportedEncodingException {
-        List<Node> nodes = Lists.newArrayList();
-        for(String tier:tiers){
-            nodes.addAll(getAllNodesInTier(applicationId,tier));
+    /**
+     * Takes the cached topology or fetches all nodes of the application with a single request, so that resolving
+     * any number of affected nodes and tiers costs at most one round trip.
+     */
+    private Callable<ResolvedTopology> resolveTopology(final int appId) {
+        return new Callable<ResolvedTopology>() {
+            @Override
+            public ResolvedTopology call() {
+                Topology topology = getTopology(appId);
+                if(topology != null){
+                    return new ResolvedTopology(topology, true);
+                }
+                try {
+                    String endpoint = endpointBuilder.buildNodesEndpoint(config.getController(), appId);
+                    return new ResolvedTopology(ApplicationTopology.of(getNodes(PipelineMetrics.REST_APPLICATION_NODES, endpoint), null), false);
+                } catch (ServiceException e) {
+                    logger.warn("Unable to fetch the nodes of application " + appId + ", querying nodes and tiers one by one", e);
+                    return new ResolvedTopology(null, false);
+                }
+            }
+        };
+    }
+
+    private Future<List<Node>> getNodeFromNodeName(ResolvedTopology topology, EnrichmentBudget budget, final int appId, final String affectedNode) {
+        if(topology.topology != null){
+            List<Node> nodes = topology.topology.getNodes(affectedNode);
+            if(!nodes.isEmpty() || !topology.lookUpMissing){
+                return Futures.immediateFuture(nodes);
+            }
         }
-        return nodes;
+        return budget.submit(new Callable<List<Node>>() {
+            @Override
+            public List<Node> call() throws UnsupportedEncodingException {
+                ControllerConfig controller = config.getController();
+                String endpoint = endpointBuilder.getANodeEndpoint(controller,appId,affectedNode);
+                return getNodes(PipelineMetrics.REST_NODE, endpoint);
+            }
+        });
     }
 
-    private List<Node> getAllNodesInTier(int applicationId,String tier) throws UnsupportedEncodingException {
-        ControllerConfig controller = config.getController();
-        String endpoint = endpointBuilder.getNodesFromTierEndpoint(controller,applicationId,tier);
-        List<Node> nodes = service.getNodes(clientBuilder,endpoint);
+    private Future<List<Node>> getAllNodesInTier(ResolvedTopology topology, EnrichmentBudget budget, final int applicationId, final String tier) {
+        if(topology.topology != null){
+            List<Node> nodesInTier = topology.topology.getNodesInTier(tier);
+            if(nodesInTier != null && (!nodesInTier.isEmpty() || !topology.lookUpMissing)){
+                return Futures.immediateFuture(nodesInTier);
+            }
+        }
+        return budget.submit(new Callable<List<Node>>() {
+            @Override
+            public List<Node> call() throws UnsupportedEncodingException {
+                ControllerConfig controller = config.getController();
+                String endpoint = endpointBuilder.getNodesFromTierEndpoint(controller,applicationId,tier);
+                return getNodes(PipelineMetrics.REST_TIER_NODES, endpoint);
+            }
+        });
+    }
+
+    /**
+     * Fetches nodes from the controller, timed as the stage of the lookup.
+     */
+    private List<Node> getNodes(PipelineStage stage, String endpoint) {
+        long start = System.nanoTime();
+        List<Node> nodes;
+        try {
+            nodes = service.getNodes(clientBuilder, endpoint);
+        } catch (RuntimeException e) {
+            stage.recordFailure(start);
+            throw e;
+        }
+        stage.record(start);
         return nodes;
     }
 
 
-    private String getTiersFromBTApi(HealthRuleViolationEvent violationEvent) {
-        ControllerConfig controller = config.getController();
-        String endpoint = endpointBuilder.buildBTsEndpoint(controller,Integer.parseInt(violationEvent.getAppID()));
-        List<BusinessTransaction> bts = service.getBTs(clientBuilder,endpoint);
-        for(BusinessTransaction bt : bts){
-            if(bt.getId() == Integer.parseInt(violationEvent.getAffectedEntityID())){
-                return bt.getTierName();
+    private Callable<String> getTiersFromBTApi(final HealthRuleViolationEvent violationEvent) {
+        return new Callable<String>() {
+            @Override
+            public String call() {
+                Topology topology = getTopology(Integer.parseInt(violationEvent.getAppID()));
+                if(topology != null){
+                    String tier = topology.getBtTier(Integer.parseInt(violationEvent.getAffectedEntityID()));
+                    if(tier != null){
+                        return tier;
+                    }
+                }
+                ControllerConfig controller = config.getController();
+                String endpoint = endpointBuilder.buildBTsEndpoint(controller,Integer.parseInt(violationEvent.getAppID()));
+                final int btId = Integer.parseInt(violationEvent.getAffectedEntityID());
+                final String[] tier = {""};
+                long start = System.nanoTime();
+                try {
+                    //stops parsing the list at the business transaction
+                    service.getBTs(clientBuilder, endpoint, new BusinessTransactionHandler() {
+                        @Override
+                        public boolean handle(BusinessTransaction bt) {
+                            if(bt.getId() == btId){
+                                tier[0] = bt.getTierName();
+                                return false;
+                            }
+                            return true;
+                        }
+                    });
+                } catch (RuntimeException e) {
+                    PipelineMetrics.REST_BUSINESS_TRANSACTIONS.recordFailure(start);
+                    throw e;
+                }
+                PipelineMetrics.REST_BUSINESS_TRANSACTIONS.record(start);
+                return tier[0];
             }
-        }
-        return "";
+        };
     }
 
 
@@ -224,15 +375,6 @@ public class SNMPDataBuilder {
                 }
             }
         }
-        //for BTs, when the health rule is configured to be triggered when the condition fails on
-        // avergae number of nodes in the tier, the controller doesn't pass tier name but just the application name.
-        //In such cases, tier name needs to be pulled from API.
-        if(tiers.isEmpty() && isAffectedEntityType(violationEvent,"BUSINESS_TRANSACTION")){
-            String btTiers = getTiersFromBTApi(violationEvent);
-            if(!Strings.isNullOrEmpty(btTiers)){
-                tiers.add(btTiers);
-            }
-        }
         return tiers;
     }
 
@@ -307,4 +449,18 @@ public class SNMPDataBuilder {
         return controllerHostName;
     }
 
+    /**
+     * Topology used for one event. Only a cached topology can miss nodes and tiers created since it was loaded.
+     */
+    private static class ResolvedTopology {
+
+        private final Topology topology;
+        private final boolean lookUpMissing;
+
+        private ResolvedTopology(Topology topology, boolean lookUpMissing) {
+            this.topology = topology;
+            this.lookUpMissing = lookUpMissing;
+        }
+    }
+
 }
@@ -2,19 +2,37 @@ package com.appdynamics.extensions.snmp;
 
 
 import com.appdynamics.extensions.snmp.config.*;
+import com.appdynamics.extensions.snmp.metrics.PipelineMetrics;
+import com.appdynamics.extensions.snmp.metrics.PipelineStage;
+import com.appdynamics.extensions.snmp.mib.AppdCtlrMib;
+import com.google.common.base.Function;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.apache.log4j.Logger;
 import org.snmp4j.*;
-import org.snmp4j.mp.MPv3;
+import org.snmp4j.asn1.BEROutputStream;
+import org.snmp4j.event.ResponseEvent;
+import org.snmp4j.event.ResponseListener;
+import org.snmp4j.mp.MessageProcessingModel;
+import org.snmp4j.mp.PduHandle;
 import org.snmp4j.mp.SnmpConstants;
-import org.snmp4j.security.*;
+import org.snmp4j.security.SecurityLevel;
+import org.snmp4j.security.SecurityModel;
 import org.snmp4j.smi.*;
-import org.snmp4j.transport.DefaultUdpTransportMapping;
 
 import java.io.IOException;
-import java.lang.reflect.Field;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
 
 import static com.appdynamics.extensions.snmp.CommonUtils.getSysUptime;
 
@@ -32,168 +50,535 @@ public class SNMPSender {
 
 
 
-    public void sendTrap(Configuration config, ADSnmpData snmpData,String trapOid) {
+    public static final String SENDER_THREADS = "appDynamics.snmp.sender.threads";
+    public static final int DEFAULT_SENDER_THREADS = 16;
+    private static final int SEND_QUEUE_SIZE = 1024;
+    private static final int MAX_MESSAGE_SIZE = 65535;
 
+    //trap OID of the INFORMs probing receivers whose circuit is open, outside the notifications of the MIB
+    static final OID PROBE_OID = new OID(AppdCtlrMib.NOTIFICATIONS).append(0);
+
+    private final SnmpSessionPool sessionPool = new SnmpSessionPool();
+    private final ReceiverCircuitBreaker circuitBreaker = new ReceiverCircuitBreaker(new ReceiverCircuitBreaker.Prober() {
+        @Override
+        public Boolean probe(Configuration config, Receiver receiver) {
+            return SNMPSender.this.probe(config, receiver);
+        }
+    });
+    private final ListeningExecutorService sendExecutor = MoreExecutors.listeningDecorator(
+            createSendExecutor(Integer.getInteger(SENDER_THREADS, DEFAULT_SENDER_THREADS)));
+    private final TrapShaper shaper = new TrapShaper();
+
+    /**
+     * Sends the trap to all registered receivers concurrently. Each receiver has to complete within
+     * receiverTimeoutInMillis of starting its send, and all of them within sendTimeoutInMillis of this call.
+     * v1 and v2c traps only differ in their destination, so they are encoded once and the same message is
+     * written to every receiver. Receivers that failed repeatedly are skipped until a probe reaches them again,
+     * see {@link ReceiverCircuitBreaker}.
+     * With useInform, every receiver gets an INFORM without waiting for the responses of the others, and a receiver
+     * only succeeds once it acknowledged its INFORM. Receivers with a maxTrapsPerSecond are paced by {@link TrapShaper},
+     * a paced trap counts against the event deadline while it waits. {@link TrapSpool} does not wait for paced traps,
+     * see {@link #dispatchTrap}.
+     * @throws SNMPTrapException listing every receiver that failed or timed out
+     */
+    public void sendTrap(Configuration config, ADSnmpData snmpData,OID trapOid) {
+        sendTrap(config, snmpData, trapOid, Arrays.asList(config.getReceivers()));
+    }
+
+    /**
+     * Sends the trap to the given receivers only, e.g. the ones a spooled trap has not reached yet.
+     * @throws SNMPTrapException listing every receiver that failed or timed out
+     */
+    public void sendTrap(Configuration config, ADSnmpData snmpData, OID trapOid, List<Receiver> receivers) {
+        send(config, snmpData, trapOid, receivers, false).throwIfFailed();
+    }
+
+    /**
+     * Like {@link #sendTrap(Configuration, ADSnmpData, OID, List)}, but only waits for the receivers whose trap went out
+     * right away. Traps held back by a receiver's pacing are left to the {@link TrapShaper}, so that a burst for a paced
+     * receiver neither holds up the event thread nor fails at sendTimeoutInMillis. The caller learns of their outcome
+     * through {@link Delivery#getPaced()}.
+     */
+    Delivery dispatchTrap(Configuration config, ADSnmpData snmpData, OID trapOid, List<Receiver> receivers) {
+        return send(config, snmpData, trapOid, receivers, true);
+    }
+
+    private Delivery send(Configuration config, ADSnmpData snmpData, OID trapOid, List<Receiver> receivers, boolean releasePaced) {
+        logger.info("SNMP version " + config.getSnmpVersion());
+        long eventDeadline = System.currentTimeMillis() + config.getSendTimeoutInMillis();
         ArrayList<String> exceptions = new ArrayList<String>();
-        //sending SNMP traps to all registered receivers
-        for(Receiver receiver : config.getReceivers()){
-            logger.info("SNMP version " + config.getSnmpVersion());
-            logger.debug("Sending trap to " + receiver.getHost() + ":" + receiver.getPort());
+        List<Receiver> failedReceivers = new ArrayList<Receiver>();
+        List<ListenableFuture<Receiver>> paced = new ArrayList<ListenableFuture<Receiver>>();
+        try {
+            if (config.getSnmpVersion() == SNMP_V1) {
+                fillEmptyV1Fields(snmpData);
+            }
+            Snmp snmp = getSession(config);
+            boolean inform = config.isUseInform() && config.getSnmpVersion() != SNMP_V1;
+            byte[] message = null;
+            if (!inform && config.getSnmpVersion() != SNMP_V3) {
+                long start = System.nanoTime();
+                message = encode(snmp, config, snmpData, trapOid);
+                PipelineMetrics.PDU_BUILD.record(start);
+            }
+            Map<ReceiverTask, Future<Void>> sends = new LinkedHashMap<ReceiverTask, Future<Void>>();
+            //sending SNMP traps to all registered receivers
+            for (Receiver receiver : receivers) {
+                if (!circuitBreaker.allows(receiver)) {
+                    exceptions.add("Skipped unreachable receiver " + receiver.getHost() + ":" + receiver.getPort());
+                    failedReceivers.add(receiver);
+                    continue;
+                }
+                final ReceiverTask task = new ReceiverTask(snmp, config, receiver, snmpData, trapOid, message);
+                final boolean confirmed = inform;
+                ListenableFuture<Void> send = shaper.submit(receiver, new TrapShaper.Dispatch() {
+                    @Override
+                    public ListenableFuture<Void> start() {
+                        task.dispatched = true;
+                        return confirmed ? sendInform(task) : sendExecutor.submit(task);
+                    }
+                });
+                if (send == null) {
+                    //the receiver is slow, not broken
+                    exceptions.add("Dropped trap to " + receiver.getHost() + ":" + receiver.getPort() + ", too many traps are waiting for it");
+                    failedReceivers.add(receiver);
+                    continue;
+                }
+                if (releasePaced && !task.dispatched) {
+                    paced.add(release(task, send));
+                    continue;
+                }
+                sends.put(task, send);
+            }
+            for (Map.Entry<ReceiverTask, Future<Void>> send : sends.entrySet()) {
+                String error = await(send.getKey(), send.getValue(), config.getReceiverTimeoutInMillis(), eventDeadline);
+                Receiver receiver = send.getKey().receiver;
+                if (error != null) {
+                    exceptions.add(error);
+                    failedReceivers.add(receiver);
+                    circuitBreaker.recordFailure(config, receiver);
+                } else {
+                    circuitBreaker.recordSuccess(receiver);
+                }
+            }
+        } catch (IOException e) {
+            logger.error("Unable to open the SNMP session.", e);
+            exceptions.add("Exception while opening the SNMP session " + e);
+            failedReceivers = receivers;
+        }
+        return new Delivery(exceptions, failedReceivers, paced);
+    }
+
+    /**
+     * Records the outcome of a paced trap once the shaper sent it.
+     * @return completes with the receiver if the trap failed, with null if it was sent
+     */
+    private ListenableFuture<Receiver> release(ReceiverTask task, ListenableFuture<Void> send) {
+        final Configuration config = task.config;
+        final Receiver receiver = task.receiver;
+        final SettableFuture<Receiver> result = SettableFuture.create();
+        Futures.addCallback(send, new FutureCallback<Void>() {
+            @Override
+            public void onSuccess(Void value) {
+                circuitBreaker.recordSuccess(receiver);
+                result.set(null);
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                logger.error("Unable to send paced trap to " + receiver.getHost() + ":" + receiver.getPort(), t);
+                circuitBreaker.recordFailure(config, receiver);
+                result.set(receiver);
+            }
+        }, MoreExecutors.directExecutor());
+        return result;
+    }
+
+    /**
+     * Waits for a single receiver.
+     * @return the error message or null if the trap was sent
+     */
+    private String await(ReceiverTask task, Future<Void> send, int receiverTimeout, long eventDeadline) {
+        Receiver receiver = task.receiver;
+        while (true) {
+            long now = System.currentTimeMillis();
+            long startedAt = task.startedAt;
+            long receiverDeadline = (startedAt > 0 ? startedAt : now) + receiverTimeout;
+            long wait = Math.min(receiverDeadline, eventDeadline) - now;
             try {
-                if (config.getSnmpVersion() == SNMP_V1) {
-                    sendV1Trap(receiver.getHost(), Integer.toString(receiver.getPort()), config.getCommunity(), config.getSenderHost(), snmpData,trapOid);
-                } else if (config.getSnmpVersion() == SNMP_V2) {
-                    //Debug for ABN AMRO testing
-                    logger.info("ABN AMRO SNMP Data: " + snmpData);
-                    sendV2Trap(receiver.getHost(), Integer.toString(receiver.getPort()), config.getCommunity(), config.getSenderHost(), snmpData,trapOid);
-                } else if (config.getSnmpVersion() == SNMP_V3) {
-                    String propertiesFile = ConfigLoader.getEngineConfig(config.getIsMultiTenant(), config.getAccountName());
-                    logger.info("Loading engine properties from " + propertiesFile);
-                    EngineProperties engineProperties = new EngineProperties(propertiesFile);
-                    //logger.debug("Loaded Engine Properties => " + engineProperties);
-                    sendV3Trap(receiver.getHost(), Integer.toString(receiver.getPort()), config.getSenderHost(), snmpData, config.getSnmpV3Configuration(),trapOid,engineProperties);
-                    //logger.debug("New Engine Properties => " + engineProperties);
+                send.get(Math.max(0, wait), TimeUnit.MILLISECONDS);
+                return null;
+            } catch (TimeoutException e) {
+                //the receiver's clock only starts once the executor picked it up, the event deadline always applies
+                if (task.startedAt == 0 && System.currentTimeMillis() < eventDeadline) {
+                    continue;
                 }
-            } catch (IOException e) {
-                logger.error("Something unforeseen has happened.",e);
-                exceptions.add("Exception while sending trap to " + receiver.getHost() + ":" + receiver.getPort()+ e);
-            } catch (IllegalAccessException e) {
-                logger.error("Illegal access",e);
-                exceptions.add("Exception while sending trap to " + receiver.getHost() + ":" + receiver.getPort()+ e);
+                send.cancel(true);
+                logger.error("Timed out sending trap to " + receiver.getHost() + ":" + receiver.getPort());
+                return "Timed out while sending trap to " + receiver.getHost() + ":" + receiver.getPort();
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                logger.error("Something unforeseen has happened.", cause);
+                return "Exception while sending trap to " + receiver.getHost() + ":" + receiver.getPort() + cause;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                send.cancel(true);
+                return "Interrupted while sending trap to " + receiver.getHost() + ":" + receiver.getPort();
             }
         }
-        if(exceptions.size() > 0){
-            throw new SNMPTrapException(exceptions.toString());
+    }
+
+    private Snmp getSession(Configuration config) throws IOException {
+        if (config.getSnmpVersion() == SNMP_V3) {
+            String propertiesFile = ConfigLoader.getEngineConfig(config.getIsMultiTenant(), config.getAccountName());
+            logger.info("Loading engine properties from " + propertiesFile);
+            EngineProperties engineProperties = new EngineProperties(propertiesFile);
+            return sessionPool.getUserSession(config.getSnmpV3Configuration(), engineProperties);
         }
+        return sessionPool.getCommunitySession(config.getSnmpVersion());
     }
 
+    private void sendTrap(Snmp snmp, Configuration config, Receiver receiver, ADSnmpData snmpData, OID trapOid, byte[] message)
+            throws IOException {
+        logger.debug("Sending trap to " + receiver.getHost() + ":" + receiver.getPort());
+        if (message != null) {
+            sendMessage(snmp, receiver.getHost(), Integer.toString(receiver.getPort()), message);
+        } else if (config.getSnmpVersion() == SNMP_V3) {
+            sendV3Trap(snmp, receiver.getHost(), Integer.toString(receiver.getPort()), config.getSenderHost(), snmpData, config.getSnmpV3Configuration(),trapOid);
+        }
+    }
 
+    /**
+     * Sends the INFORM without waiting for its response.
+     * @return completes once the receiver acknowledged the INFORM, fails if it did not within receiverTimeoutInMillis
+     */
+    private ListenableFuture<Void> sendInform(ReceiverTask task) {
+        SettableFuture<Void> ack = SettableFuture.create();
+        Configuration config = task.config;
+        int retries = Math.max(0, config.getInformRetries());
+        long start = System.nanoTime();
+        Target target = createTarget(config, task.receiver, config.getReceiverTimeoutInMillis() / (retries + 1), retries);
+        PDU pdu = createInformPdu(config, task.snmpData, task.trapOid);
+        PipelineMetrics.PDU_BUILD.record(start);
+        task.startedAt = System.currentTimeMillis();
+        task.startedAtNanos = System.nanoTime();
+        try {
+            task.snmp.send(pdu, target, task, new InformListener(ack));
+        } catch (IOException e) {
+            task.sendStage.recordFailure(task.startedAtNanos);
+            ack.setException(e);
+        }
+        return ack;
+    }
 
     /**
-     * Sends v1 Traps
-     * @param 	host 						Host to send trap to
-     * @param 	port						Port location to send trap to
-     * @param 	community					Community (Default: PUBLIC)
-     * @param 	trapHost					Host of the source sending the trap
-     * @param 	snmpData					Trap Data
-     * @throws java.io.IOException                    Failed to send trap exception
-     * @throws 	IllegalArgumentException 	Failed to access snmp trap variables
-     * @throws 	IllegalAccessException 		Failed to access snmp trap variables
+     * Builds and BER encodes the v1/v2c trap for the configured community.
+     * @throws MessageException if the message processing model refused the PDU
      */
+    private byte[] encode(Snmp snmp, Configuration config, ADSnmpData snmpData, OID trapOid)
+            throws IOException {
+        PDU pdu;
+        int messageProcessingModel;
+        int securityModel;
+        if (config.getSnmpVersion() == SNMP_V1) {
+            pdu = createV1Pdu(config.getSenderHost(), snmpData, trapOid);
+            messageProcessingModel = MessageProcessingModel.MPv1;
+            securityModel = SecurityModel.SECURITY_MODEL_SNMPv1;
+        } else {
+            pdu = createV2Pdu(config.getSenderHost(), snmpData, trapOid);
+            messageProcessingModel = MessageProcessingModel.MPv2c;
+            securityModel = SecurityModel.SECURITY_MODEL_SNMPv2c;
+        }
+        MessageDispatcher dispatcher = snmp.getMessageDispatcher();
+        PduHandle handle = new PduHandle(dispatcher.getNextRequestID());
+        pdu.setRequestID(new Integer32(handle.getTransactionID()));
+
+        BEROutputStream outgoingMessage = new BEROutputStream();
+        int status = dispatcher.getMessageProcessingModel(messageProcessingModel).prepareOutgoingMessage(null,
+                MAX_MESSAGE_SIZE, messageProcessingModel, securityModel, new OctetString(config.getCommunity()).getValue(),
+                SecurityLevel.NOAUTH_NOPRIV, pdu, false, handle, new GenericAddress(), outgoingMessage);
+        if (status != SnmpConstants.SNMP_MP_OK) {
+            throw new MessageException("Unable to encode trap, status " + status);
+        }
+        return outgoingMessage.getBuffer().array();
+    }
+
     @SuppressWarnings("rawtypes")
-    private void sendV1Trap(String host, String port, String community, String trapHost, ADSnmpData snmpData,String trapOid)
-            throws IOException, IllegalArgumentException, IllegalAccessException
-    {
-        Lookup lookUp = new Lookup();
+    private void sendMessage(Snmp snmp, String host, String port, byte[] message) throws IOException {
+        Address address = new UdpAddress(host + "/" + port);
+        TransportMapping transport = snmp.getMessageDispatcher().getTransport(address);
+        if (transport == null) {
+            throw new IOException("No transport for " + address);
+        }
+        transport.sendMessage(address, message);
+    }
 
-        TransportMapping transport = new DefaultUdpTransportMapping();
-        transport.listen();
+    private static ExecutorService createSendExecutor(int threads) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(SEND_QUEUE_SIZE),
+                new ThreadFactoryBuilder().setNameFormat("snmp-trap-sender-%d").setDaemon(true).build(),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
 
-        CommunityTarget comTarget = new CommunityTarget();
-        comTarget.setCommunity(new OctetString(community));
-        comTarget.setVersion(SnmpConstants.version1);
-        comTarget.setAddress(new UdpAddress(host + "/" + port));
-        comTarget.setRetries(2);
-        comTarget.setTimeout(5000);
+    private class ReceiverTask implements Callable<Void> {
+
+        private final Snmp snmp;
+        private final Configuration config;
+        private final Receiver receiver;
+        private final ADSnmpData snmpData;
+        private final OID trapOid;
+        private final byte[] message;
+        private final PipelineStage sendStage;
+        //set once the shaper let the trap go, false while it waits for the receiver's pacing
+        private volatile boolean dispatched;
+        private volatile long startedAt;
+        private volatile long startedAtNanos;
+
+        ReceiverTask(Snmp snmp, Configuration config, Receiver receiver, ADSnmpData snmpData, OID trapOid, byte[] message) {
+            this.snmp = snmp;
+            this.config = config;
+            this.receiver = receiver;
+            this.snmpData = snmpData;
+            this.trapOid = trapOid;
+            this.message = message;
+            this.sendStage = PipelineMetrics.send(receiver.getHost() + ":" + receiver.getPort());
+        }
 
-        TimeTicks sysUpTime = new TimeTicks();
-        sysUpTime.fromMilliseconds(getSysUptime());
+        @Override
+        public Void call() throws Exception {
+            startedAt = System.currentTimeMillis();
+            startedAtNanos = System.nanoTime();
+            try {
+                sendTrap(snmp, config, receiver, snmpData, trapOid, message);
+            } catch (Exception e) {
+                sendStage.recordFailure(startedAtNanos);
+                throw e;
+            }
+            sendStage.record(startedAtNanos);
+            return null;
+        }
+    }
 
-        PDUv1 pdu = new PDUv1();
-        pdu.setType(PDU.V1TRAP);
-        pdu.setEnterprise(new OID(trapOid));
-        pdu.setGenericTrap(PDUv1.ENTERPRISE_SPECIFIC);
-        pdu.setSpecificTrap(1);
-        pdu.setAgentAddress(new IpAddress(trapHost));
 
-        pdu.add(new VariableBinding(SnmpConstants.sysUpTime,  sysUpTime));
-        pdu.add(new VariableBinding(SnmpConstants.snmpTrapOID, new OID(trapOid)));
-        pdu.add(new VariableBinding(SnmpConstants.snmpTrapAddress, new IpAddress(trapHost)));
+    /**
+     * Outcome of a send. Receivers that failed right away are known when the send returns, paced ones later.
+     */
+    static class Delivery {
+
+        private static final Function<List<Receiver>, List<Receiver>> FAILED = new Function<List<Receiver>, List<Receiver>>() {
+            @Override
+            public List<Receiver> apply(List<Receiver> outcomes) {
+                List<Receiver> failed = new ArrayList<Receiver>();
+                for (Receiver receiver : outcomes) {
+                    if (receiver != null) {
+                        failed.add(receiver);
+                    }
+                }
+                return failed;
+            }
+        };
 
-        if (snmpData.getMachines() == null || "".equals(snmpData.getMachines()) || " ".equals(snmpData.getMachines())) {
-            snmpData.setMachines(" ");
-        }
-        if (snmpData.getTiers() == null || "".equals(snmpData.getTiers()) || " ".equals(snmpData.getTiers())) {
-            snmpData.setTiers(" ");
+        private final List<String> errors;
+        private final List<Receiver> failedReceivers;
+        private final ListenableFuture<List<Receiver>> paced;
+
+        Delivery(List<String> errors, List<Receiver> failedReceivers, List<ListenableFuture<Receiver>> paced) {
+            this.errors = errors;
+            this.failedReceivers = failedReceivers;
+            this.paced = Futures.transform(Futures.allAsList(paced), FAILED, MoreExecutors.directExecutor());
         }
-        if (snmpData.getIpAddresses() == null || "".equals(snmpData.getIpAddresses()) || " ".equals(snmpData.getIpAddresses())) {
-            snmpData.setIpAddresses(" ");
+
+        List<Receiver> getFailedReceivers() {
+            return failedReceivers;
         }
 
-        for (Field field : snmpData.getClass().getDeclaredFields())
-        {
-            if(field.get(snmpData) != null) {
-                try {
-                    Object snmpVal = new OctetString(field.get(snmpData).toString());
+        /**
+         * @return completes with the receivers whose paced trap failed, once all paced traps were sent.
+         * Never completes for traps still waiting when the sender is closed
+         */
+        ListenableFuture<List<Receiver>> getPaced() {
+            return paced;
+        }
 
-                    if (!(snmpVal.equals(" ") || snmpVal.equals(""))) {
-                        pdu.add(new VariableBinding(new OID(lookUp.getOID(field.getName())), new OctetString(snmpVal.toString())));
-                    }
-                } catch (Throwable ex) {
-                    logger.error("Error reading snmp data field:", ex);
-                }
+        /**
+         * @throws SNMPTrapException listing every receiver that failed or timed out, paced ones aside
+         */
+        void throwIfFailed() {
+            if (!errors.isEmpty()) {
+                throw new SNMPTrapException(errors.toString(), failedReceivers);
             }
         }
+    }
+
+
+    /**
+     * Closes the pooled SNMP sessions and their transports, and stops probing receivers and pacing traps.
+     */
+    public void close() {
+        circuitBreaker.close();
+        shaper.close();
+        sessionPool.close();
+    }
+
+
+    /**
+     * Sends an INFORM to the receiver and waits for its response. Only receivers configured for INFORMs are probed,
+     * trap-only collectors and v3 receivers set up for our engine ID as the authoritative one never answer them.
+     * @return null for v1, which has no INFORM, and without useInform
+     */
+    private Boolean probe(Configuration config, Receiver receiver) {
+        if (config.getSnmpVersion() == SNMP_V1 || !config.isUseInform()) {
+            return null;
+        }
+        try {
+            Snmp snmp = getSession(config);
+            PDU pdu = config.getSnmpVersion() == SNMP_V3 ? new ScopedPDU() : new PDU();
+            pdu.setType(PDU.INFORM);
+            pdu.add(new VariableBinding(SnmpConstants.sysUpTime, getTimeTicks()));
+            pdu.add(new VariableBinding(SnmpConstants.snmpTrapOID, PROBE_OID));
+            ResponseEvent response = snmp.send(pdu, createTarget(config, receiver, config.getReceiverTimeoutInMillis(), 0));
+            return response != null && response.getResponse() != null;
+        } catch (IOException e) {
+            logger.debug("Unable to probe " + receiver.getHost() + ":" + receiver.getPort(), e);
+            return false;
+        }
+    }
+
 
-        Snmp snmp = new Snmp(transport);
-        snmp.send(pdu, comTarget);
-        snmp.close();
+    /**
+     * Target of INFORMs, for the configured community (v2c) or user (v3).
+     */
+    private Target createTarget(Configuration config, Receiver receiver, long timeout, int retries) {
+        Target target;
+        if (config.getSnmpVersion() == SNMP_V3) {
+            SnmpV3Configuration v3 = config.getSnmpV3Configuration();
+            UserTarget userTarget = new UserTarget();
+            userTarget.setVersion(SnmpConstants.version3);
+            userTarget.setSecurityLevel(Integer.valueOf(v3.getSecurityLevel()));
+            userTarget.setSecurityName(new OctetString(v3.getUsername()));
+            target = userTarget;
+        } else {
+            CommunityTarget communityTarget = new CommunityTarget();
+            communityTarget.setVersion(SnmpConstants.version2c);
+            communityTarget.setCommunity(new OctetString(config.getCommunity()));
+            target = communityTarget;
+        }
+        target.setAddress(new UdpAddress(receiver.getHost() + "/" + receiver.getPort()));
+        target.setRetries(retries);
+        target.setTimeout(timeout);
+        return target;
     }
 
+
     /**
-     * Sends v2 Traps
-     * @param 	host 						Host to send trap to
-     * @param 	port						Port location to send trap to
-     * @param 	community					Community (Default: PUBLIC)
+     * Builds the v2c/v3 INFORM PDU, it carries the same variable bindings as the trap.
+     */
+    private PDU createInformPdu(Configuration config, ADSnmpData snmpData, OID trapOid) {
+        PDU pdu = config.getSnmpVersion() == SNMP_V3 ? new ScopedPDU() : new PDU();
+        pdu.add(new VariableBinding(SnmpConstants.sysUpTime, getTimeTicks()));
+        pdu.add(new VariableBinding(SnmpConstants.snmpTrapOID, trapOid));
+        pdu.add(new VariableBinding(SnmpConstants.snmpTrapAddress, new IpAddress(config.getSenderHost())));
+
+        ADSnmpDataSchema.addVariableBindings(pdu, snmpData);
+
+        pdu.setType(PDU.INFORM);
+        return pdu;
+    }
+
+
+    /**
+     * Completes the future of an INFORM with its acknowledgement or timeout.
+     */
+    private static class InformListener implements ResponseListener {
+
+        private final SettableFuture<Void> ack;
+
+        InformListener(SettableFuture<Void> ack) {
+            this.ack = ack;
+        }
+
+        @Override
+        public void onResponse(ResponseEvent event) {
+            //async requests stay registered until they are cancelled
+            ((Snmp) event.getSource()).cancel(event.getRequest(), this);
+            ReceiverTask task = (ReceiverTask) event.getUserObject();
+            Receiver receiver = task.receiver;
+            if (event.getResponse() != null) {
+                logger.debug("INFORM acknowledged by " + receiver.getHost() + ":" + receiver.getPort() + " in "
+                        + (System.currentTimeMillis() - task.startedAt) + " ms");
+                task.sendStage.record(task.startedAtNanos);
+                ack.set(null);
+            } else if (event.getError() != null) {
+                task.sendStage.recordFailure(task.startedAtNanos);
+                ack.setException(event.getError());
+            } else {
+                task.sendStage.recordFailure(task.startedAtNanos);
+                ack.setException(new IOException("INFORM not acknowledged by " + receiver.getHost() + ":" + receiver.getPort()));
+            }
+        }
+    }
+
+    /**
+     * Builds the v1 Trap PDU
      * @param 	trapHost					Host of the source sending the trap
      * @param 	snmpData					Trap Data
-     * @throws 	java.io.IOException					Failed to send trap exception
-     * @throws 	IllegalArgumentException 	Failed to access snmp trap variables
-     * @throws 	IllegalAccessException 		Failed to access snmp trap variables
      */
-    @SuppressWarnings("rawtypes")
-    private void sendV2Trap(String host, String port, String community, String trapHost, ADSnmpData snmpData,String trapOid)
-            throws IOException, IllegalArgumentException, IllegalAccessException
+    private PDUv1 createV1Pdu(String trapHost, ADSnmpData snmpData,OID trapOid)
     {
-        Lookup lookUp = new Lookup();
+        TimeTicks sysUpTime = new TimeTicks();
+        sysUpTime.fromMilliseconds(getSysUptime());
 
-        TransportMapping transport = new DefaultUdpTransportMapping();
-        transport.listen();
+        PDUv1 pdu = new PDUv1();
+        pdu.setType(PDU.V1TRAP);
+        pdu.setEnterprise(trapOid);
+        pdu.setGenericTrap(PDUv1.ENTERPRISE_SPECIFIC);
+        pdu.setSpecificTrap(1);
+        pdu.setAgentAddress(new IpAddress(trapHost));
 
-        CommunityTarget comTarget = new CommunityTarget();
-        comTarget.setCommunity(new OctetString(community));
-        comTarget.setVersion(SnmpConstants.version2c);
-        comTarget.setAddress(new UdpAddress(host + '/' + port));
-        comTarget.setRetries(2);
-        comTarget.setTimeout(5000);
+        pdu.add(new VariableBinding(SnmpConstants.sysUpTime,  sysUpTime));
+        pdu.add(new VariableBinding(SnmpConstants.snmpTrapOID, trapOid));
+        pdu.add(new VariableBinding(SnmpConstants.snmpTrapAddress, new IpAddress(trapHost)));
 
+        ADSnmpDataSchema.addVariableBindings(pdu, snmpData);
+
+        return pdu;
+    }
+
+    /**
+     * Builds the v2 Trap PDU
+     * @param 	trapHost					Host of the source sending the trap
+     * @param 	snmpData					Trap Data
+     */
+    private PDU createV2Pdu(String trapHost, ADSnmpData snmpData,OID trapOid)
+    {
         TimeTicks sysUpTime = getTimeTicks();
         PDU pdu = new PDU();
         pdu.add(new VariableBinding(SnmpConstants.sysUpTime,  sysUpTime));
-        pdu.add(new VariableBinding(SnmpConstants.snmpTrapOID, new OID(trapOid)));
+        pdu.add(new VariableBinding(SnmpConstants.snmpTrapOID, trapOid));
         pdu.add(new VariableBinding(SnmpConstants.snmpTrapAddress, new IpAddress(trapHost)));
 
-        for (Field field : snmpData.getClass().getDeclaredFields())
-        {
-            if(field.get(snmpData) != null) {
-
-                try {
-                    Object snmpVal = new OctetString(field.get(snmpData).toString());
-
-                    if (!(snmpVal.equals(" ") || snmpVal.equals(""))) {
-                        pdu.add(new VariableBinding(new OID(lookUp.getOID(field.getName())), new OctetString(snmpVal.toString())));
-                    }
-                } catch (Throwable ex) {
-                    logger.error("Error reading snmp data field:", ex);
-                }
-            }
-        }
+        ADSnmpDataSchema.addVariableBindings(pdu, snmpData);
 
         pdu.setType(PDU.NOTIFICATION);
+        return pdu;
+    }
 
-        Snmp snmp = new Snmp(transport);
-        snmp.send(pdu, comTarget);
-        snmp.close();
+    /**
+     * v1 receivers expect machines, tiers and ip addresses to be present. Done once before the fan-out
+     * since all receivers share the same data.
+     */
+    private void fillEmptyV1Fields(ADSnmpData snmpData) {
+        if (snmpData.getMachines() == null || "".equals(snmpData.getMachines()) || " ".equals(snmpData.getMachines())) {
+            snmpData.setMachines(" ");
+        }
+        if (snmpData.getTiers() == null || "".equals(snmpData.getTiers()) || " ".equals(snmpData.getTiers())) {
+            snmpData.setTiers(" ");
+        }
+        if (snmpData.getIpAddresses() == null || "".equals(snmpData.getIpAddresses()) || " ".equals(snmpData.getIpAddresses())) {
+            snmpData.setIpAddresses(" ");
+        }
     }
 
     private TimeTicks getTimeTicks() {
@@ -212,101 +597,17 @@ public class SNMPSender {
 
     /**
      * Sends v3 Traps
+     * @param   snmp                    Pooled session holding the USM user of the configuration
      * @param 	host 					Host to send trap to
      * @param 	port					Port location to send trap to
      * @param 	trapHost				Host of the source sending the trap
      * @param 	snmpData				Trap Data
      * @param 	config				V3 settings
      * @throws 	java.io.IOException					Failed to send trap exception
-     * @throws 	IllegalArgumentException 	Failed to access snmp trap variables
-     * @throws 	IllegalAccessException 		Failed to access snmp trap variables
      */
-    @SuppressWarnings("rawtypes")
-    private void sendV3Trap(String host, String port, String trapHost, ADSnmpData snmpData, SnmpV3Configuration config,String trapOid,EngineProperties engineProperties)
-            throws IOException, IllegalArgumentException, IllegalAccessException
+    private void sendV3Trap(Snmp snmp, String host, String port, String trapHost, ADSnmpData snmpData, SnmpV3Configuration config,OID trapOid)
+            throws IOException
     {
-        Lookup lookUp = new Lookup();
-
-        TransportMapping transport = new DefaultUdpTransportMapping();
-        transport.listen();
-
-        byte[] defaultEngineId = MPv3.createLocalEngineID();
-
-        OctetString os = new OctetString(defaultEngineId);
-        logger.info("Local engine id =>" + os.toString());
-
-        //USM usm = new USM(SecurityProtocols.getInstance(),os,engineProperties.getEngineBoots());
-        USM usm = new USM(SecurityProtocols.getInstance(),os,engineProperties.getEngineBoots(),engineProperties.getEngineTime());
-        UsmTimeEntry ute = new UsmTimeEntry(os,engineProperties.getEngineBoots(),engineProperties.getEngineTime());
-        usm.getTimeTable().setLocalTime(ute);
-        SecurityModels.getInstance().addSecurityModel(usm);
-
-        Snmp snmp = new Snmp(transport);
-        snmp.setLocalEngine(defaultEngineId,engineProperties.getEngineBoots(),engineProperties.getEngineTime());
-
-
-        String securityLevel = Integer.toString(config.getSecurityLevel());
-        logger.info("SNMP Engine time =>" + snmp.getUSM().getConfigurableEngineTime() + " and engineProperties time=> " + engineProperties.getEngineTime());
-
-        if(securityLevel.equals(NO_AUTH_NO_PRIV))
-        {
-            snmp.getUSM().addUser
-                    (
-                            new OctetString(config.getUsername()),
-                            new UsmUser
-                                    (
-                                            new OctetString(config.getUsername()),
-                                            null,
-                                            null,
-                                            null,
-                                            null
-                                    )
-                    );
-        }
-        else if(securityLevel.equals(AUTH_NO_PRIV))
-        {
-            snmp.getUSM().addUser
-                    (
-                            new OctetString(config.getUsername()),
-                            new UsmUser
-                                    (
-                                            new OctetString(config.getUsername()),
-                                            (config.getAuthProtocol().toUpperCase().contains("SHA")) ? AuthSHA.ID : AuthMD5.ID,
-                                            new OctetString(config.getPassword()),
-                                            null,
-                                            null
-                                    )
-                    );
-        }
-        else if(securityLevel.equals(AUTH_PRIV))
-        {
-            OID privProtocol = PrivAES256.ID;
-
-            String strPrivProtocol = config.getPrivProtocol();
-
-            if (strPrivProtocol.toUpperCase().contains("3DES"))
-                privProtocol = Priv3DES.ID;
-            else if (strPrivProtocol.toUpperCase().contains("AES128"))
-                privProtocol = PrivAES128.ID;
-            else if (strPrivProtocol.toUpperCase().contains("AES192"))
-                privProtocol = PrivAES192.ID;
-            else if (strPrivProtocol.toUpperCase().contains("DES"))
-                privProtocol = PrivDES.ID;
-
-            snmp.getUSM().addUser
-                    (
-                            new OctetString(config.getUsername()),
-                            new UsmUser
-                                    (
-                                            new OctetString(config.getUsername()),
-                                            (config.getAuthProtocol().contains("SHA")) ? AuthSHA.ID : AuthMD5.ID,
-                                            new OctetString(config.getPassword()),
-                                            privProtocol,
-                                            new OctetString(config.getPrivProtocolPassword())
-                                    )
-                    );
-        }
-
         UserTarget usrTarget = new UserTarget();
         usrTarget.setVersion(SnmpConstants.version3);
         usrTarget.setAddress(new UdpAddress(host + '/' + port));
@@ -315,32 +616,20 @@ public class SNMPSender {
         usrTarget.setSecurityName(new OctetString(config.getUsername()));
         usrTarget.setTimeout(5000);
 
+        long start = System.nanoTime();
         TimeTicks sysUpTime = new TimeTicks();
         sysUpTime.fromMilliseconds(getSysUptime());
 
         PDU pdu = new ScopedPDU();
         pdu.setType(PDU.NOTIFICATION);
         pdu.add(new VariableBinding(SnmpConstants.sysUpTime,  sysUpTime));
-        pdu.add(new VariableBinding(SnmpConstants.snmpTrapOID, new OID(trapOid)));
+        pdu.add(new VariableBinding(SnmpConstants.snmpTrapOID, trapOid));
         pdu.add(new VariableBinding(SnmpConstants.snmpTrapAddress, new IpAddress(trapHost)));
 
-        for (Field field : snmpData.getClass().getDeclaredFields())
-        {
-            if(field.get(snmpData) != null) {
-                try {
-                    Object snmpVal = new OctetString(field.get(snmpData).toString());
-
-                    if (!(snmpVal.equals(" ") || snmpVal.equals(""))) {
-                        pdu.add(new VariableBinding(new OID(lookUp.getOID(field.getName())), new OctetString(snmpVal.toString())));
-                    }
-                } catch (Throwable ex) {
-                    logger.error("Error reading snmp data field:", ex);
-                }
-            }
-        }
+        ADSnmpDataSchema.addVariableBindings(pdu, snmpData);
+        PipelineMetrics.PDU_BUILD.record(start);
 
         snmp.send(pdu, usrTarget);
-        snmp.close();
     }
 
 
@@ -1,12 +1,34 @@
 package com.appdynamics.extensions.snmp;
 
 
+import com.appdynamics.extensions.snmp.config.Receiver;
+
+import java.util.Collections;
+import java.util.List;
+
 public class SNMPTrapException extends RuntimeException{
+
+    private final List<Receiver> failedReceivers;
+
     public SNMPTrapException(String message, Throwable cause) {
         super(message, cause);
+        this.failedReceivers = Collections.emptyList();
     }
 
     public SNMPTrapException(String message) {
         super(message);
+        this.failedReceivers = Collections.emptyList();
+    }
+
+    public SNMPTrapException(String message, List<Receiver> failedReceivers) {
+        super(message);
+        this.failedReceivers = failedReceivers;
+    }
+
+    /**
+     * @return the receivers the trap did not reach, empty if unknown
+     */
+    public List<Receiver> getFailedReceivers() {
+        return failedReceivers;
     }
 }
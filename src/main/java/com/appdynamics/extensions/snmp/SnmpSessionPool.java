@@ -0,0 +1,170 @@
+package com.appdynamics.extensions.snmp;
+
+
+import com.appdynamics.extensions.snmp.config.EngineProperties;
+import com.appdynamics.extensions.snmp.config.SnmpV3Configuration;
+import com.google.common.base.Strings;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import org.apache.log4j.Logger;
+import org.snmp4j.MessageDispatcher;
+import org.snmp4j.MessageDispatcherImpl;
+import org.snmp4j.Snmp;
+import org.snmp4j.TransportMapping;
+import org.snmp4j.mp.MPv1;
+import org.snmp4j.mp.MPv2c;
+import org.snmp4j.mp.MPv3;
+import org.snmp4j.security.*;
+import org.snmp4j.smi.OID;
+import org.snmp4j.smi.OctetString;
+import org.snmp4j.transport.DefaultUdpTransportMapping;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Keeps one UDP transport and one {@link Snmp} session per SNMP version and v3 security context,
+ * shared by all receivers and, in a long running process, by all events.
+ */
+public class SnmpSessionPool {
+
+    private static Logger logger = Logger.getLogger(SnmpSessionPool.class);
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final ConcurrentMap<String, Snmp> sessions = new ConcurrentHashMap<String, Snmp>();
+
+    /**
+     * Returns the session used for community based (v1/v2c) traps.
+     */
+    public Snmp getCommunitySession(int snmpVersion) throws IOException {
+        String key = "v" + snmpVersion;
+        Snmp snmp = sessions.get(key);
+        if (snmp == null) {
+            synchronized (this) {
+                snmp = sessions.get(key);
+                if (snmp == null) {
+                    MessageDispatcher dispatcher = new MessageDispatcherImpl();
+                    dispatcher.addMessageProcessingModel(new MPv1());
+                    dispatcher.addMessageProcessingModel(new MPv2c());
+                    snmp = open(dispatcher);
+                    sessions.put(key, snmp);
+                }
+            }
+        }
+        return snmp;
+    }
+
+    /**
+     * Returns the session for the v3 user. Every security context gets its own USM, so sessions
+     * never share the global {@link SecurityModels} instance.
+     */
+    public Snmp getUserSession(SnmpV3Configuration config, EngineProperties engineProperties) throws IOException {
+        String key = userKey(config);
+        Snmp snmp = sessions.get(key);
+        if (snmp == null) {
+            synchronized (this) {
+                snmp = sessions.get(key);
+                if (snmp == null) {
+                    snmp = openUserSession(config, engineProperties);
+                    sessions.put(key, snmp);
+                }
+            }
+        }
+        return snmp;
+    }
+
+    /**
+     * Sessions are looked up by a digest of the security context, so the pool does not keep the passwords in its keys.
+     */
+    static String userKey(SnmpV3Configuration config) {
+        Hasher hasher = Hashing.sha256().newHasher().putInt(config.getSecurityLevel());
+        for (String field : new String[]{config.getUsername(), config.getAuthProtocol(), config.getPassword(),
+                config.getPrivProtocol(), config.getPrivProtocolPassword()}) {
+            String value = Strings.nullToEmpty(field);
+            hasher.putInt(value.length()).putString(value, UTF_8);
+        }
+        return "v3|" + hasher.hash();
+    }
+
+    private Snmp openUserSession(SnmpV3Configuration config, EngineProperties engineProperties) throws IOException {
+        SecurityProtocols.getInstance().addDefaultProtocols();
+        byte[] defaultEngineId = MPv3.createLocalEngineID();
+
+        OctetString os = new OctetString(defaultEngineId);
+        logger.info("Local engine id =>" + os.toString());
+
+        USM usm = new USM(SecurityProtocols.getInstance(), os, engineProperties.getEngineBoots(), engineProperties.getEngineTime());
+        UsmTimeEntry ute = new UsmTimeEntry(os, engineProperties.getEngineBoots(), engineProperties.getEngineTime());
+        usm.getTimeTable().setLocalTime(ute);
+        usm.addUser(new OctetString(config.getUsername()), createUser(config));
+
+        MessageDispatcher dispatcher = new MessageDispatcherImpl();
+        dispatcher.addMessageProcessingModel(new MPv3(usm));
+        Snmp snmp = open(dispatcher);
+        snmp.setLocalEngine(defaultEngineId, engineProperties.getEngineBoots(), engineProperties.getEngineTime());
+        logger.info("SNMP Engine time =>" + snmp.getUSM().getConfigurableEngineTime() + " and engineProperties time=> " + engineProperties.getEngineTime());
+        return snmp;
+    }
+
+    private UsmUser createUser(SnmpV3Configuration config) {
+        String securityLevel = Integer.toString(config.getSecurityLevel());
+        OctetString username = new OctetString(config.getUsername());
+        if (securityLevel.equals(SNMPSender.AUTH_NO_PRIV)) {
+            return new UsmUser(username,
+                    (config.getAuthProtocol().toUpperCase().contains("SHA")) ? AuthSHA.ID : AuthMD5.ID,
+                    new OctetString(config.getPassword()),
+                    null,
+                    null);
+        }
+        else if (securityLevel.equals(SNMPSender.AUTH_PRIV)) {
+            OID privProtocol = PrivAES256.ID;
+
+            String strPrivProtocol = config.getPrivProtocol();
+
+            if (strPrivProtocol.toUpperCase().contains("3DES"))
+                privProtocol = Priv3DES.ID;
+            else if (strPrivProtocol.toUpperCase().contains("AES128"))
+                privProtocol = PrivAES128.ID;
+            else if (strPrivProtocol.toUpperCase().contains("AES192"))
+                privProtocol = PrivAES192.ID;
+            else if (strPrivProtocol.toUpperCase().contains("DES"))
+                privProtocol = PrivDES.ID;
+
+            return new UsmUser(username,
+                    (config.getAuthProtocol().contains("SHA")) ? AuthSHA.ID : AuthMD5.ID,
+                    new OctetString(config.getPassword()),
+                    privProtocol,
+                    new OctetString(config.getPrivProtocolPassword()));
+        }
+        return new UsmUser(username, null, null, null, null);
+    }
+
+    @SuppressWarnings("rawtypes")
+    private Snmp open(MessageDispatcher dispatcher) throws IOException {
+        TransportMapping transport = new DefaultUdpTransportMapping();
+        Snmp snmp = new Snmp(dispatcher, transport);
+        snmp.listen();
+        logger.debug("Opened SNMP session on " + transport.getListenAddress());
+        return snmp;
+    }
+
+    /**
+     * Closes all sessions. The pool can be reused afterwards and opens new sessions on demand.
+     */
+    public synchronized void close() {
+        List<Snmp> open = new ArrayList<Snmp>(sessions.values());
+        sessions.clear();
+        for (Snmp snmp : open) {
+            try {
+                snmp.close();
+            } catch (IOException e) {
+                logger.error("Error closing SNMP session", e);
+            }
+        }
+    }
+}
@@ -5,27 +5,44 @@ import com.appdynamics.extensions.alerts.customevents.Event;
 import com.appdynamics.extensions.alerts.customevents.EventBuilder;
 import com.appdynamics.extensions.alerts.customevents.HealthRuleViolationEvent;
 import com.appdynamics.extensions.alerts.customevents.OtherEvent;
+import com.appdynamics.extensions.snmp.api.CoalescingService;
+import com.appdynamics.extensions.snmp.api.HttpClientBuilder;
+import com.appdynamics.extensions.snmp.api.IService;
+import com.appdynamics.extensions.snmp.api.ServiceImpl;
+import com.appdynamics.extensions.snmp.api.TopologyProvider;
+import com.appdynamics.extensions.snmp.api.TopologySnapshotStore;
 import com.appdynamics.extensions.snmp.config.ConfigLoader;
 import com.appdynamics.extensions.snmp.config.Configuration;
+import com.appdynamics.extensions.snmp.daemon.AlertDaemon;
+import com.appdynamics.extensions.snmp.daemon.AlertForwarder;
+import com.appdynamics.extensions.snmp.metrics.PipelineMetrics;
+import com.appdynamics.extensions.snmp.metrics.SharedMetrics;
+import com.appdynamics.extensions.snmp.mib.AppdCtlrMib;
 import org.apache.log4j.Logger;
+import org.snmp4j.smi.OID;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.Arrays;
 
 public class SnmpTrapAlertExtension {
 
     public static final String MULTI_TENANCY = "appDynamics.controller.multiTenant";
-    private static final String TRAP_OID_NOTIFICATIONS = "1.3.6.1.4.1.40684.1.1.1.500";
-    private static final String TRAP_OID_01 = "1.3.6.1.4.1.40684.1.1.1.500.1";
-    private static final String TRAP_OID_02 = "1.3.6.1.4.1.40684.1.1.1.500.2";
-    private static final String TRAP_OID_03 = "1.3.6.1.4.1.40684.1.1.1.500.3";
-    private static final String TRAP_OID_04 = "1.3.6.1.4.1.40684.1.1.1.500.4";
-    private static final String TRAP_OID_05 = "1.3.6.1.4.1.40684.1.1.1.500.5";
-    private static final String TRAP_OID_06 = "1.3.6.1.4.1.40684.1.1.1.500.6";
-    private static final String TRAP_OID_07 = "1.3.6.1.4.1.40684.1.1.1.500.7";
-    private static final String TRAP_OID_08 = "1.3.6.1.4.1.40684.1.1.1.500.8";
-    private static final String TRAP_OID_09 = "1.3.6.1.4.1.40684.1.1.1.500.9";
-    private static final String TRAP_OID_10 = "1.3.6.1.4.1.40684.1.1.1.500.10";
-    private static final String TRAP_OID_11 = "1.3.6.1.4.1.40684.1.1.1.500.11";
+    //runs the extension as a resident daemon listening on the loopback port
+    public static final String DAEMON_MODE = "appDynamics.snmp.daemon";
+    //hands the event off to a running daemon before falling back to processing it in this JVM
+    public static final String DAEMON_HANDOFF = "appDynamics.snmp.daemon.handoff";
+    public static final String DAEMON_PORT = "appDynamics.snmp.daemon.port";
+    public static final String DAEMON_WORKERS = "appDynamics.snmp.daemon.workers";
+    //events waiting for a worker, once exceeded the least urgent events are shed
+    public static final String DAEMON_QUEUE_SIZE = "appDynamics.snmp.daemon.queueSize";
+    //when no daemon is listening, the invocation becomes the leader and absorbs later invocations until idle for this long
+    public static final String LEADER_IDLE_TIMEOUT = "appDynamics.snmp.leader.idleTimeoutInMillis";
+    public static final int DEFAULT_LEADER_IDLE_TIMEOUT_IN_MILLIS = 2000;
+    private static final int LEADER_ELECTION_ATTEMPTS = 3;
+    private static final long LEADER_ELECTION_BACKOFF_IN_MILLIS = 50;
+    //bounds how long a one-shot invocation waits for a topology snapshot refresh before exiting
+    private static final long SNAPSHOT_REFRESH_TIMEOUT_IN_MILLIS = 5000;
 
     private static Logger logger = Logger.getLogger(SnmpTrapAlertExtension.class);
 
@@ -35,16 +52,49 @@ public class SnmpTrapAlertExtension {
     private static final SNMPSender snmpSender = new SNMPSender();
 
     private Configuration config;
+    private final TopologyProvider topologyProvider;
+    private final IService service;
+    private final TrapSpool spool;
+    private final AlertSuppressor suppressor;
 
     public SnmpTrapAlertExtension(Configuration config){
+        this(config, null);
+    }
+
+    /**
+     * @param topologyProvider controller topology shared across events, the in-memory cache of a long running process
+     *                         or the snapshots of one-shot invocations. Null to query the controller per event
+     */
+    public SnmpTrapAlertExtension(Configuration config, TopologyProvider topologyProvider){
+        this(config, topologyProvider, new ServiceImpl());
+    }
+
+    /**
+     * @param service client of the controller REST API, e.g. a {@link CoalescingService} shared by the events of a long running process
+     */
+    public SnmpTrapAlertExtension(Configuration config, TopologyProvider topologyProvider, IService service){
         String msg = "SnmpTrapAlertExtension Version ["+getImplementationTitle()+"]";
         logger.info(msg);
         System.out.println(msg);
         this.config = config;
+        this.topologyProvider = topologyProvider;
+        this.service = service;
+        this.spool = TrapSpool.open(config, snmpSender);
+        this.suppressor = AlertSuppressor.create(config, new AlertSuppressor.SummarySender() {
+            @Override
+            public void send(ADSnmpData summary, OID trapOid) {
+                logger.info("Sending the summary of suppressed events => " + summary.getSummary());
+                sendTrap(summary, trapOid);
+            }
+        });
     }
 
 
     public static void main(String[] args){
+        if (Boolean.getBoolean(DAEMON_MODE)) {
+            runDaemon();
+            return;
+        }
         try {
             logger.info("\n\n*************START****************");
             logger.debug("Args passed => " + Arrays.asList(args));
@@ -52,13 +102,19 @@ public class SnmpTrapAlertExtension {
                 logger.error("No arguments passed to the extension, exiting the program.");
                 return;
             }
+            SharedMetrics.open(new File(ConfigLoader.getMetricsFile()));
+            if (Boolean.getBoolean(DAEMON_HANDOFF) && handOff(args)) {
+                return;
+            }
             boolean isMultiTenant = Boolean.getBoolean(MULTI_TENANCY);
+            long start = System.nanoTime();
             Event event = eventBuilder.build(args);
+            PipelineMetrics.EVENT_BUILD.record(start);
 
             Configuration config = ConfigLoader.getConfig(isMultiTenant, event.getAccountId());
             logger.info("Configuration Loaded.");
             logger.debug("Config passed => " + config);
-            SnmpTrapAlertExtension trapExtension = new SnmpTrapAlertExtension(config);
+            SnmpTrapAlertExtension trapExtension = new SnmpTrapAlertExtension(config, TopologySnapshotStore.create(config));
             boolean status = trapExtension.process(event);
             if (status) {
                 logger.info("SnmpTrapAlertExtension completed successfully.");
@@ -68,11 +124,100 @@ public class SnmpTrapAlertExtension {
         } catch(Exception e){
             logger.error("Error in the execution of the extension",e);
         } finally{
+            shutdown();
             logger.info("*************END******************\n\n");
         }
     }
 
 
+    /**
+     * Releases the pooled SNMP sessions and controller connections, and lets pending topology snapshot refreshes finish.
+     * Summaries of suppressed events are sent, undelivered traps stay in the spool for the next process.
+     * The pipeline latencies are logged.
+     * Called once the process does not send any more traps.
+     */
+    public static void shutdown() {
+        AlertSuppressor.shutdown();
+        TrapSpool.shutdown();
+        snmpSender.close();
+        TopologySnapshotStore.awaitRefreshes(SNAPSHOT_REFRESH_TIMEOUT_IN_MILLIS);
+        HttpClientBuilder.shutdown();
+        PipelineMetrics.logSummary();
+    }
+
+
+    private static void runDaemon() {
+        SharedMetrics.open(new File(ConfigLoader.getMetricsFile()));
+        final AlertDaemon daemon;
+        try {
+            daemon = AlertDaemon.bind(getDaemonPort(), Integer.getInteger(DAEMON_WORKERS, AlertDaemon.DEFAULT_WORKERS),
+                        Integer.getInteger(DAEMON_QUEUE_SIZE, AlertDaemon.DEFAULT_QUEUE_SIZE), Boolean.getBoolean(MULTI_TENANCY));
+        } catch (IOException e) {
+            logger.error("Unable to start the SNMP trap daemon on port " + getDaemonPort(), e);
+            return;
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+            @Override
+            public void run() {
+                daemon.stop();
+            }
+        }, "snmp-trap-daemon-shutdown"));
+        daemon.serve();
+    }
+
+
+    /**
+     * Hands the event off to a running daemon or leader. If there is none, tries to become the leader
+     * and keeps processing events of concurrent invocations until the idle window expires.
+     * @return false if the event still has to be processed by this invocation
+     */
+    private static boolean handOff(String[] args) {
+        AlertForwarder forwarder = new AlertForwarder(getDaemonPort());
+        if (forwarder.forward(args)) {
+            logger.info("Event handed off to the SNMP trap daemon.");
+            return true;
+        }
+        int idleTimeout = Integer.getInteger(LEADER_IDLE_TIMEOUT, DEFAULT_LEADER_IDLE_TIMEOUT_IN_MILLIS);
+        if (idleTimeout <= 0) {
+            return false;
+        }
+        for (int attempt = 0; attempt < LEADER_ELECTION_ATTEMPTS; attempt++) {
+            AlertDaemon leader;
+            try {
+                leader = AlertDaemon.bind(getDaemonPort(), Integer.getInteger(DAEMON_WORKERS, AlertDaemon.DEFAULT_WORKERS),
+                        Integer.getInteger(DAEMON_QUEUE_SIZE, AlertDaemon.DEFAULT_QUEUE_SIZE), Boolean.getBoolean(MULTI_TENANCY));
+            } catch (IOException e) {
+                //another invocation won the election, it should accept the event now
+                if (forwarder.forward(args)) {
+                    logger.info("Event handed off to the leader invocation.");
+                    return true;
+                }
+                try {
+                    Thread.sleep(LEADER_ELECTION_BACKOFF_IN_MILLIS);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+                continue;
+            }
+            logger.info("Acting as leader for concurrent invocations.");
+            try {
+                leader.submit(args);
+                leader.serve(idleTimeout);
+            } finally {
+                leader.stop();
+            }
+            return true;
+        }
+        return false;
+    }
+
+
+    private static int getDaemonPort() {
+        return Integer.getInteger(DAEMON_PORT, AlertDaemon.DEFAULT_PORT);
+    }
+
+
     private String getImplementationTitle(){
         return this.getClass().getPackage().getImplementationTitle();
     }
@@ -81,109 +226,91 @@ public class SnmpTrapAlertExtension {
     public boolean process(Event event) {
         if(event != null){
             logger.info("Processing Event");
+            SharedMetrics.count(SharedMetrics.Counter.EVENTS);
             ADSnmpData snmpData = createSNMPData(event);
             logger.debug("SNMP Data => " + snmpData);
-            String trapOid = getOID(event);
+            OID trapOid = getOID(event);
             logger.debug("Trap OID => " + trapOid);
-            try {
-                snmpSender.sendTrap(config, snmpData,trapOid);
-                logger.info("-------------Trap Sent!---------------");
+            if (suppressor != null && !suppressor.admit(snmpData, trapOid)) {
+                logger.info("Suppressed event of incident " + snmpData.getIncidentId() + ", it is part of an alert storm");
                 return true;
-            } catch (SNMPTrapException e){
-                logger.error("Error in sending one or more traps",e);
             }
+            boolean sent = sendTrap(snmpData, trapOid);
+            if (!sent) {
+                SharedMetrics.count(SharedMetrics.Counter.FAILED_EVENTS);
+            }
+            return sent;
+        }
+        return false;
+    }
+
+
+    private boolean sendTrap(ADSnmpData snmpData, OID trapOid) {
+        try {
+            if (spool != null) {
+                spool.sendTrap(snmpData, trapOid);
+            } else {
+                snmpSender.sendTrap(config, snmpData, trapOid);
+            }
+            logger.info("-------------Trap Sent!---------------");
+            return true;
+        } catch (SNMPTrapException e){
+            logger.error("Error in sending one or more traps",e);
         }
         return false;
     }
 
 
+    /**
+     * Sends the summaries of suppressed events and closes the trap spool, e.g. before the extension is replaced by one
+     * for a changed configuration. Traps the spool has not delivered yet stay in its journal for the next spool opened
+     * on the account.
+     */
+    public void close() {
+        if (suppressor != null) {
+            suppressor.close();
+        }
+        if (spool != null) {
+            spool.close();
+        }
+    }
+
+
     private ADSnmpData createSNMPData(Event event) {
         ADSnmpData adSnmpData = null;
         //mapper to map to snmp data
-        final SNMPDataBuilder snmpDataBuilder = new SNMPDataBuilder(config);
+        final SNMPDataBuilder snmpDataBuilder = new SNMPDataBuilder(config, topologyProvider, service);
+        long start = System.nanoTime();
         if(event instanceof HealthRuleViolationEvent) {
             HealthRuleViolationEvent violationEvent = (HealthRuleViolationEvent) event;
             adSnmpData = snmpDataBuilder.buildFromHealthRuleViolationEvent(violationEvent);
+            PipelineMetrics.ENRICH_HEALTH_RULE_VIOLATION.record(start);
         }
         else{
             OtherEvent otherEvent = (OtherEvent) event;
             adSnmpData = snmpDataBuilder.buildFromOtherEvent(otherEvent);
+            PipelineMetrics.ENRICH_OTHER_EVENT.record(start);
         }
         return adSnmpData;
     }
 
 
     /**
-     * Determines and sets the appropriate OID for the notification based on the value set
-     * for the configuration option "mib-version".
+     * Determines the appropriate OID for the notification based on the value set
+     * for the configuration option "mib-version". The table is generated from the MIB files at build time.
      *
      */
-    private String getOID(Event event) {
-        String TRAP_OID = TRAP_OID_01;
+    private OID getOID(Event event) {
+        OID trapOid;
         if(event instanceof OtherEvent) {
-            switch (config.getMibVersion()) {
-                case 1:
-                    TRAP_OID = TRAP_OID_NOTIFICATIONS;
-                    break;
-                case 2:
-                    TRAP_OID = TRAP_OID_03;
-                    break;
-                case 3:
-                    TRAP_OID = TRAP_OID_07;
-                    break;
-            }
-            return TRAP_OID;
+            trapOid = AppdCtlrMib.getOtherEventNotification(config.getMibVersion());
         }
-
-        HealthRuleViolationEvent violationEvent = (HealthRuleViolationEvent) event;
-        String eventType = violationEvent.getEventType();
-        switch (config.getMibVersion()) {
-            case 1:
-                TRAP_OID = TRAP_OID_NOTIFICATIONS;
-                break;
-
-            case 2:
-                if (eventType.startsWith(EventTypeEnum.POLICY_CLOSE.name()) || eventType.startsWith(EventTypeEnum.POLICY_CANCELED.name())) {
-                    TRAP_OID = TRAP_OID_02;
-                } else {
-                    TRAP_OID = TRAP_OID_01;
-                }
-                break;
-
-            case 3:
-                if (eventType.equals(EventTypeEnum.POLICY_OPEN_WARNING.name())) {
-                    TRAP_OID = TRAP_OID_01;
-                } else if (eventType.equals(EventTypeEnum.POLICY_OPEN_CRITICAL.name())) {
-                    TRAP_OID = TRAP_OID_02;
-                } else if (eventType.equals(EventTypeEnum.POLICY_UPGRADED.name())) {
-                    TRAP_OID = TRAP_OID_03;
-                } else if (eventType.equals(EventTypeEnum.POLICY_DOWNGRADED.name())) {
-                    TRAP_OID = TRAP_OID_04;
-                } else if (eventType.equals(EventTypeEnum.POLICY_CLOSE_WARNING.name())) {
-                    TRAP_OID = TRAP_OID_05;
-                } else if (eventType.equals(EventTypeEnum.POLICY_CLOSE_CRITICAL.name())) {
-                    TRAP_OID = TRAP_OID_06;
-                } else if (eventType.equals("NON_POLICY_EVENT")) {
-                    TRAP_OID = TRAP_OID_07;
-                } else if(eventType.equals(EventTypeEnum.POLICY_CANCELED_WARNING.name())) {
-                    TRAP_OID = TRAP_OID_08;
-                } else if(eventType.equals(EventTypeEnum.POLICY_CANCELED_CRITICAL.name())) {
-                    TRAP_OID = TRAP_OID_09;
-                } else if(eventType.equals(EventTypeEnum.POLICY_CONTINUES_WARNING.name())) {
-                    TRAP_OID = TRAP_OID_10;
-                } else if(eventType.equals(EventTypeEnum.POLICY_CONTINUES_CRITICAL.name())) {
-                    TRAP_OID = TRAP_OID_11;
-                } else {
-                    TRAP_OID = TRAP_OID_05;
-                }
-                break;
-
-            default:
-                TRAP_OID = TRAP_OID_01;
-                break;
+        else {
+            HealthRuleViolationEvent violationEvent = (HealthRuleViolationEvent) event;
+            trapOid = AppdCtlrMib.getNotification(config.getMibVersion(), EventTypeEnum.fromName(violationEvent.getEventType()));
         }
-        return TRAP_OID;
-
+        //unknown mib-version
+        return trapOid != null ? trapOid : AppdCtlrMib.V1_EVENT;
     }
 
 
@@ -0,0 +1,149 @@
+package com.appdynamics.extensions.snmp;
+
+
+import com.appdynamics.extensions.snmp.config.Receiver;
+import org.snmp4j.smi.OID;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A trap kept in the {@link TrapJournal} until it reached its receivers.
+ *
+ * Layout (big endian): createdAt (long), attempts, dueAt (long), trap OID, receiverCount, per receiver host and port,
+ * fieldCount and the {@link ADSnmpDataSchema} fields in schema order. Strings are an int length and UTF-8 bytes,
+ * null strings have the length -1.
+ */
+class SpooledTrap {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final long createdAt;
+    private final int attempts;
+    private final long dueAt;
+    private final OID trapOid;
+    private final List<Receiver> receivers;
+    private final ADSnmpData snmpData;
+
+    SpooledTrap(long createdAt, int attempts, long dueAt, OID trapOid, List<Receiver> receivers, ADSnmpData snmpData) {
+        this.createdAt = createdAt;
+        this.attempts = attempts;
+        this.dueAt = dueAt;
+        this.trapOid = trapOid;
+        this.receivers = Collections.unmodifiableList(new ArrayList<Receiver>(receivers));
+        this.snmpData = snmpData;
+    }
+
+    long getCreatedAt() {
+        return createdAt;
+    }
+
+    /**
+     * @return the number of sends that failed so far
+     */
+    int getAttempts() {
+        return attempts;
+    }
+
+    /**
+     * @return the time the next attempt is due, so that a process adopting the trap keeps its backoff
+     */
+    long getDueAt() {
+        return dueAt;
+    }
+
+    OID getTrapOid() {
+        return trapOid;
+    }
+
+    /**
+     * @return the receivers the trap still has to reach
+     */
+    List<Receiver> getReceivers() {
+        return receivers;
+    }
+
+    ADSnmpData getSnmpData() {
+        return snmpData;
+    }
+
+    /**
+     * @return the trap after another failed attempt, still to be sent to the receivers that failed once it is due
+     */
+    SpooledTrap retry(List<Receiver> failedReceivers, long dueAt) {
+        return new SpooledTrap(createdAt, attempts + 1, dueAt, trapOid, failedReceivers, snmpData);
+    }
+
+    byte[] serialize() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(512);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeLong(createdAt);
+        out.writeInt(attempts);
+        out.writeLong(dueAt);
+        writeString(out, trapOid.toString());
+        out.writeInt(receivers.size());
+        for (Receiver receiver : receivers) {
+            writeString(out, receiver.getHost());
+            out.writeInt(receiver.getPort());
+        }
+        ADSnmpDataSchema[] fields = ADSnmpDataSchema.values();
+        out.writeInt(fields.length);
+        for (ADSnmpDataSchema field : fields) {
+            writeString(out, field.get(snmpData));
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    static SpooledTrap deserialize(ByteBuffer in) {
+        long createdAt = in.getLong();
+        int attempts = in.getInt();
+        long dueAt = in.getLong();
+        OID trapOid = new OID(readString(in));
+        int receiverCount = in.getInt();
+        List<Receiver> receivers = new ArrayList<Receiver>(receiverCount);
+        for (int i = 0; i < receiverCount; i++) {
+            Receiver receiver = new Receiver();
+            receiver.setHost(readString(in));
+            receiver.setPort(in.getInt());
+            receivers.add(receiver);
+        }
+        ADSnmpData snmpData = new ADSnmpData();
+        ADSnmpDataSchema[] fields = ADSnmpDataSchema.values();
+        int fieldCount = in.getInt();
+        for (int i = 0; i < fieldCount; i++) {
+            String value = readString(in);
+            //fields added by a later version are dropped
+            if (i < fields.length) {
+                fields[i].set(snmpData, value);
+            }
+        }
+        return new SpooledTrap(createdAt, attempts, dueAt, trapOid, receivers, snmpData);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, UTF_8);
+    }
+}
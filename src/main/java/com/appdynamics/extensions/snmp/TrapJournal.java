@@ -0,0 +1,357 @@
+package com.appdynamics.extensions.snmp;
+
+
+import org.apache.log4j.Logger;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal of the traps that have not reached all their receivers yet, kept in memory mapped segment files.
+ * Appending writes to the mapped segment only, so an entry survives the process dying right after the append.
+ * {@link #flush} forces the dirty segments to disk and is called periodically, so all appends of an interval
+ * share one sync instead of paying for one each.
+ *
+ * Every process writes its own segments and holds a lock on them while it is alive. Segments that are not locked
+ * were left by a process that exited or died, {@link #adoptOrphans} hands out their pending entries. A segment is
+ * created under a partial name and only renamed to its journal name once it is locked and has its header.
+ *
+ * Layout (big endian):
+ * <pre>
+ * header       magic, version
+ * records      length, crc32 of the payload, status byte, payload ({@link SpooledTrap})
+ * </pre>
+ * The length is written last, a record whose length is 0 or whose crc does not match ends the segment.
+ * Completing an entry only overwrites its status byte. Segments are deleted once all their entries are completed.
+ */
+class TrapJournal {
+
+    private static Logger logger = Logger.getLogger(TrapJournal.class);
+
+    static final int MAGIC = 0x54524150; //"TRAP"
+    //2 added the due time of the next attempt, segments of version 1 are discarded
+    static final int VERSION = 2;
+    static final String SUFFIX = ".journal";
+    //segments that are still being created, or that could not be renamed (windows does not rename open files)
+    static final String PARTIAL_SUFFIX = ".partial";
+    //a file without header younger than this may still be locked and initialized by the process creating it
+    private static final long CREATION_GRACE_IN_MILLIS = 60000;
+    static final int DEFAULT_SEGMENT_SIZE = 4 * 1024 * 1024;
+    private static final int HEADER_SIZE = 8;
+    private static final int RECORD_HEADER_SIZE = 9;
+    private static final byte PENDING = 1;
+    private static final byte COMPLETED = 2;
+
+    private final File dir;
+    private final int segmentSize;
+    private final List<Segment> segments = new ArrayList<Segment>();
+    private Segment current;
+    private boolean closed;
+
+    private TrapJournal(File dir, int segmentSize) {
+        this.dir = dir;
+        this.segmentSize = segmentSize;
+    }
+
+    static TrapJournal open(File dir, int segmentSize) throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Unable to create the spool directory " + dir);
+        }
+        return new TrapJournal(dir, segmentSize);
+    }
+
+    /**
+     * Appends the trap as a pending entry.
+     * @throws IOException if the trap does not fit into a segment or no segment can be created
+     */
+    synchronized Entry append(SpooledTrap trap) throws IOException {
+        if (closed) {
+            throw new IOException("The journal is closed");
+        }
+        byte[] payload = trap.serialize();
+        int recordSize = RECORD_HEADER_SIZE + payload.length;
+        if (HEADER_SIZE + recordSize > segmentSize) {
+            throw new IOException("Trap of " + payload.length + " bytes does not fit into a journal segment");
+        }
+        if (current == null || current.position + recordSize > segmentSize) {
+            rotate();
+        }
+        Segment segment = current;
+        int offset = segment.position;
+        CRC32 crc = new CRC32();
+        crc.update(payload, 0, payload.length);
+        MappedByteBuffer buffer = segment.buffer;
+        buffer.putInt(offset + 4, (int) crc.getValue());
+        buffer.put(offset + 8, PENDING);
+        ByteBuffer slice = buffer.duplicate();
+        slice.position(offset + RECORD_HEADER_SIZE);
+        slice.put(payload);
+        //the length commits the record
+        buffer.putInt(offset, payload.length);
+        segment.position += recordSize;
+        segment.pending++;
+        segment.dirty = true;
+        return new Entry(segment, offset);
+    }
+
+    /**
+     * Marks the entry as done, e.g. once the trap reached its receivers or was given up on.
+     */
+    synchronized void complete(Entry entry) {
+        Segment segment = entry.segment;
+        //after close the segment may already belong to another process
+        if (closed || segment.deleted) {
+            return;
+        }
+        segment.buffer.put(entry.offset + 8, COMPLETED);
+        segment.dirty = true;
+        segment.pending--;
+        if (segment.pending == 0 && segment != current) {
+            delete(segment);
+        }
+    }
+
+    /**
+     * Forces the appends and completions since the last flush to disk.
+     */
+    void flush() {
+        List<Segment> dirty = new ArrayList<Segment>();
+        synchronized (this) {
+            for (Segment segment : segments) {
+                if (segment.dirty) {
+                    segment.dirty = false;
+                    dirty.add(segment);
+                }
+            }
+        }
+        for (Segment segment : dirty) {
+            try {
+                segment.buffer.force();
+            } catch (RuntimeException e) {
+                //deleted concurrently, nothing left to keep
+                logger.debug("Unable to force journal segment " + segment.file, e);
+            }
+        }
+    }
+
+    /**
+     * Takes over the segments no running process holds. Their pending entries are returned and the segments deleted,
+     * so callers have to append the traps to this journal again before sending them.
+     */
+    List<SpooledTrap> adoptOrphans() {
+        List<SpooledTrap> traps = new ArrayList<SpooledTrap>();
+        File[] files = dir.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(File file) {
+                return file.isFile() && (file.getName().endsWith(SUFFIX) || file.getName().endsWith(PARTIAL_SUFFIX));
+            }
+        });
+        if (files == null) {
+            return traps;
+        }
+        for (File file : files) {
+            try {
+                readOrphan(file, traps);
+            } catch (IOException e) {
+                logger.error("Unable to read the journal segment " + file, e);
+            }
+        }
+        return traps;
+    }
+
+    private void readOrphan(File file, List<SpooledTrap> traps) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        boolean deleted;
+        try {
+            FileChannel channel = raf.getChannel();
+            FileLock lock;
+            try {
+                lock = channel.tryLock();
+            } catch (OverlappingFileLockException e) {
+                //a segment of this process
+                return;
+            }
+            if (lock == null) {
+                //held by another running process
+                return;
+            }
+            int count = 0;
+            try {
+                ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                if (buffer.limit() >= HEADER_SIZE && buffer.getInt(0) == MAGIC && buffer.getInt(4) == VERSION) {
+                    count = readPending(buffer, traps);
+                } else if (System.currentTimeMillis() - file.lastModified() < CREATION_GRACE_IN_MILLIS) {
+                    //created by another process that did not lock it yet
+                    return;
+                } else {
+                    logger.warn("Discarding " + file + ", it is not a trap journal");
+                }
+                //deleted while locked, so no other process adopts the same traps
+                deleted = file.delete();
+            } finally {
+                lock.release();
+            }
+            logger.info("Adopted " + count + " pending traps from " + file);
+        } finally {
+            raf.close();
+        }
+        if (!deleted && !file.delete()) {
+            file.deleteOnExit();
+        }
+    }
+
+    private static int readPending(ByteBuffer buffer, List<SpooledTrap> traps) {
+        int count = 0;
+        int position = HEADER_SIZE;
+        while (position + RECORD_HEADER_SIZE <= buffer.limit()) {
+            int length = buffer.getInt(position);
+            if (length <= 0 || position + RECORD_HEADER_SIZE + length > buffer.limit()) {
+                break;
+            }
+            ByteBuffer payload = buffer.duplicate();
+            payload.position(position + RECORD_HEADER_SIZE);
+            payload.limit(position + RECORD_HEADER_SIZE + length);
+            CRC32 crc = new CRC32();
+            byte[] bytes = new byte[length];
+            payload.duplicate().get(bytes);
+            crc.update(bytes, 0, length);
+            if ((int) crc.getValue() != buffer.getInt(position + 4)) {
+                //torn write of the last record
+                break;
+            }
+            if (buffer.get(position + 8) == PENDING) {
+                traps.add(SpooledTrap.deserialize(payload));
+                count++;
+            }
+            position += RECORD_HEADER_SIZE + length;
+        }
+        return count;
+    }
+
+    /**
+     * Flushes and releases the segments. Segments with pending entries are kept for the next process.
+     */
+    synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        for (Segment segment : new ArrayList<Segment>(segments)) {
+            if (segment.pending == 0) {
+                delete(segment);
+            } else {
+                segment.buffer.force();
+                segment.release();
+                logger.info(segment.pending + " undelivered traps remain in " + segment.file);
+            }
+        }
+        segments.clear();
+        current = null;
+    }
+
+    synchronized int getPending() {
+        int pending = 0;
+        for (Segment segment : segments) {
+            pending += segment.pending;
+        }
+        return pending;
+    }
+
+    private void rotate() throws IOException {
+        Segment previous = current;
+        current = Segment.create(dir, segmentSize);
+        segments.add(current);
+        if (previous != null && previous.pending == 0) {
+            delete(previous);
+        }
+    }
+
+    private void delete(Segment segment) {
+        segments.remove(segment);
+        segment.deleted = true;
+        segment.release();
+        //a mapped file can not be deleted on windows until the mapping is collected
+        if (!segment.file.delete()) {
+            segment.file.deleteOnExit();
+        }
+    }
+
+    /**
+     * Position of an appended trap.
+     */
+    static class Entry {
+
+        private final Segment segment;
+        private final int offset;
+
+        private Entry(Segment segment, int offset) {
+            this.segment = segment;
+            this.offset = offset;
+        }
+    }
+
+    private static class Segment {
+
+        private final File file;
+        private final RandomAccessFile raf;
+        private final FileLock lock;
+        private final MappedByteBuffer buffer;
+        private int position = HEADER_SIZE;
+        private int pending;
+        private boolean dirty;
+        private boolean deleted;
+
+        private Segment(File file, RandomAccessFile raf, FileLock lock, MappedByteBuffer buffer) {
+            this.file = file;
+            this.raf = raf;
+            this.lock = lock;
+            this.buffer = buffer;
+        }
+
+        static Segment create(File dir, int size) throws IOException {
+            File partial = File.createTempFile("traps-", PARTIAL_SUFFIX, dir);
+            File file = partial;
+            RandomAccessFile raf = new RandomAccessFile(partial, "rw");
+            try {
+                FileChannel channel = raf.getChannel();
+                FileLock lock = channel.lock();
+                raf.setLength(size);
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+                buffer.putInt(0, MAGIC);
+                buffer.putInt(4, VERSION);
+                String name = partial.getName();
+                File journal = new File(dir, name.substring(0, name.length() - PARTIAL_SUFFIX.length()) + SUFFIX);
+                //on windows the segment keeps its partial name, it is adopted all the same
+                if (partial.renameTo(journal)) {
+                    file = journal;
+                }
+                return new Segment(file, raf, lock, buffer);
+            } catch (IOException e) {
+                raf.close();
+                if (!file.delete()) {
+                    file.deleteOnExit();
+                }
+                throw e;
+            }
+        }
+
+        void release() {
+            try {
+                lock.release();
+                raf.close();
+            } catch (IOException e) {
+                logger.warn("Unable to close the journal segment " + file, e);
+            }
+        }
+    }
+}
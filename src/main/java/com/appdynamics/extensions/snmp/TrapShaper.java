@@ -0,0 +1,209 @@
+package com.appdynamics.extensions.snmp;
+
+
+import com.appdynamics.extensions.snmp.config.Receiver;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.log4j.Logger;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Paces the traps of receivers that have a maxTrapsPerSecond with a token bucket, so bursts do not overflow their
+ * socket buffers. Traps within the rate and burst go out right away, the excess waits in a bounded queue per receiver
+ * that a timer drains as tokens become available. Traps that do not fit into the queue are dropped.
+ */
+class TrapShaper {
+
+    private static Logger logger = Logger.getLogger(TrapShaper.class);
+
+    /**
+     * Starts the send of one trap to one receiver.
+     */
+    interface Dispatch {
+        ListenableFuture<Void> start();
+    }
+
+    private final ConcurrentMap<String, ReceiverQueue> queues = new ConcurrentHashMap<String, ReceiverQueue>();
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("snmp-trap-shaper-%d").setDaemon(true).build());
+
+    /**
+     * @return the result of the send, null if the receiver's queue is full and the trap was dropped
+     */
+    ListenableFuture<Void> submit(Receiver receiver, Dispatch dispatch) {
+        if (receiver.getMaxTrapsPerSecond() <= 0) {
+            return dispatch.start();
+        }
+        return getQueue(receiver).submit(receiver, dispatch);
+    }
+
+    long getShaped(Receiver receiver) {
+        ReceiverQueue queue = queues.get(key(receiver));
+        return queue == null ? 0 : queue.shaped.get();
+    }
+
+    long getDropped(Receiver receiver) {
+        ReceiverQueue queue = queues.get(key(receiver));
+        return queue == null ? 0 : queue.dropped.get();
+    }
+
+    void close() {
+        timer.shutdownNow();
+    }
+
+    private ReceiverQueue getQueue(Receiver receiver) {
+        String key = key(receiver);
+        ReceiverQueue queue = queues.get(key);
+        if (queue == null) {
+            ReceiverQueue created = new ReceiverQueue(key);
+            queue = queues.putIfAbsent(key, created);
+            if (queue == null) {
+                queue = created;
+            }
+        }
+        return queue;
+    }
+
+    private static String key(Receiver receiver) {
+        return receiver.getHost() + ":" + receiver.getPort();
+    }
+
+    /**
+     * Token bucket and backlog of one receiver.
+     */
+    private class ReceiverQueue implements Runnable {
+
+        private final String receiver;
+        private final Queue<PendingSend> backlog = new ArrayDeque<PendingSend>();
+        private final AtomicLong shaped = new AtomicLong();
+        private final AtomicLong dropped = new AtomicLong();
+        private double ratePerNano;
+        private double burst;
+        private int capacity;
+        private double tokens = -1;
+        private long refilledAt;
+        private boolean drainScheduled;
+
+        ReceiverQueue(String receiver) {
+            this.receiver = receiver;
+        }
+
+        ListenableFuture<Void> submit(Receiver settings, Dispatch dispatch) {
+            synchronized (this) {
+                configure(settings);
+                refill(System.nanoTime());
+                if (backlog.isEmpty() && tokens >= 1) {
+                    tokens--;
+                } else if (backlog.size() < capacity) {
+                    PendingSend pending = new PendingSend(dispatch);
+                    backlog.add(pending);
+                    shaped.incrementAndGet();
+                    scheduleDrain();
+                    return pending.result;
+                } else {
+                    long count = dropped.incrementAndGet();
+                    logger.warn("Dropped trap to " + receiver + ", " + capacity + " traps are already waiting (" + count + " dropped so far)");
+                    return null;
+                }
+            }
+            return dispatch.start();
+        }
+
+        //settings may change with the configuration
+        private void configure(Receiver settings) {
+            ratePerNano = settings.getMaxTrapsPerSecond() / (double) TimeUnit.SECONDS.toNanos(1);
+            burst = Math.max(1, settings.getBurst() > 0 ? settings.getBurst() : settings.getMaxTrapsPerSecond());
+            capacity = Math.max(0, settings.getQueueSize());
+            if (tokens < 0) {
+                tokens = burst;
+                refilledAt = System.nanoTime();
+            }
+        }
+
+        private void refill(long now) {
+            tokens = Math.min(burst, tokens + (now - refilledAt) * ratePerNano);
+            refilledAt = now;
+        }
+
+        private void scheduleDrain() {
+            if (drainScheduled) {
+                return;
+            }
+            long delay = tokens >= 1 ? 0 : (long) Math.ceil((1 - tokens) / ratePerNano);
+            try {
+                timer.schedule(this, delay, TimeUnit.NANOSECONDS);
+                drainScheduled = true;
+            } catch (RejectedExecutionException e) {
+                logger.debug("Not draining the traps of " + receiver + ", shutting down");
+            }
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                PendingSend next;
+                synchronized (this) {
+                    drainScheduled = false;
+                    refill(System.nanoTime());
+                    next = backlog.peek();
+                    //abandoned by the sender, e.g. the event deadline passed
+                    while (next != null && next.result.isCancelled()) {
+                        backlog.poll();
+                        next = backlog.peek();
+                    }
+                    if (next == null) {
+                        return;
+                    }
+                    if (tokens < 1) {
+                        scheduleDrain();
+                        return;
+                    }
+                    tokens--;
+                    backlog.poll();
+                }
+                next.start();
+            }
+        }
+    }
+
+    private static class PendingSend {
+
+        private final Dispatch dispatch;
+        private final SettableFuture<Void> result = SettableFuture.create();
+
+        PendingSend(Dispatch dispatch) {
+            this.dispatch = dispatch;
+        }
+
+        void start() {
+            try {
+                Futures.addCallback(dispatch.start(), new FutureCallback<Void>() {
+                    @Override
+                    public void onSuccess(Void value) {
+                        result.set(value);
+                    }
+
+                    @Override
+                    public void onFailure(Throwable t) {
+                        result.setException(t);
+                    }
+                }, MoreExecutors.directExecutor());
+            } catch (RuntimeException e) {
+                result.setException(e);
+            }
+        }
+    }
+}
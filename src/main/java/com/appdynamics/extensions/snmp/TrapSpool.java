@@ -0,0 +1,322 @@
+package com.appdynamics.extensions.snmp;
+
+
+import com.appdynamics.extensions.snmp.config.ConfigLoader;
+import com.appdynamics.extensions.snmp.config.Configuration;
+import com.appdynamics.extensions.snmp.config.Receiver;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.log4j.Logger;
+import org.snmp4j.smi.OID;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sends traps through the {@link TrapJournal} of an account. A trap is journaled before it is sent and completed once
+ * it reached all receivers. Receivers that failed get the trap again from a background replayer, with exponential
+ * backoff and at most spoolMaxAttempts sends, until they are spoolMaxAgeInMinutes old. Pending traps of processes that
+ * exited or died are adopted when the spool is opened and sent once their journaled retry is due, so the backoff holds
+ * across one-shot invocations.
+ *
+ * Delivery is at least once: a process dying between a send and its completion sends the trap again.
+ * Traps held back by the pacing of a receiver do not hold up the event, their entry is completed once they were sent.
+ */
+public class TrapSpool {
+
+    private static Logger logger = Logger.getLogger(TrapSpool.class);
+
+    //appends of this interval share one sync of the journal
+    private static final long FLUSH_INTERVAL_IN_MILLIS = 10;
+    private static final long MAX_RETRY_INTERVAL_IN_MILLIS = TimeUnit.HOURS.toMillis(1);
+    //bounds how long shutdown waits for a replay in progress
+    private static final long REPLAY_SHUTDOWN_TIMEOUT_IN_MILLIS = 5000;
+
+    private static final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("snmp-trap-spool-flush-%d").setDaemon(true).build());
+    private static final ScheduledExecutorService replayer = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("snmp-trap-spool-replay-%d").setDaemon(true).build());
+    private static final Set<TrapSpool> openSpools = Collections.newSetFromMap(new ConcurrentHashMap<TrapSpool, Boolean>());
+
+    private final Configuration config;
+    private final SNMPSender sender;
+    private final TrapJournal journal;
+    private ScheduledFuture<?> flush;
+    private volatile boolean closed;
+
+    TrapSpool(Configuration config, SNMPSender sender, TrapJournal journal) {
+        this.config = config;
+        this.sender = sender;
+        this.journal = journal;
+    }
+
+    /**
+     * Opens the spool of the account and schedules the traps left by earlier processes.
+     * @return null if the spool is disabled or the journal can not be created, traps are then sent without it
+     */
+    public static TrapSpool open(Configuration config, SNMPSender sender) {
+        if (config.getSpoolMaxAttempts() <= 0) {
+            return null;
+        }
+        File dir = new File(ConfigLoader.getSpoolDir(config.getIsMultiTenant(), config.getAccountName()));
+        try {
+            TrapSpool spool = new TrapSpool(config, sender, TrapJournal.open(dir, TrapJournal.DEFAULT_SEGMENT_SIZE));
+            spool.start();
+            return spool;
+        } catch (IOException e) {
+            logger.error("Unable to open the trap spool in " + dir + ", traps are sent without it", e);
+            return null;
+        }
+    }
+
+    void start() {
+        openSpools.add(this);
+        flush = flusher.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                journal.flush();
+            }
+        }, FLUSH_INTERVAL_IN_MILLIS, FLUSH_INTERVAL_IN_MILLIS, TimeUnit.MILLISECONDS);
+        List<SpooledTrap> orphans = journal.adoptOrphans();
+        if (!orphans.isEmpty()) {
+            logger.info("Replaying " + orphans.size() + " traps left by an earlier process");
+        }
+        long now = System.currentTimeMillis();
+        for (SpooledTrap trap : orphans) {
+            if (isTooOld(trap, now)) {
+                logger.error("Giving up on trap " + trap.getTrapOid() + " for " + describe(trap.getReceivers())
+                        + ", it is older than " + config.getSpoolMaxAgeInMinutes() + " minutes");
+                continue;
+            }
+            TrapJournal.Entry entry = append(trap);
+            if (entry != null) {
+                schedule(entry, trap, Math.max(0, trap.getDueAt() - now));
+            }
+        }
+    }
+
+    /**
+     * Journals the trap and sends it to all receivers. Receivers that failed are retried in the background.
+     * Returns once the trap went out to the receivers that are not paced, paced receivers get it from the shaper.
+     * @throws SNMPTrapException listing every receiver that failed or timed out on this attempt, paced ones aside
+     */
+    public void sendTrap(ADSnmpData snmpData, OID trapOid) {
+        long now = System.currentTimeMillis();
+        SpooledTrap trap = new SpooledTrap(now, 0, now, trapOid, Arrays.asList(config.getReceivers()), snmpData);
+        TrapJournal.Entry entry = append(trap);
+        SNMPSender.Delivery delivery;
+        try {
+            delivery = sender.dispatchTrap(config, snmpData, trapOid, trap.getReceivers());
+        } catch (RuntimeException e) {
+            retry(entry, trap, trap.getReceivers());
+            throw e;
+        }
+        settle(entry, trap, delivery);
+        delivery.throwIfFailed();
+    }
+
+    /**
+     * Completes the entry, or journals the next attempt for the receivers that failed, once the paced traps were sent too.
+     */
+    private void settle(final TrapJournal.Entry entry, final SpooledTrap trap, final SNMPSender.Delivery delivery) {
+        Futures.addCallback(delivery.getPaced(), new FutureCallback<List<Receiver>>() {
+            @Override
+            public void onSuccess(List<Receiver> pacedFailures) {
+                if (closed) {
+                    //the entry stays pending in the journal, for the spool that adopts it
+                    return;
+                }
+                List<Receiver> failedReceivers = new ArrayList<Receiver>(delivery.getFailedReceivers());
+                failedReceivers.addAll(pacedFailures);
+                retry(entry, trap, failedReceivers);
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                if (!closed) {
+                    retry(entry, trap, trap.getReceivers());
+                }
+            }
+        }, MoreExecutors.directExecutor());
+    }
+
+    private void replay(TrapJournal.Entry entry, SpooledTrap trap) {
+        if (closed) {
+            //the entry stays pending in the journal, for the spool that adopts it
+            return;
+        }
+        if (isTooOld(trap, System.currentTimeMillis())) {
+            logger.error("Giving up on trap " + trap.getTrapOid() + " for " + describe(trap.getReceivers())
+                    + ", it is older than " + config.getSpoolMaxAgeInMinutes() + " minutes");
+            complete(entry);
+            return;
+        }
+        List<Receiver> receivers = getConfiguredReceivers(trap.getReceivers());
+        if (receivers.isEmpty()) {
+            complete(entry);
+            return;
+        }
+        try {
+            sender.sendTrap(config, trap.getSnmpData(), trap.getTrapOid(), receivers);
+            logger.info("Spooled trap sent to " + describe(receivers) + " after " + trap.getAttempts() + " failed attempts");
+            complete(entry);
+        } catch (SNMPTrapException e) {
+            logger.warn("Resending spooled trap failed " + e.getMessage());
+            retry(entry, trap, e.getFailedReceivers());
+        } catch (RuntimeException e) {
+            logger.error("Resending spooled trap failed", e);
+            retry(entry, trap, receivers);
+        }
+    }
+
+    /**
+     * The journal only keeps host and port, the receivers of the configuration carry their other settings.
+     * Receivers that were removed from the configuration are dropped.
+     */
+    private List<Receiver> getConfiguredReceivers(List<Receiver> receivers) {
+        List<Receiver> configured = new ArrayList<Receiver>(receivers.size());
+        for (Receiver receiver : receivers) {
+            Receiver match = null;
+            for (Receiver candidate : config.getReceivers()) {
+                if (candidate.getPort() == receiver.getPort() && candidate.getHost() != null && candidate.getHost().equals(receiver.getHost())) {
+                    match = candidate;
+                    break;
+                }
+            }
+            if (match != null) {
+                configured.add(match);
+            } else {
+                logger.warn("Dropping spooled trap for " + receiver.getHost() + ":" + receiver.getPort() + ", it is no longer a configured receiver");
+            }
+        }
+        return configured;
+    }
+
+    private boolean isTooOld(SpooledTrap trap, long time) {
+        int maxAge = config.getSpoolMaxAgeInMinutes();
+        return maxAge > 0 && time - trap.getCreatedAt() > TimeUnit.MINUTES.toMillis(maxAge);
+    }
+
+    /**
+     * Journals the next attempt for the receivers that failed before completing the attempt that failed,
+     * so a crash in between sends the trap twice rather than never.
+     */
+    private void retry(TrapJournal.Entry entry, SpooledTrap trap, List<Receiver> failedReceivers) {
+        if (failedReceivers.isEmpty()) {
+            complete(entry);
+            return;
+        }
+        int attempts = trap.getAttempts() + 1;
+        long delay = getRetryDelay(attempts);
+        SpooledTrap next = trap.retry(failedReceivers, System.currentTimeMillis() + delay);
+        if (attempts >= config.getSpoolMaxAttempts()) {
+            logger.error("Giving up on trap " + trap.getTrapOid() + " for " + describe(failedReceivers)
+                    + " after " + attempts + " attempts");
+            complete(entry);
+            return;
+        }
+        if (isTooOld(next, next.getDueAt())) {
+            logger.error("Giving up on trap " + trap.getTrapOid() + " for " + describe(failedReceivers)
+                    + ", its next attempt would be later than " + config.getSpoolMaxAgeInMinutes() + " minutes");
+            complete(entry);
+            return;
+        }
+        TrapJournal.Entry nextEntry = append(next);
+        complete(entry);
+        schedule(nextEntry, next, delay);
+    }
+
+    private void schedule(final TrapJournal.Entry entry, final SpooledTrap trap, long delayInMillis) {
+        try {
+            replayer.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    replay(entry, trap);
+                }
+            }, delayInMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            //shutting down, the entry stays pending for the next process
+            logger.debug("Not scheduling the replay of trap " + trap.getTrapOid() + ", the spool is shut down");
+        }
+    }
+
+    long getRetryDelay(int attempts) {
+        long delay = TimeUnit.SECONDS.toMillis(Math.max(0, config.getSpoolRetryIntervalInSeconds()));
+        for (int i = 1; i < attempts && delay < MAX_RETRY_INTERVAL_IN_MILLIS; i++) {
+            delay *= 2;
+        }
+        return Math.min(delay, MAX_RETRY_INTERVAL_IN_MILLIS);
+    }
+
+    /**
+     * @return null if the journal is unavailable, the trap is then only sent once
+     */
+    private TrapJournal.Entry append(SpooledTrap trap) {
+        try {
+            return journal.append(trap);
+        } catch (IOException e) {
+            logger.error("Unable to journal trap " + trap.getTrapOid(), e);
+            return null;
+        }
+    }
+
+    private void complete(TrapJournal.Entry entry) {
+        if (entry != null) {
+            journal.complete(entry);
+        }
+    }
+
+    int getPending() {
+        return journal.getPending();
+    }
+
+    void close() {
+        closed = true;
+        openSpools.remove(this);
+        if (flush != null) {
+            flush.cancel(false);
+        }
+        journal.close();
+    }
+
+    private static String describe(List<Receiver> receivers) {
+        StringBuilder sb = new StringBuilder();
+        for (Receiver receiver : receivers) {
+            if (sb.length() > 0) {
+                sb.append(", ");
+            }
+            sb.append(receiver.getHost()).append(':').append(receiver.getPort());
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Stops the replays, waiting for one in progress, and flushes all journals. Traps that are still pending
+     * are replayed by the next process. Called once the process does not send any more traps.
+     */
+    public static void shutdown() {
+        replayer.shutdownNow();
+        try {
+            replayer.awaitTermination(REPLAY_SHUTDOWN_TIMEOUT_IN_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flusher.shutdownNow();
+        for (TrapSpool spool : openSpools) {
+            spool.close();
+        }
+    }
+}
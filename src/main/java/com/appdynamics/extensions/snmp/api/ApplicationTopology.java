@@ -0,0 +1,76 @@
+package com.appdynamics.extensions.snmp.api;
+
+
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ImmutableMap;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Nodes of an application indexed by tier and node name, and the tier of each business transaction.
+ * Immutable, shared by all events of the application.
+ */
+public class ApplicationTopology implements Topology {
+
+    private final ImmutableListMultimap<String, Node> nodesByTier;
+    private final ImmutableListMultimap<String, Node> nodesByName;
+    private final ImmutableMap<Integer, String> btTiers;
+
+    private ApplicationTopology(ImmutableListMultimap<String, Node> nodesByTier, ImmutableListMultimap<String, Node> nodesByName,
+                                ImmutableMap<Integer, String> btTiers) {
+        this.nodesByTier = nodesByTier;
+        this.nodesByName = nodesByName;
+        this.btTiers = btTiers;
+    }
+
+    /**
+     * @param nodes all nodes of the application
+     * @param bts   all business transactions of the application, or null if they are not needed
+     */
+    public static ApplicationTopology of(List<Node> nodes, List<BusinessTransaction> bts) {
+        ImmutableListMultimap.Builder<String, Node> byTier = ImmutableListMultimap.builder();
+        ImmutableListMultimap.Builder<String, Node> byName = ImmutableListMultimap.builder();
+        for (Node node : nodes) {
+            if (node.getTierName() != null) {
+                byTier.put(node.getTierName(), node);
+            }
+            if (node.getName() != null) {
+                byName.put(node.getName(), node);
+            }
+        }
+        Map<Integer, String> tiers = new HashMap<Integer, String>();
+        if (bts != null) {
+            for (BusinessTransaction bt : bts) {
+                if (bt.getTierName() != null) {
+                    tiers.put(bt.getId(), bt.getTierName());
+                }
+            }
+        }
+        return new ApplicationTopology(byTier.build(), byName.build(), ImmutableMap.copyOf(tiers));
+    }
+
+    @Override
+    public List<Node> getNodesInTier(String tier) {
+        return nodesByTier.get(tier);
+    }
+
+    @Override
+    public List<Node> getNodes(String nodeName) {
+        return nodesByName.get(nodeName);
+    }
+
+    @Override
+    public String getBtTier(int btId) {
+        return btTiers.get(btId);
+    }
+
+    public int getNodeCount() {
+        return nodesByName.size();
+    }
+
+    public int getBtCount() {
+        return btTiers.size();
+    }
+}
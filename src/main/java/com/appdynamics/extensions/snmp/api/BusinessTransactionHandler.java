@@ -0,0 +1,14 @@
+package com.appdynamics.extensions.snmp.api;
+
+
+/**
+ * Receives the business transactions of a controller response one at a time, while the response is parsed.
+ */
+public interface BusinessTransactionHandler {
+
+    /**
+     * @return false to stop parsing the response, e.g. once the business transaction looked for was found
+     */
+    boolean handle(BusinessTransaction bt);
+
+}
@@ -0,0 +1,29 @@
+package com.appdynamics.extensions.snmp.api;
+
+
+import com.google.common.collect.Lists;
+
+import java.util.List;
+
+/**
+ * Collects only the id and tier of each business transaction, which is all a topology keeps of them.
+ */
+public class BusinessTransactionTiers implements BusinessTransactionHandler {
+
+    private final List<BusinessTransaction> bts = Lists.newArrayList();
+
+    @Override
+    public boolean handle(BusinessTransaction bt) {
+        if (bt.getTierName() != null) {
+            BusinessTransaction tier = new BusinessTransaction();
+            tier.setId(bt.getId());
+            tier.setTierName(bt.getTierName());
+            bts.add(tier);
+        }
+        return true;
+    }
+
+    public List<BusinessTransaction> getBusinessTransactions() {
+        return bts;
+    }
+}
@@ -0,0 +1,137 @@
+package com.appdynamics.extensions.snmp.api;
+
+
+import com.appdynamics.extensions.snmp.config.Configuration;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.SettableFuture;
+import org.apache.log4j.Logger;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Merges concurrent requests for the same endpoint into one controller call whose result is shared by all callers,
+ * and remembers endpoints that returned nothing (404 or an empty list) for a short while. Meant for long running
+ * processes, where a storm of alerts for one application would otherwise send the same lookups over and over.
+ *
+ * Business transactions streamed to a {@link BusinessTransactionHandler} carry their id and tier only.
+ */
+public class CoalescingService implements IService {
+
+    private static Logger logger = Logger.getLogger(CoalescingService.class);
+
+    private static final int MAX_NEGATIVE_ENTRIES = 10000;
+
+    private final IService delegate;
+    private final ConcurrentMap<String, SettableFuture<List<Node>>> nodeCalls = new ConcurrentHashMap<String, SettableFuture<List<Node>>>();
+    private final ConcurrentMap<String, SettableFuture<List<BusinessTransaction>>> btCalls = new ConcurrentHashMap<String, SettableFuture<List<BusinessTransaction>>>();
+    private final ConcurrentMap<String, SettableFuture<List<BusinessTransaction>>> btTierCalls = new ConcurrentHashMap<String, SettableFuture<List<BusinessTransaction>>>();
+    private final Cache<String, Boolean> emptyEndpoints;
+
+    public CoalescingService(IService delegate, long negativeTtlInSeconds) {
+        this.delegate = delegate;
+        this.emptyEndpoints = CacheBuilder.newBuilder()
+                .maximumSize(MAX_NEGATIVE_ENTRIES)
+                .expireAfterWrite(Math.max(0, negativeTtlInSeconds), TimeUnit.SECONDS)
+                .build();
+    }
+
+    public static CoalescingService create(Configuration config) {
+        return new CoalescingService(new ServiceImpl(), config.getNegativeLookupCacheTtlInSeconds());
+    }
+
+    @Override
+    public List<BusinessTransaction> getBTs(final HttpClientBuilder httpClientBuilder, final String endpoint) throws ServiceException {
+        return Lists.newArrayList(coalesce(btCalls, endpoint, new Call<List<BusinessTransaction>>() {
+            @Override
+            public List<BusinessTransaction> call() {
+                return delegate.getBTs(httpClientBuilder, endpoint);
+            }
+        }));
+    }
+
+    @Override
+    public void getBTs(final HttpClientBuilder httpClientBuilder, final String endpoint, BusinessTransactionHandler handler) throws ServiceException {
+        List<BusinessTransaction> bts = coalesce(btTierCalls, endpoint, new Call<List<BusinessTransaction>>() {
+            @Override
+            public List<BusinessTransaction> call() {
+                BusinessTransactionTiers tiers = new BusinessTransactionTiers();
+                delegate.getBTs(httpClientBuilder, endpoint, tiers);
+                return tiers.getBusinessTransactions();
+            }
+        });
+        for (BusinessTransaction bt : bts) {
+            if (!handler.handle(bt)) {
+                return;
+            }
+        }
+    }
+
+    @Override
+    public List<Node> getNodes(final HttpClientBuilder httpClientBuilder, final String endpoint) throws ServiceException {
+        return Lists.newArrayList(coalesce(nodeCalls, endpoint, new Call<List<Node>>() {
+            @Override
+            public List<Node> call() {
+                return delegate.getNodes(httpClientBuilder, endpoint);
+            }
+        }));
+    }
+
+    private <T extends List<?>> T coalesce(ConcurrentMap<String, SettableFuture<T>> calls, String endpoint, Call<T> call) {
+        if (emptyEndpoints.getIfPresent(endpoint) != null) {
+            logger.debug("Skipping " + endpoint + ", it returned nothing recently");
+            return emptyList();
+        }
+        SettableFuture<T> result = SettableFuture.create();
+        SettableFuture<T> inFlight = calls.putIfAbsent(endpoint, result);
+        if (inFlight != null) {
+            logger.debug("Joining the request in flight for " + endpoint);
+            return await(inFlight, endpoint);
+        }
+        try {
+            T value = call.call();
+            if (value.isEmpty()) {
+                emptyEndpoints.put(endpoint, Boolean.TRUE);
+            }
+            result.set(value);
+            return value;
+        } catch (RuntimeException e) {
+            result.setException(e);
+            throw e;
+        } finally {
+            calls.remove(endpoint, result);
+            //an Error must not leave the callers that joined waiting
+            if (!result.isDone()) {
+                result.setException(new ServiceException("Request for " + endpoint + " failed", null));
+            }
+        }
+    }
+
+    private <T> T await(SettableFuture<T> inFlight, String endpoint) {
+        try {
+            return inFlight.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ServiceException("Interrupted waiting for " + endpoint, e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof ServiceException) {
+                throw (ServiceException) e.getCause();
+            }
+            throw new ServiceException("Request for " + endpoint + " failed", e.getCause());
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T extends List<?>> T emptyList() {
+        return (T) Lists.newArrayList();
+    }
+
+    private interface Call<T> {
+        T call();
+    }
+}
@@ -0,0 +1,185 @@
+package com.appdynamics.extensions.snmp.api;
+
+
+import com.google.common.collect.Lists;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.InputStream;
+import java.util.List;
+
+/**
+ * Pull parser for the node and business transaction lists of the controller REST API. Records are read one at a time
+ * straight from the response, without building the document or the complete {@link NodeWrapper} /
+ * {@link BusinessTransactionWrapper} first. Unknown elements are skipped, as JAXB would.
+ */
+public class ControllerResponseParser {
+
+    private static final String NODE = "node";
+    private static final String BUSINESS_TRANSACTION = "business-transaction";
+    private static final String IP_ADDRESSES = "ipAddresses";
+    private static final String IP_ADDRESS = "ipAddress";
+
+    private static final XMLInputFactory inputFactory = createInputFactory();
+
+    private ControllerResponseParser() {
+    }
+
+    /**
+     * Parses a {@code <nodes>} response.
+     */
+    public static List<Node> parseNodes(InputStream in) throws XMLStreamException {
+        List<Node> nodes = Lists.newArrayList();
+        XMLStreamReader reader = inputFactory.createXMLStreamReader(in);
+        try {
+            while (nextRecord(reader, NODE)) {
+                nodes.add(readNode(reader));
+            }
+        } finally {
+            reader.close();
+        }
+        return nodes;
+    }
+
+    /**
+     * Parses a {@code <business-transactions>} response, handing every business transaction to the handler
+     * as soon as it is read. Stops at the first business transaction the handler rejects.
+     */
+    public static void parseBTs(InputStream in, BusinessTransactionHandler handler) throws XMLStreamException {
+        XMLStreamReader reader = inputFactory.createXMLStreamReader(in);
+        try {
+            while (nextRecord(reader, BUSINESS_TRANSACTION)) {
+                if (!handler.handle(readBT(reader))) {
+                    return;
+                }
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    //moves to the start of the next record, a direct child of the root element
+    private static boolean nextRecord(XMLStreamReader reader, String name) throws XMLStreamException {
+        if (reader.getEventType() == XMLStreamConstants.START_DOCUMENT) {
+            //the root element
+            reader.nextTag();
+        }
+        while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+            if (name.equals(reader.getLocalName())) {
+                return true;
+            }
+            skip(reader);
+        }
+        return false;
+    }
+
+    private static Node readNode(XMLStreamReader reader) throws XMLStreamException {
+        Node node = new Node();
+        while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+            String element = reader.getLocalName();
+            if (IP_ADDRESSES.equals(element)) {
+                node.setIpAddresses(readIpAddresses(reader));
+            } else if ("id".equals(element)) {
+                node.setId(toInt(reader.getElementText()));
+            } else if ("name".equals(element)) {
+                node.setName(reader.getElementText());
+            } else if ("type".equals(element)) {
+                node.setType(reader.getElementText());
+            } else if ("tierId".equals(element)) {
+                node.setTierId(toInt(reader.getElementText()));
+            } else if ("tierName".equals(element)) {
+                node.setTierName(reader.getElementText());
+            } else if ("machineId".equals(element)) {
+                node.setMachineId(toInt(reader.getElementText()));
+            } else if ("machineName".equals(element)) {
+                node.setMachineName(reader.getElementText());
+            } else if ("machineOSType".equals(element)) {
+                node.setMachineOSType(reader.getElementText());
+            } else if ("machineAgentPresent".equals(element)) {
+                node.setMachineAgentPresent(toBoolean(reader.getElementText()));
+            } else if ("appAgentPresent".equals(element)) {
+                node.setAppAgentPresent(toBoolean(reader.getElementText()));
+            } else if ("appAgentVersion".equals(element)) {
+                node.setAppAgentVersion(reader.getElementText());
+            } else {
+                skip(reader);
+            }
+        }
+        return node;
+    }
+
+    private static List<String> readIpAddresses(XMLStreamReader reader) throws XMLStreamException {
+        List<String> ipAddresses = Lists.newArrayList();
+        while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+            if (IP_ADDRESS.equals(reader.getLocalName())) {
+                ipAddresses.add(reader.getElementText());
+            } else {
+                skip(reader);
+            }
+        }
+        return ipAddresses;
+    }
+
+    private static BusinessTransaction readBT(XMLStreamReader reader) throws XMLStreamException {
+        BusinessTransaction bt = new BusinessTransaction();
+        while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+            String element = reader.getLocalName();
+            if ("id".equals(element)) {
+                bt.setId(toInt(reader.getElementText()));
+            } else if ("name".equals(element)) {
+                bt.setName(reader.getElementText());
+            } else if ("entryPointType".equals(element)) {
+                bt.setEntryPointType(reader.getElementText());
+            } else if ("internalName".equals(element)) {
+                bt.setInternalName(reader.getElementText());
+            } else if ("tierId".equals(element)) {
+                bt.setTierId(toInt(reader.getElementText()));
+            } else if ("tierName".equals(element)) {
+                bt.setTierName(reader.getElementText());
+            } else if ("background".equals(element)) {
+                bt.setBackground(toBoolean(reader.getElementText()));
+            } else {
+                skip(reader);
+            }
+        }
+        return bt;
+    }
+
+    //skips the current element including its children
+    private static void skip(XMLStreamReader reader) throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+        }
+    }
+
+    //malformed numbers become 0, like JAXB does
+    private static int toInt(String text) {
+        try {
+            return Integer.parseInt(text.trim());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static boolean toBoolean(String text) {
+        String value = text.trim();
+        return "true".equals(value) || "1".equals(value);
+    }
+
+    private static XMLInputFactory createInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        //the responses never need a DTD or external entities
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+        return factory;
+    }
+}
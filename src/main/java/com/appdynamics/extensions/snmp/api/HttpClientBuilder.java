@@ -1,49 +1,120 @@
 package com.appdynamics.extensions.snmp.api;
 
 
-import com.appdynamics.TaskInputArgs;
-import com.appdynamics.extensions.http.SimpleHttpClient;
+import com.appdynamics.extensions.snmp.config.ControllerConfig;
+import com.google.common.base.Strings;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
+import org.apache.commons.httpclient.UsernamePasswordCredentials;
+import org.apache.commons.httpclient.auth.AuthScope;
+import org.apache.commons.httpclient.params.HttpConnectionManagerParams;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.nio.charset.Charset;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
+/**
+ * Hands out the http client for the controller. Clients are shared by all builders with the same settings,
+ * so the connections to the controller (and their TLS sessions) are kept alive and reused across REST calls.
+ * Whether a call uses TLS follows the scheme of its endpoint, see {@link EndpointBuilder}. The controller certificate
+ * is verified against the default truststore of the JVM.
+ */
 public class HttpClientBuilder {
-    private boolean isSSLEnabled;
+
+    private static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = 4;
+    private static final int DEFAULT_MAX_TOTAL_CONNECTIONS = 20;
+    //pooled connections idle for longer are closed before they are reused, load balancers tend to drop them silently
+    private static final long IDLE_CONNECTION_TIMEOUT_IN_MILLIS = 60000;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final ConcurrentMap<String, HttpClient> clients = new ConcurrentHashMap<String, HttpClient>();
+
     private String userAccount;
     private String password;
     private int connectTimeout = 10;
     private int socketTimeout = 10;
+    private int maxConnectionsPerHost = DEFAULT_MAX_CONNECTIONS_PER_HOST;
+    private int maxTotalConnections = DEFAULT_MAX_TOTAL_CONNECTIONS;
 
-    public HttpClientBuilder(boolean isSSLEnabled, String userAccount, String password, int connectTimeout, int socketTimeout){
-        this.isSSLEnabled = isSSLEnabled;
+    public HttpClientBuilder(String userAccount, String password, int connectTimeout, int socketTimeout){
         this.userAccount = userAccount;
         this.password = password;
         this.connectTimeout = connectTimeout;
         this.socketTimeout = socketTimeout;
     }
 
-    public SimpleHttpClient buildHttpClient(Class clazz){
-        Map<String, String> httpConfigMap = createHttpConfigMap();
-        SimpleHttpClient simpleHttpClient = SimpleHttpClient.builder(httpConfigMap)
-                .connectionTimeout(connectTimeout)
-                .socketTimeout(socketTimeout)
-                .jaxbClasses(clazz)
-                .build();
-        return simpleHttpClient;
+    public HttpClientBuilder(ControllerConfig controller){
+        this(controller.getUserAccount(), controller.getPassword(), controller.getConnectTimeoutInSeconds() * 1000, controller.getSocketTimeoutInSeconds() * 1000);
+        this.maxConnectionsPerHost = controller.getMaxConnectionsPerHost();
+        this.maxTotalConnections = controller.getMaxTotalConnections();
     }
 
-    private Map<String, String> createHttpConfigMap() {
-        Map<String,String> map = new HashMap<String, String>();
-        map.put(TaskInputArgs.USER,userAccount);
-        map.put(TaskInputArgs.PASSWORD,password);
-        if(isSSLEnabled) {
-            map.put(TaskInputArgs.USE_SSL, "true");
+    /**
+     * @return the pooled client for these settings, created on first use. Callers release the connection
+     * of each method they execute and never close the client.
+     */
+    public HttpClient getHttpClient(){
+        String key = clientKey();
+        HttpClient client = clients.get(key);
+        if(client == null){
+            HttpClient created = createHttpClient();
+            client = clients.putIfAbsent(key, created);
+            if(client == null){
+                client = created;
+            } else {
+                ((MultiThreadedHttpConnectionManager) created.getHttpConnectionManager()).shutdown();
+            }
         }
-        return map;
+        client.getHttpConnectionManager().closeIdleConnections(IDLE_CONNECTION_TIMEOUT_IN_MILLIS);
+        return client;
     }
 
-    public boolean isSSLEnabled() {
-        return isSSLEnabled;
+    /**
+     * Clients are looked up by a digest of their settings, so the cache does not keep the passwords in its keys.
+     */
+    private String clientKey() {
+        Hasher hasher = Hashing.sha256().newHasher()
+                .putInt(connectTimeout).putInt(socketTimeout).putInt(maxConnectionsPerHost).putInt(maxTotalConnections);
+        for (String field : new String[]{userAccount, password}) {
+            if (field == null) {
+                hasher.putInt(-1);
+            } else {
+                hasher.putInt(field.length()).putString(field, UTF_8);
+            }
+        }
+        return hasher.hash().toString();
+    }
+
+    private HttpClient createHttpClient() {
+        MultiThreadedHttpConnectionManager connectionManager = new MultiThreadedHttpConnectionManager();
+        HttpConnectionManagerParams params = connectionManager.getParams();
+        params.setConnectionTimeout(connectTimeout);
+        params.setSoTimeout(socketTimeout);
+        params.setDefaultMaxConnectionsPerHost(Math.max(1, maxConnectionsPerHost));
+        params.setMaxTotalConnections(Math.max(1, maxTotalConnections));
+        //pooled connections may have been closed by the controller while idle
+        params.setStaleCheckingEnabled(true);
+        HttpClient client = new HttpClient(connectionManager);
+        //wait for a pooled connection no longer than for a new one
+        client.getParams().setConnectionManagerTimeout(connectTimeout);
+        if(!Strings.isNullOrEmpty(userAccount)) {
+            client.getParams().setAuthenticationPreemptive(true);
+            client.getState().setCredentials(AuthScope.ANY, new UsernamePasswordCredentials(userAccount, password));
+        }
+        return client;
+    }
+
+    /**
+     * Closes the pooled connections of all clients. Called once the process does not call the controller any more.
+     */
+    public static void shutdown(){
+        for(HttpClient client : clients.values()){
+            ((MultiThreadedHttpConnectionManager) client.getHttpConnectionManager()).shutdown();
+        }
+        clients.clear();
     }
 
 }
@@ -11,6 +11,11 @@ public interface IService {
 
     List<BusinessTransaction> getBTs(HttpClientBuilder httpClientBuilder, String endpoint) throws ServiceException;
 
+    /**
+     * Streams the business transactions to the handler while the response is read, without keeping them.
+     */
+    void getBTs(HttpClientBuilder httpClientBuilder, String endpoint, BusinessTransactionHandler handler) throws ServiceException;
+
     List<Node> getNodes(HttpClientBuilder httpClientBuilder, String endpoint) throws ServiceException;
 
 }
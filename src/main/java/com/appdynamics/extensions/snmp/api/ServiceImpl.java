@@ -1,11 +1,13 @@
 package com.appdynamics.extensions.snmp.api;
 
 
-import com.appdynamics.extensions.http.Response;
-import com.appdynamics.extensions.http.SimpleHttpClient;
 import com.google.common.collect.Lists;
+import org.apache.commons.httpclient.methods.GetMethod;
 import org.apache.log4j.Logger;
 
+import javax.xml.stream.XMLStreamException;
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.HttpURLConnection;
 import java.util.List;
 
@@ -15,47 +17,50 @@ public class ServiceImpl implements IService {
 
     @Override
     public List<BusinessTransaction> getBTs(HttpClientBuilder httpClientBuilder, String endpoint) throws ServiceException {
-        logger.debug("getBTs :: building http client");
-        SimpleHttpClient simpleHttpClient = null;
+        final List<BusinessTransaction> bts = Lists.newArrayList();
+        getBTs(httpClientBuilder, endpoint, new BusinessTransactionHandler() {
+            @Override
+            public boolean handle(BusinessTransaction bt) {
+                bts.add(bt);
+                return true;
+            }
+        });
+        return bts;
+    }
+
+    @Override
+    public void getBTs(HttpClientBuilder httpClientBuilder, String endpoint, final BusinessTransactionHandler handler) throws ServiceException {
         try {
-            simpleHttpClient = httpClientBuilder.buildHttpClient(BusinessTransactionWrapper.class);
             logger.debug("getBTs :: target url" + endpoint);
-            Response response = simpleHttpClient.target(endpoint).get();
-            BusinessTransactionWrapper btWrapper = null;
-            if (response != null && response.getStatus() == HttpURLConnection.HTTP_OK) {
-                btWrapper = response.xml(BusinessTransactionWrapper.class);
-                if (btWrapper != null && btWrapper.getBusinessTransactions()!= null) {
-                    logger.debug("getBTs :: returning successfully");
-                    return btWrapper.getBusinessTransactions();
+            get(httpClientBuilder, endpoint, new ResponseParser<Void>() {
+                @Override
+                public Void parse(InputStream in) throws XMLStreamException {
+                    ControllerResponseParser.parseBTs(in, handler);
+                    return null;
                 }
-            }
+            });
+            logger.debug("getBTs :: returning successfully");
         }
         catch(Exception e){
             String msg = "getBTs :: unable to get applications for " + endpoint;
             logger.error(msg,e);
             throw new ServiceException(msg,e);
         }
-        finally{
-            simpleHttpClient.close();
-        }
-        return Lists.newArrayList();
     }
 
     @Override
     public List<Node> getNodes(HttpClientBuilder httpClientBuilder, String endpoint) throws ServiceException {
-        logger.debug("getNodes :: building http client");
-        SimpleHttpClient simpleHttpClient = null;
         try {
-            simpleHttpClient = httpClientBuilder.buildHttpClient(NodeWrapper.class);
             logger.debug("getNodes :: target url" + endpoint);
-            Response response = simpleHttpClient.target(endpoint).get();
-            NodeWrapper nodeWrapper = null;
-            if (response != null && response.getStatus() == HttpURLConnection.HTTP_OK) {
-                nodeWrapper = response.xml(NodeWrapper.class);
-                if (nodeWrapper != null && nodeWrapper.getNodes()!= null) {
-                    logger.debug("getNodes :: returning successfully");
-                    return nodeWrapper.getNodes();
+            List<Node> nodes = get(httpClientBuilder, endpoint, new ResponseParser<List<Node>>() {
+                @Override
+                public List<Node> parse(InputStream in) throws XMLStreamException {
+                    return ControllerResponseParser.parseNodes(in);
                 }
+            });
+            if (nodes != null) {
+                logger.debug("getNodes :: returning successfully");
+                return nodes;
             }
         }
         catch(Exception e){
@@ -63,12 +68,40 @@ public class ServiceImpl implements IService {
             logger.error(msg,e);
             throw new ServiceException(msg,e);
         }
-        finally{
-            simpleHttpClient.close();
-        }
         return Lists.newArrayList();
     }
 
+    /**
+     * @return the parsed response, or null if the controller does not know the endpoint (404) or sent no body
+     * @throws IOException for any other status, so that callers and caches do not take a failed call for "nothing found"
+     */
+    private <T> T get(HttpClientBuilder httpClientBuilder, String endpoint, ResponseParser<T> parser) throws IOException, XMLStreamException {
+        GetMethod method = new GetMethod(endpoint);
+        try {
+            int status = httpClientBuilder.getHttpClient().executeMethod(method);
+            if (status == HttpURLConnection.HTTP_NOT_FOUND) {
+                logger.debug("Controller responded with " + status + " for " + endpoint);
+                return null;
+            }
+            if (status != HttpURLConnection.HTTP_OK) {
+                throw new IOException("Controller responded with " + status);
+            }
+            InputStream in = method.getResponseBodyAsStream();
+            if (in == null) {
+                return null;
+            }
+            return parser.parse(in);
+        } finally {
+            //returns the connection to the pool. A body the parser stopped early on is drained so that
+            //the connection can be kept alive, but it is not parsed
+            method.releaseConnection();
+        }
+    }
+
+    private interface ResponseParser<T> {
+        T parse(InputStream in) throws XMLStreamException;
+    }
+
 
 
    /* @Override
@@ -0,0 +1,19 @@
+package com.appdynamics.extensions.snmp.api;
+
+
+import java.util.List;
+
+/**
+ * Read access to the nodes, tiers and business transactions of an application.
+ */
+public interface Topology {
+
+    List<Node> getNodesInTier(String tier);
+
+    List<Node> getNodes(String nodeName);
+
+    /**
+     * @return the tier of the business transaction or null if it is unknown
+     */
+    String getBtTier(int btId);
+}
@@ -0,0 +1,105 @@
+package com.appdynamics.extensions.snmp.api;
+
+
+import com.appdynamics.extensions.snmp.config.Configuration;
+import com.appdynamics.extensions.snmp.config.ControllerConfig;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import org.apache.log4j.Logger;
+
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Caches the {@link ApplicationTopology} of each application so that enriching an event is a memory lookup.
+ * Entries are reloaded in the background once older than the refresh interval, the stale topology is served
+ * meanwhile. Entries that could not be refreshed expire after the ttl.
+ */
+public class TopologyCache implements TopologyProvider {
+
+    private static Logger logger = Logger.getLogger(TopologyCache.class);
+
+    private static final int REFRESH_THREADS = 2;
+    private static final ExecutorService refreshExecutor = createRefreshExecutor();
+
+    private final LoadingCache<Integer, ApplicationTopology> cache;
+
+    public TopologyCache(final IService service, final HttpClientBuilder clientBuilder, final ControllerConfig controller,
+                         long ttlInMinutes, long refreshInMinutes, long maxApplications) {
+        final EndpointBuilder endpointBuilder = new EndpointBuilder();
+        CacheLoader<Integer, ApplicationTopology> loader = new CacheLoader<Integer, ApplicationTopology>() {
+            @Override
+            public ApplicationTopology load(Integer appId) throws Exception {
+                long start = System.currentTimeMillis();
+                List<Node> nodes = service.getNodes(clientBuilder, endpointBuilder.buildNodesEndpoint(controller, appId));
+                BusinessTransactionTiers btTiers = new BusinessTransactionTiers();
+                service.getBTs(clientBuilder, endpointBuilder.buildBTsEndpoint(controller, appId), btTiers);
+                List<BusinessTransaction> bts = btTiers.getBusinessTransactions();
+                ApplicationTopology topology = ApplicationTopology.of(nodes, bts);
+                logger.info("Loaded topology of application " + appId + " with " + topology.getNodeCount() + " nodes and "
+                        + topology.getBtCount() + " business transactions in " + (System.currentTimeMillis() - start) + " ms");
+                return topology;
+            }
+        };
+        CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder()
+                .maximumSize(maxApplications)
+                .expireAfterWrite(ttlInMinutes, TimeUnit.MINUTES);
+        if (refreshInMinutes > 0 && refreshInMinutes < ttlInMinutes) {
+            builder.refreshAfterWrite(refreshInMinutes, TimeUnit.MINUTES);
+        }
+        cache = builder.build(CacheLoader.asyncReloading(loader, refreshExecutor));
+    }
+
+    /**
+     * @return the cache for the controller of the configuration, or null if caching is disabled
+     */
+    public static TopologyCache create(Configuration config) {
+        return create(config, new ServiceImpl());
+    }
+
+    /**
+     * @return the cache loading through the service, or null if caching is disabled
+     */
+    public static TopologyCache create(Configuration config, IService service) {
+        ControllerConfig controller = config.getController();
+        if (!config.isFetchMachineInfoFromApi() || controller == null || config.getTopologyCacheTtlInMinutes() <= 0) {
+            return null;
+        }
+        return new TopologyCache(service, new HttpClientBuilder(controller), controller, config.getTopologyCacheTtlInMinutes(),
+                config.getTopologyRefreshInMinutes(), config.getTopologyCacheMaxApplications());
+    }
+
+    /**
+     * Returns the cached topology, loading it on the calling thread on a miss.
+     * @throws ServiceException if the topology could not be loaded from the controller
+     */
+    @Override
+    public ApplicationTopology getTopology(int appId) {
+        try {
+            return cache.get(appId);
+        } catch (ExecutionException e) {
+            throw new ServiceException("Unable to load the topology of application " + appId, e.getCause());
+        } catch (UncheckedExecutionException e) {
+            throw new ServiceException("Unable to load the topology of application " + appId, e.getCause());
+        }
+    }
+
+    public void invalidate(int appId) {
+        cache.invalidate(appId);
+    }
+
+    private static ExecutorService createRefreshExecutor() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(REFRESH_THREADS, REFRESH_THREADS, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactoryBuilder().setNameFormat("topology-refresh-%d").setDaemon(true).build());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+}
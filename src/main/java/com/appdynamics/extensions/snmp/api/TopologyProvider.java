@@ -0,0 +1,14 @@
+package com.appdynamics.extensions.snmp.api;
+
+
+/**
+ * Source of application topologies used to enrich events without querying the controller per entity.
+ */
+public interface TopologyProvider {
+
+    /**
+     * @return the topology of the application or null if none is available yet
+     * @throws ServiceException if the topology could not be loaded from the controller
+     */
+    Topology getTopology(int appId);
+}
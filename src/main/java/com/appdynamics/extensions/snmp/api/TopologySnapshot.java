@@ -0,0 +1,297 @@
+package com.appdynamics.extensions.snmp.api;
+
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Memory mapped, read-only topology of an application. Opening a snapshot only validates its header,
+ * lookups binary search the hash indexes in the mapped file and decode just the matching node records.
+ *
+ * Layout (big endian):
+ * <pre>
+ * header       magic, version, createdAt (long), nodeCount, btCount, nameIndex, tierIndex, btIndex
+ * records      per node: name, tierName, machineName, ipCount, ipAddresses; strings are an int length and UTF-8 bytes
+ * tier names   distinct business transaction tiers
+ * nameIndex    nodeCount x (node name hash, record offset), sorted
+ * tierIndex    nodeCount x (tier name hash, record offset), sorted
+ * btIndex      btCount x (bt id, tier name offset), sorted
+ * </pre>
+ * Snapshots are never modified in place, {@link #write} replaces the file atomically.
+ */
+public class TopologySnapshot implements Topology {
+
+    static final int MAGIC = 0x544F504F; //"TOPO"
+    static final int VERSION = 1;
+    private static final int HEADER_SIZE = 36;
+    private static final int ENTRY_SIZE = 8;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final ByteBuffer buffer;
+    private final long createdAt;
+    private final int nodeCount;
+    private final int btCount;
+    private final int nameIndex;
+    private final int tierIndex;
+    private final int btIndex;
+
+    private TopologySnapshot(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IOException("Not a topology snapshot");
+        }
+        createdAt = buffer.getLong(8);
+        nodeCount = buffer.getInt(16);
+        btCount = buffer.getInt(20);
+        nameIndex = buffer.getInt(24);
+        tierIndex = buffer.getInt(28);
+        btIndex = buffer.getInt(32);
+        if (nodeCount < 0 || btCount < 0 || !fits(nameIndex, nodeCount) || !fits(tierIndex, nodeCount) || !fits(btIndex, btCount)) {
+            throw new IOException("Corrupt topology snapshot");
+        }
+    }
+
+    private boolean fits(int offset, int entries) {
+        return offset >= HEADER_SIZE && (long) offset + (long) entries * ENTRY_SIZE <= buffer.limit();
+    }
+
+    /**
+     * @return the snapshot or null if the file does not exist
+     * @throws IOException if the file is not a valid snapshot
+     */
+    public static TopologySnapshot open(File file) throws IOException {
+        if (!file.isFile()) {
+            return null;
+        }
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            //the mapping stays valid once the channel is closed
+            return new TopologySnapshot(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } finally {
+            raf.close();
+        }
+    }
+
+    static TopologySnapshot wrap(byte[] bytes) throws IOException {
+        return new TopologySnapshot(ByteBuffer.wrap(bytes));
+    }
+
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    @Override
+    public List<Node> getNodesInTier(String tier) {
+        return find(tierIndex, tier, true);
+    }
+
+    @Override
+    public List<Node> getNodes(String nodeName) {
+        return find(nameIndex, nodeName, false);
+    }
+
+    @Override
+    public String getBtTier(int btId) {
+        int low = 0;
+        int high = btCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int id = buffer.getInt(btIndex + mid * ENTRY_SIZE);
+            if (id < btId) {
+                low = mid + 1;
+            } else if (id > btId) {
+                high = mid - 1;
+            } else {
+                ByteBuffer in = buffer.duplicate();
+                in.position(buffer.getInt(btIndex + mid * ENTRY_SIZE + 4));
+                return readString(in);
+            }
+        }
+        return null;
+    }
+
+    private List<Node> find(int index, String key, boolean byTier) {
+        if (key == null) {
+            return Collections.emptyList();
+        }
+        int hash = key.hashCode();
+        //first entry with the hash
+        int low = 0;
+        int high = nodeCount;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (buffer.getInt(index + mid * ENTRY_SIZE) < hash) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        List<Node> nodes = new ArrayList<Node>();
+        ByteBuffer in = buffer.duplicate();
+        for (int i = low; i < nodeCount && buffer.getInt(index + i * ENTRY_SIZE) == hash; i++) {
+            in.position(buffer.getInt(index + i * ENTRY_SIZE + 4));
+            Node node = readNode(in);
+            if (key.equals(byTier ? node.getTierName() : node.getName())) {
+                nodes.add(node);
+            }
+        }
+        return nodes;
+    }
+
+    private static Node readNode(ByteBuffer in) {
+        Node node = new Node();
+        node.setName(readString(in));
+        node.setTierName(readString(in));
+        node.setMachineName(readString(in));
+        int ipCount = in.getInt();
+        List<String> ipAddresses = new ArrayList<String>(ipCount);
+        for (int i = 0; i < ipCount; i++) {
+            ipAddresses.add(readString(in));
+        }
+        node.setIpAddresses(ipAddresses);
+        return node;
+    }
+
+    private static String readString(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    /**
+     * Serializes the topology to the snapshot format.
+     */
+    static byte[] serialize(long createdAt, List<Node> nodes, List<BusinessTransaction> bts) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bos);
+        out.write(new byte[HEADER_SIZE]);
+
+        long[] byName = new long[nodes.size()];
+        long[] byTier = new long[nodes.size()];
+        for (int i = 0; i < nodes.size(); i++) {
+            Node node = nodes.get(i);
+            int offset = out.size();
+            byName[i] = entry(hash(node.getName()), offset);
+            byTier[i] = entry(hash(node.getTierName()), offset);
+            writeString(out, node.getName());
+            writeString(out, node.getTierName());
+            writeString(out, node.getMachineName());
+            List<String> ipAddresses = node.getIpAddresses();
+            out.writeInt(ipAddresses.size());
+            for (String ipAddress : ipAddresses) {
+                writeString(out, ipAddress);
+            }
+        }
+
+        Map<String, Integer> tierOffsets = new HashMap<String, Integer>();
+        long[] btTiers = new long[0];
+        if (bts != null) {
+            btTiers = new long[bts.size()];
+            int count = 0;
+            for (BusinessTransaction bt : bts) {
+                if (bt.getTierName() == null) {
+                    continue;
+                }
+                Integer offset = tierOffsets.get(bt.getTierName());
+                if (offset == null) {
+                    offset = out.size();
+                    tierOffsets.put(bt.getTierName(), offset);
+                    writeString(out, bt.getTierName());
+                }
+                btTiers[count++] = entry(bt.getId(), offset);
+            }
+            btTiers = Arrays.copyOf(btTiers, count);
+        }
+
+        int nameIndex = writeIndex(out, byName);
+        int tierIndex = writeIndex(out, byTier);
+        int btIndex = writeIndex(out, btTiers);
+        out.flush();
+
+        ByteBuffer bytes = ByteBuffer.wrap(bos.toByteArray());
+        bytes.putInt(0, MAGIC);
+        bytes.putInt(4, VERSION);
+        bytes.putLong(8, createdAt);
+        bytes.putInt(16, nodes.size());
+        bytes.putInt(20, btTiers.length);
+        bytes.putInt(24, nameIndex);
+        bytes.putInt(28, tierIndex);
+        bytes.putInt(32, btIndex);
+        return bytes.array();
+    }
+
+    /**
+     * Writes the snapshot next to the target and moves it in place, so readers in other processes
+     * either see the previous or the new snapshot.
+     */
+    public static void write(File file, long createdAt, List<Node> nodes, List<BusinessTransaction> bts) throws IOException {
+        byte[] bytes = serialize(createdAt, nodes, bts);
+        File dir = file.getAbsoluteFile().getParentFile();
+        if (!dir.isDirectory() && !dir.mkdirs() && !dir.isDirectory()) {
+            throw new IOException("Unable to create " + dir);
+        }
+        File tmp = File.createTempFile(file.getName(), ".tmp", dir);
+        try {
+            FileOutputStream out = new FileOutputStream(tmp);
+            try {
+                out.write(bytes);
+                out.getFD().sync();
+            } finally {
+                out.close();
+            }
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            if (tmp.exists() && !tmp.delete()) {
+                tmp.deleteOnExit();
+            }
+        }
+    }
+
+    private static int writeIndex(DataOutputStream out, long[] entries) throws IOException {
+        Arrays.sort(entries);
+        int offset = out.size();
+        for (long entry : entries) {
+            out.writeLong(entry);
+        }
+        return offset;
+    }
+
+    //key in the high, offset in the low word so that sorting the longs sorts by key
+    private static long entry(int key, int offset) {
+        return ((long) key << 32) | (offset & 0xFFFFFFFFL);
+    }
+
+    private static int hash(String key) {
+        return key == null ? 0 : key.hashCode();
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+}
@@ -0,0 +1,186 @@
+package com.appdynamics.extensions.snmp.api;
+
+
+import com.appdynamics.extensions.snmp.config.ConfigLoader;
+import com.appdynamics.extensions.snmp.config.Configuration;
+import com.appdynamics.extensions.snmp.config.ControllerConfig;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.log4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Topology source of the one-shot process. Serves the {@link TopologySnapshot} of the application from the account's
+ * conf directory and rewrites it in the background once it is older than the refresh interval. Only one process
+ * refreshes a snapshot at a time, the others keep using the previous one.
+ */
+public class TopologySnapshotStore implements TopologyProvider {
+
+    private static Logger logger = Logger.getLogger(TopologySnapshotStore.class);
+
+    private static final String SNAPSHOT_SUFFIX = ".snapshot";
+    private static final String LOCK_SUFFIX = ".lock";
+    private static final long AWAIT_POLL_IN_MILLIS = 50;
+
+    private static final ExecutorService refreshExecutor = createRefreshExecutor();
+    //files being refreshed by this process
+    private static final Set<String> refreshing = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    private final IService service;
+    private final HttpClientBuilder clientBuilder;
+    private final ControllerConfig controller;
+    private final EndpointBuilder endpointBuilder = new EndpointBuilder();
+    private final File dir;
+    private final long refreshInMillis;
+    private final long ttlInMillis;
+
+    public TopologySnapshotStore(IService service, HttpClientBuilder clientBuilder, ControllerConfig controller, File dir,
+                                 long refreshInMillis, long ttlInMillis) {
+        this.service = service;
+        this.clientBuilder = clientBuilder;
+        this.controller = controller;
+        this.dir = dir;
+        this.refreshInMillis = refreshInMillis;
+        this.ttlInMillis = ttlInMillis;
+    }
+
+    /**
+     * @return the store for the account of the configuration, or null if caching is disabled
+     */
+    public static TopologySnapshotStore create(Configuration config) {
+        ControllerConfig controller = config.getController();
+        if (!config.isFetchMachineInfoFromApi() || controller == null || config.getTopologyCacheTtlInMinutes() <= 0) {
+            return null;
+        }
+        File dir = new File(ConfigLoader.getTopologySnapshotDir(config.getIsMultiTenant(), config.getAccountName()));
+        return new TopologySnapshotStore(new ServiceImpl(), new HttpClientBuilder(controller), controller, dir,
+                TimeUnit.MINUTES.toMillis(config.getTopologyRefreshInMinutes()), TimeUnit.MINUTES.toMillis(config.getTopologyCacheTtlInMinutes()));
+    }
+
+    /**
+     * Returns the snapshot unless it is missing or expired. Schedules a refresh if it is stale, the snapshot
+     * is still served until the refresh has replaced it.
+     */
+    @Override
+    public Topology getTopology(int appId) {
+        File file = getFile(appId);
+        TopologySnapshot snapshot = null;
+        try {
+            snapshot = TopologySnapshot.open(file);
+        } catch (IOException e) {
+            logger.warn("Ignoring unreadable topology snapshot " + file, e);
+        }
+        long age = snapshot == null ? Long.MAX_VALUE : System.currentTimeMillis() - snapshot.getCreatedAt();
+        if (age >= refreshInMillis) {
+            refresh(appId, file);
+        }
+        if (age >= ttlInMillis) {
+            return null;
+        }
+        return snapshot;
+    }
+
+    File getFile(int appId) {
+        return new File(dir, appId + SNAPSHOT_SUFFIX);
+    }
+
+    private void refresh(final int appId, final File file) {
+        final String key = file.getAbsolutePath();
+        if (!refreshing.add(key)) {
+            return;
+        }
+        try {
+            refreshExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        refreshIfUnlocked(appId, file);
+                    } catch (Exception e) {
+                        logger.error("Unable to refresh the topology snapshot of application " + appId, e);
+                    } finally {
+                        refreshing.remove(key);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            refreshing.remove(key);
+        }
+    }
+
+    private void refreshIfUnlocked(int appId, File file) throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs() && !dir.isDirectory()) {
+            throw new IOException("Unable to create " + dir);
+        }
+        RandomAccessFile lockFile = new RandomAccessFile(new File(dir, appId + SNAPSHOT_SUFFIX + LOCK_SUFFIX), "rw");
+        try {
+            FileLock lock;
+            try {
+                lock = lockFile.getChannel().tryLock();
+            } catch (OverlappingFileLockException e) {
+                lock = null;
+            }
+            if (lock == null) {
+                logger.debug("Topology snapshot of application " + appId + " is being refreshed by another process");
+                return;
+            }
+            try {
+                //another process may have refreshed the snapshot while this one was waiting
+                TopologySnapshot current = TopologySnapshot.open(file);
+                if (current != null && System.currentTimeMillis() - current.getCreatedAt() < refreshInMillis) {
+                    return;
+                }
+                long start = System.currentTimeMillis();
+                List<Node> nodes = service.getNodes(clientBuilder, endpointBuilder.buildNodesEndpoint(controller, appId));
+                BusinessTransactionTiers btTiers = new BusinessTransactionTiers();
+                service.getBTs(clientBuilder, endpointBuilder.buildBTsEndpoint(controller, appId), btTiers);
+                List<BusinessTransaction> bts = btTiers.getBusinessTransactions();
+                TopologySnapshot.write(file, System.currentTimeMillis(), nodes, bts);
+                logger.info("Refreshed topology snapshot of application " + appId + " with " + nodes.size() + " nodes and "
+                        + bts.size() + " business transactions in " + (System.currentTimeMillis() - start) + " ms");
+            } catch (IOException e) {
+                //e.g. on windows a snapshot mapped by another process can not be replaced, the next refresh retries
+                logger.warn("Unable to replace topology snapshot " + file, e);
+            } finally {
+                lock.release();
+            }
+        } finally {
+            lockFile.close();
+        }
+    }
+
+    /**
+     * Waits for the refreshes started by this process, so that a one-shot process leaves an up to date snapshot behind.
+     */
+    public static void awaitRefreshes(long timeoutInMillis) {
+        long deadline = System.currentTimeMillis() + timeoutInMillis;
+        while (!refreshing.isEmpty() && System.currentTimeMillis() < deadline) {
+            try {
+                Thread.sleep(AWAIT_POLL_IN_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private static ExecutorService createRefreshExecutor() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactoryBuilder().setNameFormat("topology-snapshot-%d").setDaemon(true).build());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+}
@@ -3,6 +3,7 @@ package com.appdynamics.extensions.snmp.config;
 
 import com.appdynamics.TaskInputArgs;
 import com.appdynamics.extensions.crypto.CryptoUtil;
+import com.appdynamics.extensions.snmp.metrics.PipelineMetrics;
 import com.appdynamics.extensions.yml.YmlReader;
 import com.google.common.base.Strings;
 import com.google.common.collect.Maps;
@@ -18,18 +19,21 @@ public class ConfigLoader {
     public static final String SINGLE_TENANT_CONFIG_DIR = "conf" + File.separator;
     public static final String MULTI_TENANT_CONFIG_DIR = "conf" + File.separator + "accounts" + File.separator;
     public static final String SNMP_ENGINE_PROPERTIES = "snmp_engine.properties";
+    public static final String TOPOLOGY_SNAPSHOT_DIR = "topology";
+    public static final String SPOOL_DIR = "spool";
+    public static final String METRICS_FILE = "metrics.dat";
     private static Logger logger = Logger.getLogger(ConfigLoader.class);
 
     public static Configuration getConfig(boolean isMultiTenant, String accountId){
-        String configDir = getConfigDir(isMultiTenant,accountId);
-        String trapSenderHome = getTrapSenderHome();
-        String configFile = trapSenderHome + configDir + CONFIG_FILENAME;
+        long start = System.nanoTime();
+        String configFile = getConfigFile(isMultiTenant, accountId);
         Configuration config = YmlReader.readFromFile(configFile, Configuration.class);
         config.setIsMultiTenant(isMultiTenant);
         config.setAccountName(accountId);
         if(validateEncryptionFields(config)) {
             decryptPasswords(config);
         }
+        PipelineMetrics.CONFIG_LOAD.record(start);
         return config;
     }
 
@@ -64,6 +68,10 @@ public class ConfigLoader {
         return taskArgs;
     }
 
+    public static String getConfigFile(boolean isMultiTenant, String accountId) {
+        return getTrapSenderHome() + getConfigDir(isMultiTenant, accountId) + CONFIG_FILENAME;
+    }
+
     public static String getTrapSenderHome() {
         return System.getProperty(TRAP_SENDER_HOME,"");
     }
@@ -78,6 +86,27 @@ public class ConfigLoader {
     }
 
 
+    /**
+     * Directory holding the topology snapshots of the account's applications.
+     */
+    public static String getTopologySnapshotDir(boolean isMultiTenant, String accountName) {
+        return getTrapSenderHome() + getConfigDir(isMultiTenant, accountName) + TOPOLOGY_SNAPSHOT_DIR;
+    }
+
+    /**
+     * Directory holding the journals of the account's traps that are not delivered yet.
+     */
+    public static String getSpoolDir(boolean isMultiTenant, String accountName) {
+        return getTrapSenderHome() + getConfigDir(isMultiTenant, accountName) + SPOOL_DIR;
+    }
+
+    /**
+     * Memory-mapped counters shared by the processes of all accounts.
+     */
+    public static String getMetricsFile() {
+        return getTrapSenderHome() + SINGLE_TENANT_CONFIG_DIR + METRICS_FILE;
+    }
+
     public static String getEngineConfig(boolean isMultiTenant, String accountName) {
         String configDir = ConfigLoader.getConfigDir(isMultiTenant, accountName);
         String enginePropFile = configDir + SNMP_ENGINE_PROPERTIES;
@@ -1,11 +1,26 @@
 package com.appdynamics.extensions.snmp.config;
 
 import java.util.Arrays;
+import java.util.Map;
 
 public class Configuration {
 
     public static final int DEFAULT_MIB_VERSION = 1;
     public static final int DEFAULT_SNMP_VERSION = 3;
+    public static final int DEFAULT_RECEIVER_TIMEOUT_IN_MILLIS = 5000;
+    public static final int DEFAULT_SEND_TIMEOUT_IN_MILLIS = 10000;
+    public static final int DEFAULT_TOPOLOGY_CACHE_TTL_IN_MINUTES = 15;
+    public static final int DEFAULT_TOPOLOGY_REFRESH_IN_MINUTES = 5;
+    public static final int DEFAULT_TOPOLOGY_CACHE_MAX_APPLICATIONS = 100;
+    public static final int DEFAULT_ENRICHMENT_TIMEOUT_IN_MILLIS = 5000;
+    public static final int DEFAULT_NEGATIVE_LOOKUP_CACHE_TTL_IN_SECONDS = 30;
+    public static final int DEFAULT_SPOOL_MAX_ATTEMPTS = 5;
+    public static final int DEFAULT_SPOOL_RETRY_INTERVAL_IN_SECONDS = 30;
+    public static final int DEFAULT_SPOOL_MAX_AGE_IN_MINUTES = 1440;
+    public static final int DEFAULT_RECEIVER_FAILURE_THRESHOLD = 3;
+    public static final int DEFAULT_INFORM_RETRIES = 1;
+    public static final int DEFAULT_SUPPRESSION_MAX_KEYS = 50000;
+    public static final int DEFAULT_RECEIVER_BACKOFF_IN_SECONDS = 5;
 
     private Receiver[] receivers;
     private String community;
@@ -21,6 +36,22 @@ public class Configuration {
     private boolean isMultiTenant;
     private boolean fetchMachineInfoFromApi;
     private ControllerConfig controller;
+    private int receiverTimeoutInMillis = DEFAULT_RECEIVER_TIMEOUT_IN_MILLIS;
+    private int sendTimeoutInMillis = DEFAULT_SEND_TIMEOUT_IN_MILLIS;
+    private int topologyCacheTtlInMinutes = DEFAULT_TOPOLOGY_CACHE_TTL_IN_MINUTES;
+    private int topologyRefreshInMinutes = DEFAULT_TOPOLOGY_REFRESH_IN_MINUTES;
+    private int topologyCacheMaxApplications = DEFAULT_TOPOLOGY_CACHE_MAX_APPLICATIONS;
+    private int enrichmentTimeoutInMillis = DEFAULT_ENRICHMENT_TIMEOUT_IN_MILLIS;
+    private int negativeLookupCacheTtlInSeconds = DEFAULT_NEGATIVE_LOOKUP_CACHE_TTL_IN_SECONDS;
+    private int spoolMaxAttempts = DEFAULT_SPOOL_MAX_ATTEMPTS;
+    private int spoolRetryIntervalInSeconds = DEFAULT_SPOOL_RETRY_INTERVAL_IN_SECONDS;
+    private int spoolMaxAgeInMinutes = DEFAULT_SPOOL_MAX_AGE_IN_MINUTES;
+    private int receiverFailureThreshold = DEFAULT_RECEIVER_FAILURE_THRESHOLD;
+    private boolean useInform;
+    private int informRetries = DEFAULT_INFORM_RETRIES;
+    private Map<String, Integer> suppressionWindowsInSeconds;
+    private int suppressionMaxKeys = DEFAULT_SUPPRESSION_MAX_KEYS;
+    private int receiverBackoffInSeconds = DEFAULT_RECEIVER_BACKOFF_IN_SECONDS;
 
 
     public Receiver[] getReceivers() {
@@ -133,6 +164,134 @@ public class Configuration {
         this.fetchMachineInfoFromApi = fetchMachineInfoFromApi;
     }
 
+    public int getReceiverTimeoutInMillis() {
+        return receiverTimeoutInMillis;
+    }
+
+    public void setReceiverTimeoutInMillis(int receiverTimeoutInMillis) {
+        this.receiverTimeoutInMillis = receiverTimeoutInMillis;
+    }
+
+    public int getSendTimeoutInMillis() {
+        return sendTimeoutInMillis;
+    }
+
+    public void setSendTimeoutInMillis(int sendTimeoutInMillis) {
+        this.sendTimeoutInMillis = sendTimeoutInMillis;
+    }
+
+    public int getTopologyCacheTtlInMinutes() {
+        return topologyCacheTtlInMinutes;
+    }
+
+    public void setTopologyCacheTtlInMinutes(int topologyCacheTtlInMinutes) {
+        this.topologyCacheTtlInMinutes = topologyCacheTtlInMinutes;
+    }
+
+    public int getTopologyRefreshInMinutes() {
+        return topologyRefreshInMinutes;
+    }
+
+    public void setTopologyRefreshInMinutes(int topologyRefreshInMinutes) {
+        this.topologyRefreshInMinutes = topologyRefreshInMinutes;
+    }
+
+    public int getTopologyCacheMaxApplications() {
+        return topologyCacheMaxApplications;
+    }
+
+    public void setTopologyCacheMaxApplications(int topologyCacheMaxApplications) {
+        this.topologyCacheMaxApplications = topologyCacheMaxApplications;
+    }
+
+    public int getEnrichmentTimeoutInMillis() {
+        return enrichmentTimeoutInMillis;
+    }
+
+    public void setEnrichmentTimeoutInMillis(int enrichmentTimeoutInMillis) {
+        this.enrichmentTimeoutInMillis = enrichmentTimeoutInMillis;
+    }
+
+    public int getNegativeLookupCacheTtlInSeconds() {
+        return negativeLookupCacheTtlInSeconds;
+    }
+
+    public void setNegativeLookupCacheTtlInSeconds(int negativeLookupCacheTtlInSeconds) {
+        this.negativeLookupCacheTtlInSeconds = negativeLookupCacheTtlInSeconds;
+    }
+
+    public int getSpoolMaxAttempts() {
+        return spoolMaxAttempts;
+    }
+
+    public void setSpoolMaxAttempts(int spoolMaxAttempts) {
+        this.spoolMaxAttempts = spoolMaxAttempts;
+    }
+
+    public int getSpoolRetryIntervalInSeconds() {
+        return spoolRetryIntervalInSeconds;
+    }
+
+    public void setSpoolRetryIntervalInSeconds(int spoolRetryIntervalInSeconds) {
+        this.spoolRetryIntervalInSeconds = spoolRetryIntervalInSeconds;
+    }
+
+    public int getSpoolMaxAgeInMinutes() {
+        return spoolMaxAgeInMinutes;
+    }
+
+    public void setSpoolMaxAgeInMinutes(int spoolMaxAgeInMinutes) {
+        this.spoolMaxAgeInMinutes = spoolMaxAgeInMinutes;
+    }
+
+    public boolean isUseInform() {
+        return useInform;
+    }
+
+    public void setUseInform(boolean useInform) {
+        this.useInform = useInform;
+    }
+
+    public int getInformRetries() {
+        return informRetries;
+    }
+
+    public void setInformRetries(int informRetries) {
+        this.informRetries = informRetries;
+    }
+
+    public Map<String, Integer> getSuppressionWindowsInSeconds() {
+        return suppressionWindowsInSeconds;
+    }
+
+    public void setSuppressionWindowsInSeconds(Map<String, Integer> suppressionWindowsInSeconds) {
+        this.suppressionWindowsInSeconds = suppressionWindowsInSeconds;
+    }
+
+    public int getSuppressionMaxKeys() {
+        return suppressionMaxKeys;
+    }
+
+    public void setSuppressionMaxKeys(int suppressionMaxKeys) {
+        this.suppressionMaxKeys = suppressionMaxKeys;
+    }
+
+    public int getReceiverFailureThreshold() {
+        return receiverFailureThreshold;
+    }
+
+    public void setReceiverFailureThreshold(int receiverFailureThreshold) {
+        this.receiverFailureThreshold = receiverFailureThreshold;
+    }
+
+    public int getReceiverBackoffInSeconds() {
+        return receiverBackoffInSeconds;
+    }
+
+    public void setReceiverBackoffInSeconds(int receiverBackoffInSeconds) {
+        this.receiverBackoffInSeconds = receiverBackoffInSeconds;
+    }
+
     @Override
     public String toString() {
         return "Configuration{" +
@@ -145,6 +304,22 @@ public class Configuration {
                 ", mibVersion=" + mibVersion +
                 ", snmpVersion=" + snmpVersion +
                 ", snmpV3Configuration=" + snmpV3Configuration +
+                ", receiverTimeoutInMillis=" + receiverTimeoutInMillis +
+                ", sendTimeoutInMillis=" + sendTimeoutInMillis +
+                ", topologyCacheTtlInMinutes=" + topologyCacheTtlInMinutes +
+                ", topologyRefreshInMinutes=" + topologyRefreshInMinutes +
+                ", topologyCacheMaxApplications=" + topologyCacheMaxApplications +
+                ", enrichmentTimeoutInMillis=" + enrichmentTimeoutInMillis +
+                ", negativeLookupCacheTtlInSeconds=" + negativeLookupCacheTtlInSeconds +
+                ", spoolMaxAttempts=" + spoolMaxAttempts +
+                ", spoolRetryIntervalInSeconds=" + spoolRetryIntervalInSeconds +
+                ", spoolMaxAgeInMinutes=" + spoolMaxAgeInMinutes +
+                ", useInform=" + useInform +
+                ", informRetries=" + informRetries +
+                ", suppressionWindowsInSeconds=" + suppressionWindowsInSeconds +
+                ", suppressionMaxKeys=" + suppressionMaxKeys +
+                ", receiverFailureThreshold=" + receiverFailureThreshold +
+                ", receiverBackoffInSeconds=" + receiverBackoffInSeconds +
                 ", controller=" + controller +
                 '}';
     }
@@ -11,6 +11,8 @@ public class ControllerConfig {
     private boolean useSsl;
     private int connectTimeoutInSeconds = 10;
     private int socketTimeoutInSeconds = 10;
+    private int maxConnectionsPerHost = 4;
+    private int maxTotalConnections = 20;
 
     public String getHost() {
         return host;
@@ -76,6 +78,22 @@ public class ControllerConfig {
         this.socketTimeoutInSeconds = socketTimeoutInSeconds;
     }
 
+    public int getMaxConnectionsPerHost() {
+        return maxConnectionsPerHost;
+    }
+
+    public void setMaxConnectionsPerHost(int maxConnectionsPerHost) {
+        this.maxConnectionsPerHost = maxConnectionsPerHost;
+    }
+
+    public int getMaxTotalConnections() {
+        return maxTotalConnections;
+    }
+
+    public void setMaxTotalConnections(int maxTotalConnections) {
+        this.maxTotalConnections = maxTotalConnections;
+    }
+
     @Override
     public String toString() {
         return "Controller{" +
@@ -86,6 +104,8 @@ public class ControllerConfig {
                 ", useSsl=" + useSsl +
                 ", connectTimeoutInSeconds='" + connectTimeoutInSeconds + '\'' +
                 ", socketTimeoutInSeconds='" + socketTimeoutInSeconds + '\'' +
+                ", maxConnectionsPerHost=" + maxConnectionsPerHost +
+                ", maxTotalConnections=" + maxTotalConnections +
                 '}';
     }
 }
@@ -3,8 +3,13 @@ package com.appdynamics.extensions.snmp.config;
 
 public class Receiver {
 
+    public static final int DEFAULT_QUEUE_SIZE = 1000;
+
     private String host;
     private int port;
+    private int maxTrapsPerSecond;
+    private int burst;
+    private int queueSize = DEFAULT_QUEUE_SIZE;
 
     public String getHost() {
         return host;
@@ -21,4 +26,37 @@ public class Receiver {
     public void setPort(int port) {
         this.port = port;
     }
+
+    /**
+     * @return the rate traps are paced to, 0 to send them as they come
+     */
+    public int getMaxTrapsPerSecond() {
+        return maxTrapsPerSecond;
+    }
+
+    public void setMaxTrapsPerSecond(int maxTrapsPerSecond) {
+        this.maxTrapsPerSecond = maxTrapsPerSecond;
+    }
+
+    /**
+     * @return the number of traps sent back to back before pacing starts, maxTrapsPerSecond if not set
+     */
+    public int getBurst() {
+        return burst;
+    }
+
+    public void setBurst(int burst) {
+        this.burst = burst;
+    }
+
+    /**
+     * @return the number of paced traps that may wait for the receiver, further traps are dropped
+     */
+    public int getQueueSize() {
+        return queueSize;
+    }
+
+    public void setQueueSize(int queueSize) {
+        this.queueSize = queueSize;
+    }
 }
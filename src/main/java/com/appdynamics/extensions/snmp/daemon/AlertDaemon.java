@@ -0,0 +1,413 @@
+package com.appdynamics.extensions.snmp.daemon;
+
+
+import com.appdynamics.extensions.alerts.customevents.Event;
+import com.appdynamics.extensions.alerts.customevents.EventBuilder;
+import com.appdynamics.extensions.alerts.customevents.HealthRuleViolationEvent;
+import com.appdynamics.extensions.snmp.SnmpTrapAlertExtension;
+import com.appdynamics.extensions.snmp.api.CoalescingService;
+import com.appdynamics.extensions.snmp.api.IService;
+import com.appdynamics.extensions.snmp.api.TopologyCache;
+import com.appdynamics.extensions.snmp.config.ConfigLoader;
+import com.appdynamics.extensions.snmp.config.Configuration;
+import com.appdynamics.extensions.snmp.metrics.PipelineMetrics;
+import com.google.common.base.Strings;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.log4j.Logger;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Long running trap forwarder. Listens on the loopback interface for argument vectors sent by
+ * {@link AlertForwarder} and processes them on this (warm) JVM, so that configuration, snmp4j and
+ * the controller REST client are initialized once instead of once per alert.
+ *
+ * The same class backs the short lived leader of a burst: the first one-shot invocation binds the port,
+ * absorbs the events of later invocations and exits once no event arrived for the idle window.
+ *
+ * Received events wait in a bounded {@link DispatchQueue} and are processed most urgent first, see {@link EventPriority},
+ * while the events of one incident keep their order. When the workers fall behind and the queue is full, the least
+ * urgent events are shed, except for closes and cancels.
+ */
+public class AlertDaemon {
+
+    private static Logger logger = Logger.getLogger(AlertDaemon.class);
+
+    /**
+     * Processes one received event on a worker.
+     */
+    interface Processor {
+        boolean process(Event event);
+    }
+
+    public static final int DEFAULT_PORT = 17162;
+    public static final int DEFAULT_WORKERS = 1;
+    public static final int DEFAULT_QUEUE_SIZE = 1000;
+
+    private static final int BACKLOG = 256;
+    private static final int HANDOFF_THREADS = 4;
+    private static final int READ_TIMEOUT_IN_MILLIS = 2000;
+    private static final long SHUTDOWN_TIMEOUT_IN_SECONDS = 30;
+
+    private final ServerSocket serverSocket;
+    private final ExecutorService workers;
+    //reads the handed off events, so that a slow client does not hold up accepting the others
+    private final ExecutorService handoffs;
+    private final DispatchQueue<ProcessTask> dispatchQueue;
+    //not known to be thread safe, events are built under its lock
+    private final EventBuilder eventBuilder = new EventBuilder();
+    private final boolean isMultiTenant;
+    private final ConcurrentMap<String, CachedExtension> extensions = new ConcurrentHashMap<String, CachedExtension>();
+    private final Processor processor;
+    //whether the events are processed by the extensions, which are then shut down along with the daemon
+    private final boolean processesExtensions;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private volatile boolean running = true;
+
+    //every execution takes the most urgent queued events, so the executor's own queue only counts the queued events.
+    //An event whose incident is being processed is skipped and taken by the worker processing the incident
+    private final Runnable dispatcher = new Runnable() {
+        @Override
+        public void run() {
+            ProcessTask task;
+            while ((task = dispatchQueue.poll()) != null) {
+                task.run();
+            }
+        }
+    };
+
+    private AlertDaemon(ServerSocket serverSocket, int workerCount, int queueSize, boolean isMultiTenant, Processor processor) {
+        this.serverSocket = serverSocket;
+        this.isMultiTenant = isMultiTenant;
+        this.processesExtensions = processor == null;
+        this.processor = processor != null ? processor : new Processor() {
+            @Override
+            public boolean process(Event event) {
+                return getExtension(event.getAccountId()).process(event);
+            }
+        };
+        this.dispatchQueue = new DispatchQueue<ProcessTask>(queueSize);
+        this.workers = Executors.newFixedThreadPool(workerCount,
+                new ThreadFactoryBuilder().setNameFormat("snmp-trap-worker-%d").build());
+        this.handoffs = Executors.newFixedThreadPool(HANDOFF_THREADS,
+                new ThreadFactoryBuilder().setNameFormat("snmp-trap-handoff-%d").setDaemon(true).build());
+    }
+
+    /**
+     * Binds the loopback port. Fails with an IOException if another daemon already owns the port.
+     */
+    public static AlertDaemon bind(int port, int workerCount, boolean isMultiTenant) throws IOException {
+        return bind(port, workerCount, DEFAULT_QUEUE_SIZE, isMultiTenant);
+    }
+
+    /**
+     * @param queueSize number of events that can wait for a worker before the least urgent ones are shed
+     */
+    public static AlertDaemon bind(int port, int workerCount, int queueSize, boolean isMultiTenant) throws IOException {
+        return bind(port, workerCount, queueSize, isMultiTenant, null);
+    }
+
+    /**
+     * @param processor processes the received events instead of the extension of their account
+     */
+    static AlertDaemon bind(int port, int workerCount, int queueSize, Processor processor) throws IOException {
+        return bind(port, workerCount, queueSize, false, processor);
+    }
+
+    private static AlertDaemon bind(int port, int workerCount, int queueSize, boolean isMultiTenant, Processor processor) throws IOException {
+        ServerSocket serverSocket = new ServerSocket();
+        try {
+            serverSocket.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), BACKLOG);
+        } catch (IOException e) {
+            serverSocket.close();
+            throw e;
+        }
+        logger.info("SNMP trap daemon listening on " + serverSocket.getLocalSocketAddress());
+        return new AlertDaemon(serverSocket, Math.max(1, workerCount), queueSize, isMultiTenant, processor);
+    }
+
+    /**
+     * Accepts and processes events until {@link #stop()} is called.
+     */
+    public void serve() {
+        serve(0);
+    }
+
+    /**
+     * Accepts and processes events until {@link #stop()} is called or, if idleTimeoutInMillis is positive,
+     * until no event was received for that long and all received events have been processed.
+     */
+    public void serve(int idleTimeoutInMillis) {
+        try {
+            serverSocket.setSoTimeout(Math.max(0, idleTimeoutInMillis));
+        } catch (SocketException e) {
+            logger.error("Unable to set the idle timeout", e);
+        }
+        while (running) {
+            Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (SocketTimeoutException e) {
+                if (inFlight.get() == 0) {
+                    logger.info("No event received for " + idleTimeoutInMillis + " ms, leaving the daemon.");
+                    break;
+                }
+                continue;
+            } catch (SocketException e) {
+                if (running) {
+                    logger.error("Daemon socket closed unexpectedly", e);
+                }
+                break;
+            } catch (IOException e) {
+                logger.error("Error accepting connection", e);
+                continue;
+            }
+            dispatch(socket);
+        }
+    }
+
+    //a connection counts as in flight while it is read, so that the idle window does not end before its event is queued
+    private void dispatch(final Socket socket) {
+        inFlight.incrementAndGet();
+        try {
+            handoffs.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        handle(socket);
+                    } finally {
+                        inFlight.decrementAndGet();
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            inFlight.decrementAndGet();
+            closeQuietly(socket);
+        }
+    }
+
+    /**
+     * Submits a locally received event, bypassing the socket.
+     *
+     * @return false if the arguments are not a valid event or the daemon is shutting down, the invocation then has to
+     * process or report the event itself. Events shed during a backlog count as accepted, handing them to another JVM
+     * would only add to the load
+     */
+    public boolean submit(String[] args) {
+        logger.debug("Args passed => " + Arrays.asList(args));
+        Event event;
+        try {
+            long start = System.nanoTime();
+            synchronized (eventBuilder) {
+                event = eventBuilder.build(args);
+            }
+            PipelineMetrics.EVENT_BUILD.record(start);
+        } catch (Exception e) {
+            logger.error("Unable to build an event from " + Arrays.asList(args) + ", rejecting it", e);
+            return false;
+        }
+        if (event == null) {
+            logger.error("Arguments " + Arrays.asList(args) + " are not an event, rejecting them");
+            return false;
+        }
+        EventPriority priority = EventPriority.of(event);
+        ProcessTask task = new ProcessTask(event, priority);
+        inFlight.incrementAndGet();
+        ProcessTask shed = dispatchQueue.offer(task, task.incident, priority, EventPriority.clears(event));
+        if (shed != null) {
+            inFlight.decrementAndGet();
+            logger.warn(dispatchQueue.getCapacity() + " events are waiting, shed " + shed.priority + " event "
+                    + shed.describe() + " (" + dispatchQueue.getShed(shed.priority) + " " + shed.priority + " events shed so far)");
+            //the number of queued events did not grow, the executions already submitted cover them
+            return true;
+        }
+        try {
+            workers.execute(dispatcher);
+            return true;
+        } catch (RejectedExecutionException e) {
+            if (!dispatchQueue.remove(task)) {
+                //taken by a worker that is still draining the queue
+                return true;
+            }
+            inFlight.decrementAndGet();
+            logger.error("Daemon is shutting down, rejected event " + Arrays.asList(args));
+            return false;
+        }
+    }
+
+    /**
+     * @return the number of events of the priority shed so far
+     */
+    long getShed(EventPriority priority) {
+        return dispatchQueue.getShed(priority);
+    }
+
+    private void handle(Socket socket) {
+        try {
+            socket.setSoTimeout(READ_TIMEOUT_IN_MILLIS);
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            String[] args = AlertProtocol.readArgs(in);
+            boolean accepted = submit(args);
+            DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+            out.writeByte(accepted ? AlertProtocol.ACK : AlertProtocol.REJECT);
+            out.flush();
+        } catch (IOException e) {
+            logger.error("Unable to read event from " + socket.getRemoteSocketAddress(), e);
+        } finally {
+            closeQuietly(socket);
+        }
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            logger.debug("Error closing client socket", e);
+        }
+    }
+
+    /**
+     * Stops accepting new events and waits for the queued ones to be processed.
+     */
+    public void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            logger.debug("Error closing daemon socket", e);
+        }
+        //the events still being read are queued before the workers stop taking new ones
+        handoffs.shutdown();
+        try {
+            if (!handoffs.awaitTermination(READ_TIMEOUT_IN_MILLIS * 2, TimeUnit.MILLISECONDS)) {
+                logger.warn("Timed out reading handed off events");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        workers.shutdown();
+        try {
+            if (!workers.awaitTermination(SHUTDOWN_TIMEOUT_IN_SECONDS, TimeUnit.SECONDS)) {
+                logger.warn("Timed out waiting for queued events to be processed");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (processesExtensions) {
+            SnmpTrapAlertExtension.shutdown();
+        }
+        if (dispatchQueue.getShed() > 0) {
+            StringBuilder shed = new StringBuilder();
+            for (EventPriority priority : EventPriority.values()) {
+                shed.append(' ').append(priority).append('=').append(dispatchQueue.getShed(priority));
+            }
+            logger.warn("Events shed during backlogs:" + shed);
+        }
+        logger.info("SNMP trap daemon stopped");
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Returns the extension for the account, reloading it when the account's config.yaml has changed.
+     */
+    private SnmpTrapAlertExtension getExtension(String accountId) {
+        String key = isMultiTenant ? Strings.nullToEmpty(accountId) : "";
+        long lastModified = new File(ConfigLoader.getConfigFile(isMultiTenant, accountId)).lastModified();
+        CachedExtension cached = extensions.get(key);
+        if (cached == null || cached.lastModified != lastModified) {
+            synchronized (extensions) {
+                cached = extensions.get(key);
+                if (cached == null || cached.lastModified != lastModified) {
+                    Configuration config = ConfigLoader.getConfig(isMultiTenant, accountId);
+                    logger.info("Configuration Loaded for account [" + key + "]");
+                    if (cached != null) {
+                        //closed first, so that the spool of the new extension adopts the traps the old one did not deliver
+                        cached.extension.close();
+                    }
+                    //one controller client per account, so that concurrent events share their lookups
+                    IService service = CoalescingService.create(config);
+                    cached = new CachedExtension(new SnmpTrapAlertExtension(config, TopologyCache.create(config, service), service),
+                            lastModified);
+                    extensions.put(key, cached);
+                }
+            }
+        }
+        return cached.extension;
+    }
+
+    private class ProcessTask implements Runnable {
+
+        private final Event event;
+        private final EventPriority priority;
+        private final Object incident;
+
+        ProcessTask(Event event, EventPriority priority) {
+            this.event = event;
+            this.priority = priority;
+            this.incident = incidentOf(event);
+        }
+
+        String describe() {
+            return "[" + event.getAppName() + ", " + event.getSeverity() + "]";
+        }
+
+        @Override
+        public void run() {
+            try {
+                boolean status = processor.process(event);
+                if (!status) {
+                    logger.error("Event processed with errors");
+                }
+            } catch (Exception e) {
+                logger.error("Error processing event", e);
+            } finally {
+                dispatchQueue.done(incident);
+                inFlight.decrementAndGet();
+            }
+        }
+    }
+
+    //other events do not raise alarms that later events change
+    private static Object incidentOf(Event event) {
+        if (!(event instanceof HealthRuleViolationEvent)) {
+            return null;
+        }
+        HealthRuleViolationEvent violation = (HealthRuleViolationEvent) event;
+        return Arrays.asList(violation.getAccountId(), violation.getAppName(), violation.getHealthRuleName(),
+                violation.getIncidentID());
+    }
+
+    private static class CachedExtension {
+
+        private final SnmpTrapAlertExtension extension;
+        private final long lastModified;
+
+        CachedExtension(SnmpTrapAlertExtension extension, long lastModified) {
+            this.extension = extension;
+            this.lastModified = lastModified;
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.appdynamics.extensions.snmp.daemon;
+
+
+import org.apache.log4j.Logger;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+
+/**
+ * Client side of the loopback handoff. Sends the custom action arguments to a running daemon
+ * so that the event is processed on a warm JVM.
+ */
+public class AlertForwarder {
+
+    private static Logger logger = Logger.getLogger(AlertForwarder.class);
+
+    public static final int DEFAULT_CONNECT_TIMEOUT_IN_MILLIS = 200;
+    public static final int DEFAULT_ACK_TIMEOUT_IN_MILLIS = 5000;
+
+    private final int port;
+    private final int connectTimeout;
+    private final int ackTimeout;
+
+    public AlertForwarder(int port) {
+        this(port, DEFAULT_CONNECT_TIMEOUT_IN_MILLIS, DEFAULT_ACK_TIMEOUT_IN_MILLIS);
+    }
+
+    public AlertForwarder(int port, int connectTimeout, int ackTimeout) {
+        this.port = port;
+        this.connectTimeout = connectTimeout;
+        this.ackTimeout = ackTimeout;
+    }
+
+    /**
+     * @return true if the daemon acknowledged the event, false if no daemon is listening or it rejected the event.
+     */
+    public boolean forward(String[] args) {
+        Socket socket = new Socket();
+        try {
+            socket.setTcpNoDelay(true);
+            socket.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), connectTimeout);
+            socket.setSoTimeout(ackTimeout);
+            DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+            AlertProtocol.writeArgs(out, args);
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            return in.readByte() == AlertProtocol.ACK;
+        } catch (IOException e) {
+            logger.debug("No daemon accepted the event on port " + port + " : " + e);
+            return false;
+        } finally {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                logger.debug("Error closing handoff socket", e);
+            }
+        }
+    }
+
+    public int getPort() {
+        return port;
+    }
+}
@@ -0,0 +1,96 @@
+package com.appdynamics.extensions.snmp.daemon;
+
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+/**
+ * Wire format used to hand the custom action argument vector over to a running daemon.
+ *
+ * A request is the number of arguments followed by each argument as a length prefixed UTF-8 string.
+ * The daemon answers with a single status byte once the event has been queued.
+ *
+ * snmp-trap-alert.sh hands events off without starting a JVM and cannot easily write binary lengths, so the daemon
+ * also reads a text request: "ARGV", the number of arguments in decimal and each argument, all terminated by a NUL byte.
+ */
+public class AlertProtocol {
+
+    public static final int MAGIC = 0x534E4D50; //"SNMP"
+    public static final int TEXT_MAGIC = 0x41524756; //"ARGV"
+    public static final byte ACK = 1;
+    public static final byte REJECT = 0;
+
+    static final int MAX_ARGS = 4096;
+    static final int MAX_ARG_LENGTH = 1024 * 1024;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    public static void writeArgs(DataOutputStream out, String[] args) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(args.length);
+        for (String arg : args) {
+            byte[] bytes = (arg == null ? "" : arg).getBytes(UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+        out.flush();
+    }
+
+    public static String[] readArgs(DataInputStream in) throws IOException {
+        int magic = in.readInt();
+        if (magic == TEXT_MAGIC) {
+            return readTextArgs(in);
+        }
+        if (magic != MAGIC) {
+            throw new IOException("Unexpected request header");
+        }
+        int argc = checkArgCount(in.readInt());
+        String[] args = new String[argc];
+        for (int i = 0; i < argc; i++) {
+            int length = in.readInt();
+            if (length < 0 || length > MAX_ARG_LENGTH) {
+                throw new IOException("Invalid argument length " + length);
+            }
+            byte[] bytes = new byte[length];
+            in.readFully(bytes);
+            args[i] = new String(bytes, UTF_8);
+        }
+        return args;
+    }
+
+    private static String[] readTextArgs(DataInputStream in) throws IOException {
+        int argc;
+        try {
+            argc = checkArgCount(Integer.parseInt(readTerminated(in)));
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid argument count", e);
+        }
+        String[] args = new String[argc];
+        for (int i = 0; i < argc; i++) {
+            args[i] = readTerminated(in);
+        }
+        return args;
+    }
+
+    private static String readTerminated(DataInputStream in) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte b;
+        while ((b = in.readByte()) != 0) {
+            if (bytes.size() == MAX_ARG_LENGTH) {
+                throw new IOException("Argument longer than " + MAX_ARG_LENGTH + " bytes");
+            }
+            bytes.write(b);
+        }
+        return new String(bytes.toByteArray(), UTF_8);
+    }
+
+    private static int checkArgCount(int argc) throws IOException {
+        if (argc < 0 || argc > MAX_ARGS) {
+            throw new IOException("Invalid argument count " + argc);
+        }
+        return argc;
+    }
+}
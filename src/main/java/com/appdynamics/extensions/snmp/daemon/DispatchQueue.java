@@ -0,0 +1,199 @@
+package com.appdynamics.extensions.snmp.daemon;
+
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded queue with one FIFO level per {@link EventPriority}. Items are taken from the most urgent non-empty level.
+ *
+ * Items of the same incident keep their order: an item is queued at the most urgent level of any queued item of its
+ * incident, raising the queued ones along with it, and an incident is not handed out again until the item taken
+ * before is {@link #done(Object) done}.
+ *
+ * Once the queue is full, an item evicts the oldest item of the least urgent level below its own, or is shed itself
+ * if nothing less urgent is queued, so a flood of informational events can not hold up critical ones. Items that
+ * clear an incident are never evicted or shed, they are queued beyond the capacity if nothing less urgent can make
+ * room, so that an alarm raised by a delivered item is not left open.
+ */
+class DispatchQueue<T> {
+
+    private final int capacity;
+    private final Deque<Entry<T>>[] levels;
+    private final AtomicLong[] shed;
+    //queued entries by incident, in the order they were offered
+    private final Map<Object, Deque<Entry<T>>> incidents = new HashMap<Object, Deque<Entry<T>>>();
+    //incidents whose item was taken and is not done yet
+    private final Set<Object> taken = new HashSet<Object>();
+    private int size;
+
+    @SuppressWarnings("unchecked")
+    DispatchQueue(int capacity) {
+        this.capacity = Math.max(1, capacity);
+        EventPriority[] priorities = EventPriority.values();
+        this.levels = new Deque[priorities.length];
+        this.shed = new AtomicLong[priorities.length];
+        for (int i = 0; i < priorities.length; i++) {
+            levels[i] = new ArrayDeque<Entry<T>>();
+            shed[i] = new AtomicLong();
+        }
+    }
+
+    /**
+     * @param incident the incident the item belongs to, null if it does not have to be ordered with other items
+     * @param clears   whether the item clears the alarm of its incident
+     * @return the item shed to stay within the capacity, the given item itself if it was not queued, null if nothing was shed
+     */
+    synchronized T offer(T item, Object incident, EventPriority priority, boolean clears) {
+        Entry<T> entry = new Entry<T>(item, incident, priority, clears);
+        int level = priority.ordinal();
+        if (incident != null && incidents.containsKey(incident)) {
+            level = Math.min(level, incidents.get(incident).peekFirst().level);
+        }
+        Entry<T> evicted = null;
+        if (size >= capacity) {
+            evicted = evict(level);
+            if (evicted == null && !clears) {
+                shed[priority.ordinal()].incrementAndGet();
+                return item;
+            }
+        }
+        Deque<Entry<T>> queued = incident != null ? incidents.get(incident) : null;
+        if (queued == null && incident != null) {
+            queued = new ArrayDeque<Entry<T>>();
+            incidents.put(incident, queued);
+        } else if (queued != null && queued.peekFirst().level > level) {
+            //raised in the order they were offered, ahead of the new item
+            for (Entry<T> earlier : queued) {
+                levels[earlier.level].remove(earlier);
+                earlier.level = level;
+                levels[level].addLast(earlier);
+            }
+        }
+        entry.level = level;
+        levels[level].addLast(entry);
+        if (queued != null) {
+            queued.addLast(entry);
+        }
+        size++;
+        return evicted != null ? evicted.item : null;
+    }
+
+    //the oldest item of the least urgent level below the given one that does not clear an incident
+    private Entry<T> evict(int level) {
+        for (int i = levels.length - 1; i > level; i--) {
+            for (Iterator<Entry<T>> it = levels[i].iterator(); it.hasNext(); ) {
+                Entry<T> entry = it.next();
+                if (!entry.clears) {
+                    it.remove();
+                    unlink(entry);
+                    shed[entry.priority.ordinal()].incrementAndGet();
+                    return entry;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the oldest item of the most urgent level whose incident is not taken, null if there is none. The
+     * incident of the item is taken until {@link #done(Object)} is called
+     */
+    synchronized T poll() {
+        for (Deque<Entry<T>> level : levels) {
+            for (Iterator<Entry<T>> it = level.iterator(); it.hasNext(); ) {
+                Entry<T> entry = it.next();
+                if (entry.incident != null && taken.contains(entry.incident)) {
+                    continue;
+                }
+                it.remove();
+                unlink(entry);
+                if (entry.incident != null) {
+                    taken.add(entry.incident);
+                }
+                return entry.item;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Releases the incident of an item taken by {@link #poll()}.
+     */
+    synchronized void done(Object incident) {
+        if (incident != null) {
+            taken.remove(incident);
+        }
+    }
+
+    synchronized boolean remove(T item) {
+        for (Deque<Entry<T>> level : levels) {
+            for (Iterator<Entry<T>> it = level.iterator(); it.hasNext(); ) {
+                Entry<T> entry = it.next();
+                if (entry.item == item) {
+                    it.remove();
+                    unlink(entry);
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private void unlink(Entry<T> entry) {
+        size--;
+        if (entry.incident != null) {
+            Deque<Entry<T>> queued = incidents.get(entry.incident);
+            queued.remove(entry);
+            if (queued.isEmpty()) {
+                incidents.remove(entry.incident);
+            }
+        }
+    }
+
+    synchronized int size() {
+        return size;
+    }
+
+    int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return the number of items of the priority that were shed so far
+     */
+    long getShed(EventPriority priority) {
+        return shed[priority.ordinal()].get();
+    }
+
+    long getShed() {
+        long total = 0;
+        for (AtomicLong count : shed) {
+            total += count.get();
+        }
+        return total;
+    }
+
+    private static class Entry<T> {
+
+        private final T item;
+        private final Object incident;
+        private final EventPriority priority;
+        private final boolean clears;
+        //the level the entry is queued at, more urgent than its priority if an item of its incident is
+        private int level;
+
+        Entry(T item, Object incident, EventPriority priority, boolean clears) {
+            this.item = item;
+            this.incident = incident;
+            this.priority = priority;
+            this.clears = clears;
+        }
+    }
+}
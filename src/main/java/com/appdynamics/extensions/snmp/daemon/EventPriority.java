@@ -0,0 +1,78 @@
+package com.appdynamics.extensions.snmp.daemon;
+
+
+import com.appdynamics.extensions.alerts.customevents.Event;
+import com.appdynamics.extensions.alerts.customevents.HealthRuleViolationEvent;
+import com.appdynamics.extensions.snmp.EventTypeEnum;
+
+/**
+ * Order in which queued events are processed by the daemon, most urgent first. Health rule violations are ranked by
+ * their event type, other events (e.g. application changes or errors) by their severity. The events of one incident
+ * are still processed in the order they were received, see {@link DispatchQueue}.
+ */
+enum EventPriority {
+
+    CRITICAL,
+    HIGH,
+    NORMAL,
+    LOW;
+
+    static EventPriority of(Event event) {
+        if (event instanceof HealthRuleViolationEvent) {
+            return of(EventTypeEnum.fromName(((HealthRuleViolationEvent) event).getEventType()));
+        }
+        String severity = event.getSeverity();
+        if ("ERROR".equalsIgnoreCase(severity)) {
+            return HIGH;
+        }
+        if ("WARN".equalsIgnoreCase(severity)) {
+            return NORMAL;
+        }
+        return LOW;
+    }
+
+    /**
+     * @return whether the event clears the alarm of its incident on the receivers
+     */
+    static boolean clears(Event event) {
+        if (!(event instanceof HealthRuleViolationEvent)) {
+            return false;
+        }
+        EventTypeEnum eventType = EventTypeEnum.fromName(((HealthRuleViolationEvent) event).getEventType());
+        if (eventType == null) {
+            return false;
+        }
+        switch (eventType) {
+            case POLICY_CLOSE_WARNING:
+            case POLICY_CLOSE_CRITICAL:
+            case POLICY_CLOSE:
+            case POLICY_CANCELED_WARNING:
+            case POLICY_CANCELED_CRITICAL:
+            case POLICY_CANCELED:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static EventPriority of(EventTypeEnum eventType) {
+        if (eventType == null) {
+            return NORMAL;
+        }
+        switch (eventType) {
+            case POLICY_OPEN_CRITICAL:
+            case POLICY_UPGRADED:
+                return CRITICAL;
+            case POLICY_OPEN_WARNING:
+            case POLICY_DOWNGRADED:
+            case POLICY_CONTINUES_CRITICAL:
+                return HIGH;
+            case POLICY_CONTINUES_WARNING:
+            case NON_POLICY_EVENT:
+                return LOW;
+            default:
+                //closes and cancels clear alarms on the receivers
+                return NORMAL;
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.appdynamics.extensions.snmp.metrics;
+
+
+import org.apache.log4j.Logger;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.nio.Buffer;
+
+/**
+ * Atomic access to the longs of mapped memory, which Java 7 only offers through sun.misc.Unsafe. Unsafe is looked up
+ * reflectively and called through method handles, so the rest of the code neither depends on it at compile time nor
+ * fails to load on a JVM without it, see {@link #isAvailable()}.
+ */
+final class MappedMemory {
+
+    private static Logger logger = Logger.getLogger(MappedMemory.class);
+
+    private static final MethodHandle getLongVolatile;
+    private static final MethodHandle putLongVolatile;
+    private static final MethodHandle compareAndSwapLong;
+    private static final MethodHandle getObjectLong;
+    private static final MethodHandle objectFieldOffset;
+
+    static {
+        MethodHandle[] handles = new MethodHandle[5];
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            Object unsafe = field.get(null);
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            handles[0] = lookup.findVirtual(unsafeClass, "getLongVolatile",
+                    MethodType.methodType(long.class, Object.class, long.class)).bindTo(unsafe);
+            handles[1] = lookup.findVirtual(unsafeClass, "putLongVolatile",
+                    MethodType.methodType(void.class, Object.class, long.class, long.class)).bindTo(unsafe);
+            handles[2] = lookup.findVirtual(unsafeClass, "compareAndSwapLong",
+                    MethodType.methodType(boolean.class, Object.class, long.class, long.class, long.class)).bindTo(unsafe);
+            handles[3] = lookup.findVirtual(unsafeClass, "getLong",
+                    MethodType.methodType(long.class, Object.class, long.class)).bindTo(unsafe);
+            handles[4] = lookup.findVirtual(unsafeClass, "objectFieldOffset",
+                    MethodType.methodType(long.class, Field.class)).bindTo(unsafe);
+        } catch (Exception e) {
+            logger.debug("sun.misc.Unsafe is not available, metrics are not shared", e);
+            handles = new MethodHandle[5];
+        }
+        getLongVolatile = handles[0];
+        putLongVolatile = handles[1];
+        compareAndSwapLong = handles[2];
+        getObjectLong = handles[3];
+        objectFieldOffset = handles[4];
+    }
+
+    private MappedMemory() {
+    }
+
+    static boolean isAvailable() {
+        return objectFieldOffset != null;
+    }
+
+    /**
+     * @return the address of the first byte of the direct buffer
+     */
+    static long addressOf(Buffer buffer) throws IOException {
+        try {
+            long offset = (long) objectFieldOffset.invokeExact(Buffer.class.getDeclaredField("address"));
+            return (long) getObjectLong.invokeExact((Object) buffer, offset);
+        } catch (NoSuchFieldException e) {
+            throw new IOException("Unable to locate the mapped memory", e);
+        } catch (Throwable t) {
+            throw new IOException("Unable to locate the mapped memory", t);
+        }
+    }
+
+    static long getLongVolatile(long address) {
+        try {
+            return (long) getLongVolatile.invokeExact((Object) null, address);
+        } catch (Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    static void putLongVolatile(long address, long value) {
+        try {
+            putLongVolatile.invokeExact((Object) null, address, value);
+        } catch (Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    static boolean compareAndSwapLong(long address, long expected, long value) {
+        try {
+            return (boolean) compareAndSwapLong.invokeExact((Object) null, address, expected, value);
+        } catch (Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    //the Unsafe methods used do not throw checked exceptions
+    private static RuntimeException propagate(Throwable t) {
+        if (t instanceof Error) {
+            throw (Error) t;
+        }
+        if (t instanceof RuntimeException) {
+            return (RuntimeException) t;
+        }
+        return new IllegalStateException(t);
+    }
+}
@@ -0,0 +1,114 @@
+package com.appdynamics.extensions.snmp.metrics;
+
+
+import org.apache.log4j.Logger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Latency histograms of the stages an alert passes: loading the configuration, parsing the event, enriching it
+ * with each controller call, building the PDU and sending it to each receiver. Every stage is registered as an
+ * MBean under {@value #DOMAIN}:type=PipelineStage, and a summary line is logged once the process stops sending.
+ *
+ * Stages are timed with {@link System#nanoTime()}:
+ * <pre>
+ *     long start = System.nanoTime();
+ *     ...
+ *     PipelineMetrics.CONFIG_LOAD.record(start);
+ * </pre>
+ */
+public class PipelineMetrics {
+
+    private static Logger logger = Logger.getLogger(PipelineMetrics.class);
+
+    static final String DOMAIN = "com.appdynamics.extensions.snmp";
+
+    private static final ConcurrentMap<String, PipelineStage> stages = new ConcurrentHashMap<String, PipelineStage>();
+
+    public static final PipelineStage CONFIG_LOAD = stage("config.load");
+    public static final PipelineStage EVENT_BUILD = stage("event.build");
+    public static final PipelineStage ENRICH_HEALTH_RULE_VIOLATION = stage("enrich.healthRuleViolation");
+    public static final PipelineStage ENRICH_OTHER_EVENT = stage("enrich.otherEvent");
+    public static final PipelineStage REST_APPLICATION_NODES = stage("rest.applicationNodes");
+    public static final PipelineStage REST_NODE = stage("rest.node");
+    public static final PipelineStage REST_TIER_NODES = stage("rest.tierNodes");
+    public static final PipelineStage REST_BUSINESS_TRANSACTIONS = stage("rest.businessTransactions");
+    public static final PipelineStage PDU_BUILD = stage("pdu.build");
+
+    private PipelineMetrics() {
+    }
+
+    /**
+     * @return the sends to the receiver, host:port
+     */
+    public static PipelineStage send(String receiver) {
+        return stage("send." + receiver);
+    }
+
+    /**
+     * @return the stage of the name, registered with the platform MBean server when it is first used
+     */
+    public static PipelineStage stage(String name) {
+        PipelineStage stage = stages.get(name);
+        if (stage == null) {
+            PipelineStage created = new PipelineStage(name);
+            stage = stages.putIfAbsent(name, created);
+            if (stage == null) {
+                stage = created;
+                register(created);
+            }
+        }
+        return stage;
+    }
+
+    private static void register(PipelineStage stage) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            server.registerMBean(stage, new ObjectName(DOMAIN + ":type=PipelineStage,name=" + ObjectName.quote(stage.getName())));
+        } catch (JMException e) {
+            logger.debug("Unable to register the MBean of stage " + stage.getName(), e);
+        } catch (SecurityException e) {
+            logger.debug("Not allowed to register the MBean of stage " + stage.getName(), e);
+        }
+    }
+
+    /**
+     * @return count, failures and p50/p99/p999/max in milliseconds of every stage that recorded anything
+     */
+    public static String summary() {
+        StringBuilder summary = new StringBuilder("Pipeline latencies in ms (p50/p99/p999/max):");
+        for (Map.Entry<String, PipelineStage> entry : new TreeMap<String, PipelineStage>(stages).entrySet()) {
+            PipelineStage stage = entry.getValue();
+            if (stage.getCount() == 0) {
+                continue;
+            }
+            summary.append(' ').append(entry.getKey())
+                    .append(" n=").append(stage.getCount());
+            if (stage.getFailures() > 0) {
+                summary.append(" failed=").append(stage.getFailures());
+            }
+            summary.append(' ').append(millis(stage.getP50Micros()))
+                    .append('/').append(millis(stage.getP99Micros()))
+                    .append('/').append(millis(stage.getP999Micros()))
+                    .append('/').append(millis(stage.getMaxMicros()))
+                    .append(';');
+        }
+        return summary.toString();
+    }
+
+    public static void logSummary() {
+        logger.info(summary());
+    }
+
+    private static String millis(double micros) {
+        return String.format(Locale.ROOT, "%.3f", micros / 1000);
+    }
+}
@@ -0,0 +1,100 @@
+package com.appdynamics.extensions.snmp.metrics;
+
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * One stage of the alert pipeline, e.g. loading the configuration or sending to one receiver. Once the process
+ * opened the {@link SharedMetrics}, the stage also adds to its totals over all processes.
+ */
+public class PipelineStage implements PipelineStageMBean {
+
+    private static final double NANOS_PER_MICRO = TimeUnit.MICROSECONDS.toNanos(1);
+    private static final int UNRESOLVED = -2;
+
+    private final String name;
+    private final LatencyHistogram histogram = new LatencyHistogram();
+    private final AtomicLong failures = new AtomicLong();
+    //slot in the shared metrics, resolved with the first record after they were opened
+    private volatile int sharedSlot = UNRESOLVED;
+
+    PipelineStage(String name) {
+        this.name = name;
+    }
+
+    /**
+     * @param startNanos {@link System#nanoTime()} when the stage started
+     */
+    public void record(long startNanos) {
+        record(System.nanoTime() - startNanos, false);
+    }
+
+    /**
+     * Records a stage that did not complete, its latency counts like any other.
+     */
+    public void recordFailure(long startNanos) {
+        failures.incrementAndGet();
+        record(System.nanoTime() - startNanos, true);
+    }
+
+    private void record(long nanos, boolean failed) {
+        histogram.record(nanos);
+        SharedMetrics shared = SharedMetrics.current();
+        if (shared == null) {
+            return;
+        }
+        int slot = sharedSlot;
+        if (slot == UNRESOLVED) {
+            sharedSlot = slot = shared.slotOf(name);
+        }
+        if (slot >= 0) {
+            shared.record(slot, nanos, failed);
+        }
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public long getCount() {
+        return histogram.getCount();
+    }
+
+    @Override
+    public long getFailures() {
+        return failures.get();
+    }
+
+    @Override
+    public double getMeanMicros() {
+        long count = histogram.getCount();
+        return count == 0 ? 0 : histogram.getTotalNanos() / NANOS_PER_MICRO / count;
+    }
+
+    @Override
+    public double getP50Micros() {
+        return histogram.getValueAtPercentile(50) / NANOS_PER_MICRO;
+    }
+
+    @Override
+    public double getP99Micros() {
+        return histogram.getValueAtPercentile(99) / NANOS_PER_MICRO;
+    }
+
+    @Override
+    public double getP999Micros() {
+        return histogram.getValueAtPercentile(99.9) / NANOS_PER_MICRO;
+    }
+
+    @Override
+    public double getMaxMicros() {
+        return histogram.getMaxNanos() / NANOS_PER_MICRO;
+    }
+
+    LatencyHistogram getHistogram() {
+        return histogram;
+    }
+}
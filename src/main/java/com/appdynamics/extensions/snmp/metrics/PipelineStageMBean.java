@@ -0,0 +1,24 @@
+package com.appdynamics.extensions.snmp.metrics;
+
+
+/**
+ * Latencies of one stage of the alert pipeline, in microseconds.
+ */
+public interface PipelineStageMBean {
+
+    String getName();
+
+    long getCount();
+
+    long getFailures();
+
+    double getMeanMicros();
+
+    double getP50Micros();
+
+    double getP99Micros();
+
+    double getP999Micros();
+
+    double getMaxMicros();
+}
@@ -0,0 +1,291 @@
+package com.appdynamics.extensions.snmp.metrics;
+
+
+import org.apache.log4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Counters shared by all processes of the extension through a memory-mapped file, so the numbers of one-shot
+ * invocations survive their JVM. Every process adds to the same longs with compare-and-swap, there is no lock
+ * and no collector process. Read them with {@link SharedMetricsReader}.
+ *
+ * Layout (native byte order, all longs 8 byte aligned): a header of {@value #HEADER_SIZE} bytes with the magic and
+ * version, the creation time and the {@link Counter}s, followed by {@value #SLOTS} stage slots of
+ * {@value #SLOT_SIZE} bytes. A slot is a state (0 free, -1 being claimed, otherwise the hash of its name), the name
+ * (length and up to {@value #MAX_NAME_LENGTH} UTF-8 bytes), count, failures and total nanoseconds of a
+ * {@link PipelineStage}. Slots are claimed by the first process recording the stage and never released. A slot left
+ * being claimed by a process that died is not used by anyone, its stages are only recorded in memory.
+ */
+public class SharedMetrics {
+
+    private static Logger logger = Logger.getLogger(SharedMetrics.class);
+
+    private static final long MAGIC = 0x41444d5400000001L; //"ADMT", version 1
+    static final int HEADER_SIZE = 64;
+    static final int SLOTS = 256;
+    static final int SLOT_SIZE = 96;
+    static final int MAX_NAME_LENGTH = 62;
+    static final int SIZE = HEADER_SIZE + SLOTS * SLOT_SIZE;
+
+    private static final int CREATED_AT = 8;
+    private static final int COUNTERS = 16;
+    private static final int NAME = 8;
+    private static final int COUNT = 72;
+    private static final int FAILURES = 80;
+    private static final int TOTAL_NANOS = 88;
+    private static final long CLAIMING = -1;
+    //a claim only takes the time to write the name, a slot being claimed for longer belongs to a process that died
+    private static final long CLAIM_TIMEOUT_IN_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static volatile SharedMetrics current;
+
+    /**
+     * Process wide counters, in the order of the header.
+     */
+    public enum Counter {
+        PROCESSES,
+        EVENTS,
+        FAILED_EVENTS
+    }
+
+    //keeps the mapping, and with it the address, alive
+    private final MappedByteBuffer buffer;
+    private final long address;
+    private final File file;
+
+    private SharedMetrics(File file, MappedByteBuffer buffer, long address) {
+        this.file = file;
+        this.buffer = buffer;
+        this.address = address;
+        buffer.order(ByteOrder.nativeOrder());
+    }
+
+    /**
+     * Maps the file, creating it if needed.
+     * @throws IOException if the file can not be mapped or was written by an incompatible version
+     */
+    static SharedMetrics map(File file) throws IOException {
+        if (!MappedMemory.isAvailable()) {
+            throw new IOException("Compare-and-swap on mapped memory is not supported by this JVM");
+        }
+        File dir = file.getAbsoluteFile().getParentFile();
+        if (dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Unable to create " + dir);
+        }
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        MappedByteBuffer buffer;
+        try {
+            //mapping beyond the end grows the file with zeros, which is an empty region
+            buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, SIZE);
+        } finally {
+            raf.close();
+        }
+        SharedMetrics metrics = new SharedMetrics(file, buffer, MappedMemory.addressOf(buffer));
+        if (MappedMemory.compareAndSwapLong(metrics.address, 0, MAGIC)) {
+            MappedMemory.putLongVolatile(metrics.address + CREATED_AT, System.currentTimeMillis());
+        } else if (MappedMemory.getLongVolatile(metrics.address) != MAGIC) {
+            throw new IOException(file + " is not a metrics file of this version");
+        }
+        return metrics;
+    }
+
+    /**
+     * Maps the file as the metrics of this process and counts the process. Failures are logged, the process
+     * then records its metrics in memory only.
+     */
+    public static void open(File file) {
+        if (current != null) {
+            return;
+        }
+        try {
+            SharedMetrics metrics = map(file);
+            metrics.increment(Counter.PROCESSES);
+            current = metrics;
+        } catch (IOException e) {
+            logger.warn("Unable to open the shared metrics at " + file, e);
+        } catch (RuntimeException e) {
+            logger.warn("Unable to open the shared metrics at " + file, e);
+        }
+    }
+
+    /**
+     * @return the metrics of this process, null if they are not shared
+     */
+    static SharedMetrics current() {
+        return current;
+    }
+
+    /**
+     * Adds to a counter of this process, if the metrics are shared.
+     */
+    public static void count(Counter counter) {
+        SharedMetrics metrics = current;
+        if (metrics != null) {
+            metrics.increment(counter);
+        }
+    }
+
+    void increment(Counter counter) {
+        add(address + COUNTERS + counter.ordinal() * 8, 1);
+    }
+
+    long get(Counter counter) {
+        return MappedMemory.getLongVolatile(address + COUNTERS + counter.ordinal() * 8);
+    }
+
+    long getCreatedAt() {
+        return MappedMemory.getLongVolatile(address + CREATED_AT);
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    /**
+     * Finds or claims the slot of the stage.
+     * @return the slot or -1 if all slots are taken by other stages, or a slot on the way was never completed
+     */
+    int slotOf(String name) {
+        byte[] encoded = encode(name);
+        long key = key(encoded);
+        int start = (int) ((key & Integer.MAX_VALUE) % SLOTS);
+        for (int i = 0; i < SLOTS; i++) {
+            int slot = (start + i) % SLOTS;
+            long state = slotState(slot);
+            if (state == 0) {
+                long stateAddress = slotAddress(slot);
+                if (MappedMemory.compareAndSwapLong(stateAddress, 0, CLAIMING)) {
+                    writeName(slot, encoded);
+                    MappedMemory.putLongVolatile(stateAddress, key);
+                    return slot;
+                }
+                state = slotState(slot);
+            }
+            if (state == CLAIMING) {
+                //the stage may be the one that was being claimed, taking another slot would count it twice
+                logger.warn("Slot " + slot + " of " + file + " was never completed, " + name + " is not shared");
+                return -1;
+            }
+            if (state == key && Arrays.equals(encoded, readName(slot))) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    void record(int slot, long nanos, boolean failed) {
+        long slotAddress = slotAddress(slot);
+        add(slotAddress + COUNT, 1);
+        if (failed) {
+            add(slotAddress + FAILURES, 1);
+        }
+        add(slotAddress + TOTAL_NANOS, nanos);
+    }
+
+    /**
+     * @return the stages recorded by any process
+     */
+    List<Stage> getStages() {
+        List<Stage> stages = new ArrayList<Stage>();
+        for (int slot = 0; slot < SLOTS; slot++) {
+            //a stage being claimed is listed the next time
+            long state = MappedMemory.getLongVolatile(slotAddress(slot));
+            if (state == 0 || state == CLAIMING) {
+                continue;
+            }
+            long slotAddress = slotAddress(slot);
+            stages.add(new Stage(new String(readName(slot), UTF_8), MappedMemory.getLongVolatile(slotAddress + COUNT),
+                    MappedMemory.getLongVolatile(slotAddress + FAILURES), MappedMemory.getLongVolatile(slotAddress + TOTAL_NANOS)));
+        }
+        return stages;
+    }
+
+    /**
+     * Waits for a claim in progress, at most {@link #CLAIM_TIMEOUT_IN_NANOS}.
+     * @return the state, CLAIMING if the claim did not complete in time
+     */
+    private long slotState(int slot) {
+        long stateAddress = slotAddress(slot);
+        long state = MappedMemory.getLongVolatile(stateAddress);
+        if (state != CLAIMING) {
+            return state;
+        }
+        long deadline = System.nanoTime() + CLAIM_TIMEOUT_IN_NANOS;
+        while (state == CLAIMING && System.nanoTime() - deadline < 0) {
+            Thread.yield();
+            state = MappedMemory.getLongVolatile(stateAddress);
+        }
+        return state;
+    }
+
+    private long slotAddress(int slot) {
+        return address + HEADER_SIZE + (long) slot * SLOT_SIZE;
+    }
+
+    //the name is published by the volatile write of the slot state that follows
+    private void writeName(int slot, byte[] encoded) {
+        int nameIndex = HEADER_SIZE + slot * SLOT_SIZE + NAME;
+        buffer.putShort(nameIndex, (short) encoded.length);
+        for (int i = 0; i < encoded.length; i++) {
+            buffer.put(nameIndex + 2 + i, encoded[i]);
+        }
+    }
+
+    private byte[] readName(int slot) {
+        int nameIndex = HEADER_SIZE + slot * SLOT_SIZE + NAME;
+        int length = Math.min(Math.max(0, buffer.getShort(nameIndex)), MAX_NAME_LENGTH);
+        byte[] encoded = new byte[length];
+        for (int i = 0; i < length; i++) {
+            encoded[i] = buffer.get(nameIndex + 2 + i);
+        }
+        return encoded;
+    }
+
+    private static void add(long counterAddress, long delta) {
+        long value;
+        do {
+            value = MappedMemory.getLongVolatile(counterAddress);
+        } while (!MappedMemory.compareAndSwapLong(counterAddress, value, value + delta));
+    }
+
+    private static byte[] encode(String name) {
+        byte[] encoded = name.getBytes(UTF_8);
+        return encoded.length <= MAX_NAME_LENGTH ? encoded : Arrays.copyOf(encoded, MAX_NAME_LENGTH);
+    }
+
+    //never 0 or CLAIMING
+    private static long key(byte[] encoded) {
+        return (Arrays.hashCode(encoded) & 0xFFFFFFFFL) | (1L << 32);
+    }
+
+    /**
+     * Totals of a stage over all processes.
+     */
+    static class Stage {
+
+        final String name;
+        final long count;
+        final long failures;
+        final long totalNanos;
+
+        Stage(String name, long count, long failures, long totalNanos) {
+            this.name = name;
+            this.count = count;
+            this.failures = failures;
+            this.totalNanos = totalNanos;
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.appdynamics.extensions.snmp.metrics;
+
+
+import com.appdynamics.extensions.snmp.config.ConfigLoader;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Prints the totals of the {@link SharedMetrics} of all processes, and with an interval also their rates per second.
+ *
+ *     java -cp snmp-trap-alert.jar com.appdynamics.extensions.snmp.metrics.SharedMetricsReader [intervalInSeconds] [file]
+ */
+public class SharedMetricsReader {
+
+    public static void main(String[] args) throws Exception {
+        int intervalInSeconds = args.length > 0 ? Integer.parseInt(args[0]) : 0;
+        File file = new File(args.length > 1 ? args[1] : ConfigLoader.getMetricsFile());
+        if (!file.isFile()) {
+            System.err.println("No metrics recorded yet at " + file.getAbsolutePath());
+            System.exit(1);
+        }
+        SharedMetrics metrics;
+        try {
+            metrics = SharedMetrics.map(file);
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+            return;
+        }
+        Snapshot before = null;
+        if (intervalInSeconds > 0) {
+            before = new Snapshot(metrics);
+            Thread.sleep(TimeUnit.SECONDS.toMillis(intervalInSeconds));
+        }
+        print(System.out, metrics, new Snapshot(metrics), before);
+    }
+
+    static void print(PrintStream out, SharedMetrics metrics, Snapshot now, Snapshot before) {
+        out.println("Metrics of " + metrics.getFile().getAbsolutePath() + " since " + new Date(metrics.getCreatedAt()));
+        boolean rates = before != null;
+        double seconds = rates ? Math.max(1, now.takenAt - before.takenAt) / (double) TimeUnit.SECONDS.toNanos(1) : 0;
+        out.println(rates ? String.format(Locale.ROOT, "%-40s %12s %10s", "counter", "total", "per sec")
+                : String.format(Locale.ROOT, "%-40s %12s", "counter", "total"));
+        for (SharedMetrics.Counter counter : SharedMetrics.Counter.values()) {
+            long total = now.counters.get(counter);
+            out.println(rates ? String.format(Locale.ROOT, "%-40s %12d %10.2f", counter.name().toLowerCase(Locale.ROOT), total,
+                    (total - before.counters.get(counter)) / seconds)
+                    : String.format(Locale.ROOT, "%-40s %12d", counter.name().toLowerCase(Locale.ROOT), total));
+        }
+        out.println();
+        out.println(rates ? String.format(Locale.ROOT, "%-40s %12s %10s %12s %10s", "stage", "count", "failed", "mean ms", "per sec")
+                : String.format(Locale.ROOT, "%-40s %12s %10s %12s", "stage", "count", "failed", "mean ms"));
+        for (SharedMetrics.Stage stage : now.stages) {
+            double meanMillis = stage.count == 0 ? 0 : stage.totalNanos / (double) TimeUnit.MILLISECONDS.toNanos(1) / stage.count;
+            if (rates) {
+                SharedMetrics.Stage previous = before.getStage(stage.name);
+                long count = stage.count - (previous == null ? 0 : previous.count);
+                out.println(String.format(Locale.ROOT, "%-40s %12d %10d %12.3f %10.2f", stage.name, stage.count, stage.failures,
+                        meanMillis, count / seconds));
+            } else {
+                out.println(String.format(Locale.ROOT, "%-40s %12d %10d %12.3f", stage.name, stage.count, stage.failures, meanMillis));
+            }
+        }
+    }
+
+    /**
+     * Values of the metrics at one point in time.
+     */
+    static class Snapshot {
+
+        private final long takenAt = System.nanoTime();
+        private final Map<SharedMetrics.Counter, Long> counters = new HashMap<SharedMetrics.Counter, Long>();
+        private final List<SharedMetrics.Stage> stages;
+
+        Snapshot(SharedMetrics metrics) {
+            for (SharedMetrics.Counter counter : SharedMetrics.Counter.values()) {
+                counters.put(counter, metrics.get(counter));
+            }
+            stages = metrics.getStages();
+            Collections.sort(stages, new Comparator<SharedMetrics.Stage>() {
+                @Override
+                public int compare(SharedMetrics.Stage a, SharedMetrics.Stage b) {
+                    return a.name.compareTo(b.name);
+                }
+            });
+        }
+
+        SharedMetrics.Stage getStage(String name) {
+            for (SharedMetrics.Stage stage : stages) {
+                if (stage.name.equals(name)) {
+                    return stage;
+                }
+            }
+            return null;
+        }
+    }
+}
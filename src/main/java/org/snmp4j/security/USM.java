@@ -59,6 +59,7 @@ public class USM implements SecurityModel {
   private transient Vector usmUserListeners;
   private CounterSupport counterSupport;
   private int configurableEngineTime;
+  private long configurableEngineTimeSetAt;
 
   /**
    * Creates a USM with the support for the supplied security protocols.
@@ -88,6 +89,7 @@ public class USM implements SecurityModel {
         this.securityProtocols = securityProtocols;
         counterSupport = CounterSupport.getInstance();
         this.configurableEngineTime = configurableEngineTime;
+        this.configurableEngineTimeSetAt = System.currentTimeMillis();
     }
 
   public int getID() {
@@ -110,8 +112,16 @@ public class USM implements SecurityModel {
                                             engineTime));
   }
 
+  /**
+   * Returns the configured engine time advanced by the seconds elapsed since it
+   * was configured, so that a long-lived USM keeps sending a current time.
+   */
   public int getConfigurableEngineTime(){
-      return configurableEngineTime;
+      if (configurableEngineTimeSetAt == 0) {
+          return configurableEngineTime;
+      }
+      long elapsed = (System.currentTimeMillis() - configurableEngineTimeSetAt) / 1000;
+      return (int)((configurableEngineTime + elapsed) % 2147483648L);
   }
 
   /**
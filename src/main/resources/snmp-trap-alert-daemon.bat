@@ -0,0 +1,3 @@
+@echo off
+REM Starts the resident SNMP trap daemon. snmp-trap-alert.bat hands events off to it when it is running.
+java -Dlog4j.configuration=file:conf/log4j.xml -DappDynamics.controller.multiTenant=false -DappDynamics.snmp.daemon=true -jar snmp-trap-alert.jar
@@ -1,2 +1,3 @@
 @echo off
-java -Dlog4j.configuration=file:conf/log4j.xml -DappDynamics.controller.multiTenant=false -jar snmp-trap-alert.jar %*
\ No newline at end of file
+REM cmd cannot open a socket, so every event starts a JVM, which then hands the event off to a running daemon
+java -Dlog4j.configuration=file:conf/log4j.xml -DappDynamics.controller.multiTenant=false -DappDynamics.snmp.daemon.handoff=true -jar snmp-trap-alert.jar %*
\ No newline at end of file
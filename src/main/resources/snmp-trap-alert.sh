@@ -1,3 +1,19 @@
-#!/bin/sh
+#!/bin/bash
 
-java -Dlog4j.configuration=file:conf/log4j.xml -DappDynamics.controller.multiTenant=false -jar snmp-trap-alert.jar "$@" &
+#Hands the event off to a running daemon or leader without starting a JVM (see AlertProtocol for the request format).
+#Only if no daemon acknowledged the event, a JVM is started, which becomes the leader or processes the event itself.
+DAEMON_PORT=${SNMP_TRAP_DAEMON_PORT:-17162}
+
+handoff() {
+    exec 3<>"/dev/tcp/127.0.0.1/$DAEMON_PORT" || return 1
+    printf 'ARGV%d\0' $# >&3
+    printf '%s\0' "$@" >&3
+    IFS= read -r -N 1 -t 5 -u 3 status || return 1
+    [ "$status" = $'\001' ]
+}
+
+if ( handoff "$@" ) 2>/dev/null; then
+    exit 0
+fi
+
+java -Dlog4j.configuration=file:conf/log4j.xml -DappDynamics.controller.multiTenant=false -DappDynamics.snmp.daemon.handoff=true -DappDynamics.snmp.daemon.port=$DAEMON_PORT -jar snmp-trap-alert.jar "$@" &
@@ -0,0 +1,4 @@
+#!/bin/sh
+
+#Prints the totals in conf/metrics.dat of all snmp-trap-alert processes. Pass an interval in seconds to also print rates.
+java -cp snmp-trap-alert.jar com.appdynamics.extensions.snmp.metrics.SharedMetricsReader "$@"
@@ -0,0 +1,157 @@
+package com.appdynamics.extensions.api;
+
+import com.appdynamics.extensions.snmp.api.*;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class CoalescingServiceTest {
+
+    private static final String NODES = "http://controller:8090/controller/rest/applications/7/nodes";
+    private static final String UNKNOWN_NODE = "http://controller:8090/controller/rest/applications/7/nodes/gone";
+
+    @Test
+    public void sharesOneRequestBetweenConcurrentCallers() throws Exception {
+        final BlockingService delegate = new BlockingService();
+        final CoalescingService service = new CoalescingService(delegate, 30);
+        ExecutorService callers = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<List<Node>>> results = new ArrayList<Future<List<Node>>>();
+            for (int i = 0; i < 4; i++) {
+                results.add(callers.submit(new Callable<List<Node>>() {
+                    @Override
+                    public List<Node> call() {
+                        return service.getNodes(null, NODES);
+                    }
+                }));
+            }
+            delegate.started.await();
+            //give the other callers time to join the request in flight
+            Thread.sleep(200);
+            delegate.release.countDown();
+            for (Future<List<Node>> result : results) {
+                Assert.assertEquals(1, result.get().size());
+            }
+            Assert.assertEquals(1, delegate.calls.get());
+
+            //a completed request is not shared with later callers
+            service.getNodes(null, NODES);
+            Assert.assertEquals(2, delegate.calls.get());
+        } finally {
+            callers.shutdownNow();
+        }
+    }
+
+    @Test
+    public void remembersEndpointsThatReturnedNothing() {
+        BlockingService delegate = new BlockingService();
+        delegate.release.countDown();
+        CoalescingService service = new CoalescingService(delegate, 30);
+        Assert.assertTrue(service.getNodes(null, UNKNOWN_NODE).isEmpty());
+        Assert.assertTrue(service.getNodes(null, UNKNOWN_NODE).isEmpty());
+        Assert.assertEquals(1, delegate.calls.get());
+
+        service = new CoalescingService(delegate, 0);
+        service.getNodes(null, UNKNOWN_NODE);
+        service.getNodes(null, UNKNOWN_NODE);
+        Assert.assertEquals(3, delegate.calls.get());
+    }
+
+    @Test
+    public void streamsSharedBusinessTransactionsToEachHandler() {
+        BlockingService delegate = new BlockingService();
+        delegate.release.countDown();
+        CoalescingService service = new CoalescingService(delegate, 30);
+        final List<Integer> seen = new ArrayList<Integer>();
+        service.getBTs(null, "bts", new BusinessTransactionHandler() {
+            @Override
+            public boolean handle(BusinessTransaction bt) {
+                seen.add(bt.getId());
+                return bt.getId() != 1;
+            }
+        });
+        Assert.assertEquals(Arrays.asList(1), seen);
+    }
+
+    @Test
+    public void doesNotRememberFailures() {
+        BlockingService delegate = new BlockingService();
+        delegate.release.countDown();
+        delegate.fail = true;
+        CoalescingService service = new CoalescingService(delegate, 30);
+        try {
+            service.getNodes(null, NODES);
+            Assert.fail();
+        } catch (ServiceException expected) {
+        }
+        delegate.fail = false;
+        Assert.assertEquals(1, service.getNodes(null, NODES).size());
+        Assert.assertEquals(2, delegate.calls.get());
+    }
+
+    @Test(expected = ServiceException.class)
+    public void propagatesFailures() {
+        BlockingService delegate = new BlockingService();
+        delegate.release.countDown();
+        delegate.fail = true;
+        new CoalescingService(delegate, 30).getNodes(null, NODES);
+    }
+
+    private static class BlockingService implements IService {
+
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger calls = new AtomicInteger();
+        volatile boolean fail;
+
+        @Override
+        public List<BusinessTransaction> getBTs(HttpClientBuilder httpClientBuilder, String endpoint) throws ServiceException {
+            BusinessTransaction first = new BusinessTransaction();
+            first.setId(1);
+            first.setTierName("web");
+            BusinessTransaction second = new BusinessTransaction();
+            second.setId(2);
+            second.setTierName("db");
+            return Arrays.asList(first, second);
+        }
+
+        @Override
+        public void getBTs(HttpClientBuilder httpClientBuilder, String endpoint, BusinessTransactionHandler handler) throws ServiceException {
+            for (BusinessTransaction bt : getBTs(httpClientBuilder, endpoint)) {
+                if (!handler.handle(bt)) {
+                    return;
+                }
+            }
+        }
+
+        @Override
+        public List<Node> getNodes(HttpClientBuilder httpClientBuilder, String endpoint) throws ServiceException {
+            calls.incrementAndGet();
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new ServiceException("interrupted", e);
+            }
+            if (fail) {
+                throw new ServiceException("controller unavailable", null);
+            }
+            if (endpoint.endsWith("/gone")) {
+                return Collections.emptyList();
+            }
+            Node node = new Node();
+            node.setName("node-1");
+            return Arrays.asList(node);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.appdynamics.extensions.api;
+
+import com.appdynamics.extensions.snmp.api.BusinessTransaction;
+import com.appdynamics.extensions.snmp.api.BusinessTransactionHandler;
+import com.appdynamics.extensions.snmp.api.BusinessTransactionTiers;
+import com.appdynamics.extensions.snmp.api.ControllerResponseParser;
+import com.appdynamics.extensions.snmp.api.Node;
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.xml.stream.XMLStreamException;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+public class ControllerResponseParserTest {
+
+    private static final String BTS = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n" +
+            "<business-transactions>\n" +
+            "  <business-transaction>\n" +
+            "    <id>11</id><name>/checkout</name><entryPointType>SERVLET</entryPointType>\n" +
+            "    <internalName>/checkout</internalName><tierId>3</tierId><tierName>web</tierName><background>false</background>\n" +
+            "  </business-transaction>\n" +
+            "  <business-transaction>\n" +
+            "    <id>12</id><name>batch</name><tierId>4</tierId><tierName>jobs</tierName><background>true</background>\n" +
+            "    <unknown><nested>ignored</nested></unknown>\n" +
+            "  </business-transaction>\n" +
+            "  <business-transaction><id>13</id><name>orphan</name></business-transaction>\n" +
+            "</business-transactions>";
+
+    @Test
+    public void parsesNodes() throws XMLStreamException {
+        List<Node> nodes = ControllerResponseParser.parseNodes(getClass().getResourceAsStream("/nodes.xml"));
+        Assert.assertEquals(1, nodes.size());
+        Node node = nodes.get(0);
+        Assert.assertEquals(173, node.getId());
+        Assert.assertEquals("cdt_dc_jams_minijam4_w30225", node.getName());
+        Assert.assertEquals("GZ", node.getTierName());
+        Assert.assertEquals(62, node.getTierId());
+        Assert.assertEquals("cdt_dc_jams_minijam4_w30225", node.getMachineName());
+        Assert.assertTrue(node.isMachineAgentPresent());
+        Assert.assertEquals("10.111.176.170", node.getIpAddresses().get(0));
+        Assert.assertEquals(1, node.getIpAddresses().size());
+    }
+
+    @Test
+    public void parsesEmptyResponses() throws XMLStreamException {
+        Assert.assertTrue(ControllerResponseParser.parseNodes(stream("<nodes/>")).isEmpty());
+    }
+
+    @Test
+    public void streamsBusinessTransactions() throws XMLStreamException {
+        BusinessTransactionTiers tiers = new BusinessTransactionTiers();
+        ControllerResponseParser.parseBTs(stream(BTS), tiers);
+        List<BusinessTransaction> bts = tiers.getBusinessTransactions();
+        Assert.assertEquals(2, bts.size());
+        Assert.assertEquals(11, bts.get(0).getId());
+        Assert.assertEquals("web", bts.get(0).getTierName());
+        Assert.assertEquals(12, bts.get(1).getId());
+        Assert.assertEquals("jobs", bts.get(1).getTierName());
+        //only the tier is kept
+        Assert.assertNull(bts.get(0).getName());
+    }
+
+    @Test
+    public void stopsAtTheBusinessTransactionLookedFor() throws XMLStreamException {
+        final List<BusinessTransaction> seen = new ArrayList<BusinessTransaction>();
+        ControllerResponseParser.parseBTs(stream(BTS), new BusinessTransactionHandler() {
+            @Override
+            public boolean handle(BusinessTransaction bt) {
+                seen.add(bt);
+                return bt.getId() != 11;
+            }
+        });
+        Assert.assertEquals(1, seen.size());
+        Assert.assertEquals("/checkout", seen.get(0).getName());
+        Assert.assertEquals("SERVLET", seen.get(0).getEntryPointType());
+    }
+
+    private static InputStream stream(String xml) {
+        return new ByteArrayInputStream(xml.getBytes());
+    }
+}
@@ -0,0 +1,56 @@
+package com.appdynamics.extensions.api;
+
+import com.appdynamics.extensions.snmp.api.EndpointBuilder;
+import com.appdynamics.extensions.snmp.api.HttpClientBuilder;
+import com.appdynamics.extensions.snmp.config.ControllerConfig;
+import org.apache.commons.httpclient.HttpClient;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class HttpClientBuilderTest {
+
+    @After
+    public void shutdown() {
+        HttpClientBuilder.shutdown();
+    }
+
+    @Test
+    public void sharesTheClientOfTheSameController() {
+        Assert.assertSame(new HttpClientBuilder(controller("user@customer1")).getHttpClient(),
+                new HttpClientBuilder(controller("user@customer1")).getHttpClient());
+        Assert.assertNotSame(new HttpClientBuilder(controller("user@customer1")).getHttpClient(),
+                new HttpClientBuilder(controller("user@customer2")).getHttpClient());
+    }
+
+    @Test
+    public void keysTheClientsByAllTheirSettings() {
+        ControllerConfig controller = controller("user@customer1");
+        HttpClient client = new HttpClientBuilder(controller).getHttpClient();
+        Assert.assertSame(client, new HttpClientBuilder(controller).getHttpClient());
+        controller.setPassword("changed");
+        Assert.assertNotSame(client, new HttpClientBuilder(controller).getHttpClient());
+        Assert.assertNotSame(new HttpClientBuilder(null, null, 1000, 1000).getHttpClient(),
+                new HttpClientBuilder("", "", 1000, 1000).getHttpClient());
+    }
+
+    @Test
+    public void useSslSelectsTlsThroughTheEndpoint() {
+        ControllerConfig controller = controller("user@customer1");
+        controller.setUseSsl(true);
+        Assert.assertTrue(new EndpointBuilder().buildNodesEndpoint(controller, 7).startsWith(EndpointBuilder.HTTPS));
+        //one client serves both schemes, its connection pool is kept per protocol and host
+        ControllerConfig plain = controller("user@customer1");
+        Assert.assertTrue(new EndpointBuilder().buildNodesEndpoint(plain, 7).startsWith(EndpointBuilder.HTTP));
+        Assert.assertSame(new HttpClientBuilder(controller).getHttpClient(), new HttpClientBuilder(plain).getHttpClient());
+    }
+
+    private ControllerConfig controller(String userAccount) {
+        ControllerConfig controller = new ControllerConfig();
+        controller.setHost("controller");
+        controller.setPort(8090);
+        controller.setUserAccount(userAccount);
+        controller.setPassword("secret");
+        return controller;
+    }
+}
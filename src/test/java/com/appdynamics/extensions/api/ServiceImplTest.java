@@ -3,18 +3,28 @@ package com.appdynamics.extensions.api;
 import com.appdynamics.extensions.alerts.customevents.Event;
 import com.appdynamics.extensions.alerts.customevents.HealthRuleViolationEvent;
 import com.appdynamics.extensions.alerts.customevents.OtherEvent;
+import com.appdynamics.extensions.snmp.api.HttpClientBuilder;
 import com.appdynamics.extensions.snmp.api.Node;
 import com.appdynamics.extensions.snmp.api.NodeWrapper;
+import com.appdynamics.extensions.snmp.api.ServiceException;
+import com.appdynamics.extensions.snmp.api.ServiceImpl;
 import com.google.common.base.Function;
 import com.google.common.base.Joiner;
 import com.google.common.base.Strings;
 import com.google.common.collect.Lists;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
 import org.junit.Assert;
 import org.junit.Test;
 
 import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBException;
 import javax.xml.bind.Unmarshaller;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.util.Arrays;
 import java.util.List;
 
@@ -22,6 +32,39 @@ public class ServiceImplTest {
 
     public static final Joiner JOIN_ON_COMMA = Joiner.on(",");
 
+    private HttpServer controller;
+
+    @After
+    public void stopController() {
+        if (controller != null) {
+            controller.stop(0);
+        }
+        HttpClientBuilder.shutdown();
+    }
+
+    @Test
+    public void returnsNoNodesForUnknownApplications() throws IOException {
+        Assert.assertTrue(new ServiceImpl().getNodes(new HttpClientBuilder(null, null, 1000, 1000), controllerRespondingWith(404)).isEmpty());
+    }
+
+    @Test(expected = ServiceException.class)
+    public void failsWhenTheControllerFails() throws IOException {
+        new ServiceImpl().getNodes(new HttpClientBuilder(null, null, 1000, 1000), controllerRespondingWith(503));
+    }
+
+    private String controllerRespondingWith(final int status) throws IOException {
+        controller = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        controller.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                exchange.sendResponseHeaders(status, -1);
+                exchange.close();
+            }
+        });
+        controller.start();
+        return "http://127.0.0.1:" + controller.getAddress().getPort() + "/controller/rest/applications/7/nodes";
+    }
+
 
     @Test
     public void testNodesUnmarshalling() throws JAXBException {
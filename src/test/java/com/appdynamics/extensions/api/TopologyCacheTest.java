@@ -0,0 +1,83 @@
+package com.appdynamics.extensions.api;
+
+import com.appdynamics.extensions.snmp.api.*;
+import com.appdynamics.extensions.snmp.config.ControllerConfig;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class TopologyCacheTest {
+
+    @Test
+    public void loadsTheTopologyOncePerApplication() {
+        CountingService service = new CountingService();
+        TopologyCache cache = new TopologyCache(service, null, controller(), 15, 5, 10);
+
+        ApplicationTopology topology = cache.getTopology(7);
+        Assert.assertSame(topology, cache.getTopology(7));
+        Assert.assertEquals(1, service.nodeCalls);
+        Assert.assertEquals(1, service.btCalls);
+        Assert.assertTrue(service.endpoints.contains("http://controller:8090/controller/rest/applications/7/nodes"));
+
+        Assert.assertEquals(2, topology.getNodesInTier("web").size());
+        Assert.assertEquals("machine-2", topology.getNodes("node-2").get(0).getMachineName());
+        Assert.assertTrue(topology.getNodes("unknown").isEmpty());
+        Assert.assertEquals("web", topology.getBtTier(42));
+        Assert.assertNull(topology.getBtTier(43));
+
+        cache.invalidate(7);
+        cache.getTopology(7);
+        Assert.assertEquals(2, service.nodeCalls);
+    }
+
+    private ControllerConfig controller() {
+        ControllerConfig controller = new ControllerConfig();
+        controller.setHost("controller");
+        controller.setPort(8090);
+        return controller;
+    }
+
+    private static Node node(String name, String tier, String machine) {
+        Node node = new Node();
+        node.setName(name);
+        node.setTierName(tier);
+        node.setMachineName(machine);
+        return node;
+    }
+
+    private static class CountingService implements IService {
+
+        int nodeCalls;
+        int btCalls;
+        List<String> endpoints = new ArrayList<String>();
+
+        @Override
+        public List<BusinessTransaction> getBTs(HttpClientBuilder httpClientBuilder, String endpoint) throws ServiceException {
+            btCalls++;
+            endpoints.add(endpoint);
+            BusinessTransaction bt = new BusinessTransaction();
+            bt.setId(42);
+            bt.setTierName("web");
+            return Arrays.asList(bt);
+        }
+
+        @Override
+        public void getBTs(HttpClientBuilder httpClientBuilder, String endpoint, BusinessTransactionHandler handler) throws ServiceException {
+            for (BusinessTransaction bt : getBTs(httpClientBuilder, endpoint)) {
+                if (!handler.handle(bt)) {
+                    return;
+                }
+            }
+        }
+
+        @Override
+        public List<Node> getNodes(HttpClientBuilder httpClientBuilder, String endpoint) throws ServiceException {
+            nodeCalls++;
+            endpoints.add(endpoint);
+            return Arrays.asList(node("node-1", "web", "machine-1"), node("node-2", "web", "machine-2"), node("node-3", "db", "machine-3"));
+        }
+    }
+}
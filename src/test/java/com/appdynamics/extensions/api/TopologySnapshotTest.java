@@ -0,0 +1,97 @@
+package com.appdynamics.extensions.api;
+
+import com.appdynamics.extensions.snmp.api.BusinessTransaction;
+import com.appdynamics.extensions.snmp.api.Node;
+import com.appdynamics.extensions.snmp.api.TopologySnapshot;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class TopologySnapshotTest {
+
+    @Test
+    public void writesAndOpensSnapshot() throws IOException {
+        File dir = Files.createTempDirectory("topology").toFile();
+        File file = new File(new File(dir, "accounts"), "7.snapshot");
+        try {
+            Assert.assertNull(TopologySnapshot.open(file));
+
+            TopologySnapshot.write(file, 1234L, nodes(), bts());
+            TopologySnapshot snapshot = TopologySnapshot.open(file);
+            Assert.assertEquals(1234L, snapshot.getCreatedAt());
+
+            List<Node> web = snapshot.getNodesInTier("web");
+            Assert.assertEquals(2, web.size());
+            Node node = snapshot.getNodes("node-2").get(0);
+            Assert.assertEquals("web", node.getTierName());
+            Assert.assertEquals("machine-2", node.getMachineName());
+            Assert.assertEquals(Arrays.asList("10.0.0.2", "fe80::2"), node.getIpAddresses());
+            Assert.assertEquals("", snapshot.getNodes("node-3").get(0).getMachineName());
+            Assert.assertTrue(snapshot.getNodes("unknown").isEmpty());
+            Assert.assertTrue(snapshot.getNodesInTier(null).isEmpty());
+
+            Assert.assertEquals("web", snapshot.getBtTier(42));
+            Assert.assertEquals("db", snapshot.getBtTier(-5));
+            Assert.assertNull(snapshot.getBtTier(43));
+
+            TopologySnapshot.write(file, 5678L, nodes(), Collections.<BusinessTransaction>emptyList());
+            snapshot = TopologySnapshot.open(file);
+            Assert.assertEquals(5678L, snapshot.getCreatedAt());
+            Assert.assertNull(snapshot.getBtTier(42));
+            Assert.assertEquals(1, file.getParentFile().list().length);
+        } finally {
+            file.delete();
+            file.getParentFile().delete();
+            dir.delete();
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsForeignFiles() throws IOException {
+        File file = File.createTempFile("topology", ".snapshot");
+        try {
+            FileOutputStream out = new FileOutputStream(file);
+            try {
+                out.write(new byte[64]);
+            } finally {
+                out.close();
+            }
+            TopologySnapshot.open(file);
+        } finally {
+            file.delete();
+        }
+    }
+
+    private static List<Node> nodes() {
+        return Arrays.asList(node("node-1", "web", "machine-1", "10.0.0.1"),
+                node("node-2", "web", "machine-2", "10.0.0.2", "fe80::2"),
+                node("node-3", "db", null));
+    }
+
+    private static List<BusinessTransaction> bts() {
+        return Arrays.asList(bt(42, "web"), bt(-5, "db"), bt(7, null));
+    }
+
+    private static Node node(String name, String tier, String machine, String... ipAddresses) {
+        Node node = new Node();
+        node.setName(name);
+        node.setTierName(tier);
+        node.setMachineName(machine);
+        node.setIpAddresses(Arrays.asList(ipAddresses));
+        return node;
+    }
+
+    private static BusinessTransaction bt(int id, String tier) {
+        BusinessTransaction bt = new BusinessTransaction();
+        bt.setId(id);
+        bt.setTierName(tier);
+        return bt;
+    }
+}
@@ -0,0 +1,40 @@
+package com.appdynamics.extensions.snmp;
+
+
+import com.appdynamics.extensions.snmp.mib.AppdCtlrMib;
+import org.junit.Assert;
+import org.junit.Test;
+import org.snmp4j.PDU;
+import org.snmp4j.smi.OctetString;
+
+import java.lang.reflect.Field;
+
+public class ADSnmpDataSchemaTest {
+
+    @Test
+    public void coversEveryAttributeInDeclarationOrder() {
+        Field[] fields = ADSnmpData.class.getDeclaredFields();
+        ADSnmpDataSchema[] schema = ADSnmpDataSchema.values();
+        Assert.assertEquals(fields.length, schema.length);
+        for (int i = 0; i < fields.length; i++) {
+            Assert.assertEquals(fields[i].getName(), schema[i].getAttributeName());
+            Assert.assertEquals(AppdCtlrMib.EVENT_DATA + "." + (i + 1), schema[i].getOid().toString());
+        }
+    }
+
+    @Test
+    public void bindsOnlyAttributesThatAreSet() {
+        ADSnmpData data = new ADSnmpData();
+        data.setApplication("app");
+        data.setControllerHostName("controller");
+        PDU pdu = new PDU();
+        ADSnmpDataSchema.addVariableBindings(pdu, data);
+        //txns defaults to an empty string
+        Assert.assertEquals(3, pdu.size());
+        Assert.assertEquals(ADSnmpDataSchema.APPLICATION.getOid(), pdu.get(0).getOid());
+        Assert.assertEquals(new OctetString("app"), pdu.get(0).getVariable());
+        Assert.assertEquals(ADSnmpDataSchema.TXNS.getOid(), pdu.get(1).getOid());
+        Assert.assertEquals(ADSnmpDataSchema.CONTROLLER_HOST_NAME.getOid(), pdu.get(2).getOid());
+        Assert.assertEquals("1.3.6.1.4.1.40684.1.1.1.1.19", new Lookup().getOID("controllerHostName"));
+    }
+}
@@ -0,0 +1,129 @@
+package com.appdynamics.extensions.snmp;
+
+
+import com.appdynamics.extensions.snmp.mib.AppdCtlrMib;
+import org.junit.Assert;
+import org.junit.Test;
+import org.snmp4j.smi.OID;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class AlertSuppressorTest {
+
+    private final List<ADSnmpData> summaries = new ArrayList<ADSnmpData>();
+    private final AlertSuppressor.SummarySender sender = new AlertSuppressor.SummarySender() {
+        @Override
+        public void send(ADSnmpData summary, OID trapOid) {
+            summaries.add(summary);
+        }
+    };
+
+    @Test
+    public void sendsTheFirstEventAndASummaryOfTheRest() {
+        AlertSuppressor suppressor = new AlertSuppressor(windows(), 100, sender);
+        long now = 1000000;
+        Assert.assertTrue(suppressor.admit(event("1", "POLICY_CONTINUES_CRITICAL", "first"), AppdCtlrMib.V1_EVENT, now));
+        Assert.assertFalse(suppressor.admit(event("1", "POLICY_CONTINUES_CRITICAL", "second"), AppdCtlrMib.V1_EVENT, now + 1000));
+        Assert.assertFalse(suppressor.admit(event("1", "POLICY_CONTINUES_CRITICAL", "third"), AppdCtlrMib.V1_EVENT, now + 2000));
+        //other incidents are not affected
+        Assert.assertTrue(suppressor.admit(event("2", "POLICY_CONTINUES_CRITICAL", "other"), AppdCtlrMib.V1_EVENT, now + 2000));
+
+        suppressor.sweep(now + 59000);
+        Assert.assertTrue(summaries.isEmpty());
+        suppressor.sweep(now + 60000);
+        Assert.assertEquals(1, summaries.size());
+        ADSnmpData summary = summaries.get(0);
+        Assert.assertTrue(summary.getSummary().startsWith("2 events of this incident suppressed in the last 60 seconds"));
+        Assert.assertTrue(summary.getSummary().endsWith("third"));
+        Assert.assertEquals("1", summary.getIncidentId());
+        Assert.assertEquals(1, suppressor.getActiveWindows());
+
+        //the storm goes on with a new window
+        Assert.assertTrue(suppressor.admit(event("1", "POLICY_CONTINUES_CRITICAL", "fourth"), AppdCtlrMib.V1_EVENT, now + 61000));
+    }
+
+    @Test
+    public void neverSuppressesEventTypesWithoutWindow() {
+        AlertSuppressor suppressor = new AlertSuppressor(windows(), 100, sender);
+        Assert.assertTrue(suppressor.admit(event("1", "POLICY_OPEN_CRITICAL", "open"), AppdCtlrMib.V1_EVENT, 0));
+        Assert.assertTrue(suppressor.admit(event("1", "POLICY_OPEN_CRITICAL", "open"), AppdCtlrMib.V1_EVENT, 0));
+        Assert.assertEquals(0, suppressor.getActiveWindows());
+    }
+
+    @Test
+    public void startsANewWindowWhenTheSweepIsLate() {
+        AlertSuppressor suppressor = new AlertSuppressor(windows(), 100, sender);
+        Assert.assertTrue(suppressor.admit(event("1", "POLICY_UPGRADED", "first"), AppdCtlrMib.V1_EVENT, 0));
+        Assert.assertFalse(suppressor.admit(event("1", "POLICY_UPGRADED", "second"), AppdCtlrMib.V1_EVENT, 5000));
+        Assert.assertTrue(suppressor.admit(event("1", "POLICY_UPGRADED", "third"), AppdCtlrMib.V1_EVENT, 10000));
+        Assert.assertEquals(1, summaries.size());
+    }
+
+    @Test
+    public void anotherEventTypeEndsTheWindowOfItsIncident() {
+        AlertSuppressor suppressor = new AlertSuppressor(windows(), 100, sender);
+        Assert.assertTrue(suppressor.admit(event("1", "POLICY_CONTINUES_CRITICAL", "first"), AppdCtlrMib.V1_EVENT, 0));
+        Assert.assertFalse(suppressor.admit(event("1", "POLICY_CONTINUES_CRITICAL", "second"), AppdCtlrMib.V1_EVENT, 1000));
+        //the upgrade is sent right after the summary of the continuing events and starts its own window
+        Assert.assertTrue(suppressor.admit(event("1", "POLICY_UPGRADED", "upgraded"), AppdCtlrMib.V1_EVENT, 2000));
+        Assert.assertEquals(1, summaries.size());
+        Assert.assertTrue(summaries.get(0).getSummary().endsWith("second"));
+        Assert.assertFalse(suppressor.admit(event("1", "POLICY_UPGRADED", "upgraded again"), AppdCtlrMib.V1_EVENT, 3000));
+        Assert.assertEquals(1, suppressor.getActiveWindows());
+    }
+
+    @Test
+    public void closingTheIncidentSendsThePendingSummaryFirst() {
+        AlertSuppressor suppressor = new AlertSuppressor(windows(), 100, sender);
+        Assert.assertTrue(suppressor.admit(event("1", "POLICY_CONTINUES_CRITICAL", "first"), AppdCtlrMib.V1_EVENT, 0));
+        Assert.assertFalse(suppressor.admit(event("1", "POLICY_CONTINUES_CRITICAL", "second"), AppdCtlrMib.V1_EVENT, 1000));
+        Assert.assertTrue(suppressor.admit(event("1", "POLICY_CLOSE_CRITICAL", "closed"), AppdCtlrMib.V1_EVENT, 2000));
+        Assert.assertEquals(1, summaries.size());
+        Assert.assertEquals(0, suppressor.getActiveWindows());
+        //nothing is left to be sent after the close
+        suppressor.sweep(120000);
+        Assert.assertEquals(1, summaries.size());
+    }
+
+    @Test
+    public void sendsTheSummaryOfEvictedWindows() {
+        AlertSuppressor suppressor = new AlertSuppressor(windows(), 1, sender);
+        Assert.assertTrue(suppressor.admit(event("1", "POLICY_CONTINUES_CRITICAL", "first"), AppdCtlrMib.V1_EVENT, 0));
+        Assert.assertFalse(suppressor.admit(event("1", "POLICY_CONTINUES_CRITICAL", "second"), AppdCtlrMib.V1_EVENT, 0));
+        Assert.assertTrue(suppressor.admit(event("2", "POLICY_CONTINUES_CRITICAL", "other"), AppdCtlrMib.V1_EVENT, 0));
+        Assert.assertEquals(1, summaries.size());
+        Assert.assertEquals("1", summaries.get(0).getIncidentId());
+    }
+
+    @Test
+    public void closeSendsPendingSummaries() {
+        AlertSuppressor suppressor = new AlertSuppressor(windows(), 100, sender);
+        suppressor.admit(event("1", "POLICY_CONTINUES_WARNING", "first"), AppdCtlrMib.V1_EVENT, 0);
+        suppressor.admit(event("1", "POLICY_CONTINUES_WARNING", "second"), AppdCtlrMib.V1_EVENT, 0);
+        suppressor.close();
+        Assert.assertEquals(1, summaries.size());
+        Assert.assertEquals(0, suppressor.getActiveWindows());
+    }
+
+    private static Map<String, Integer> windows() {
+        Map<String, Integer> windows = new HashMap<String, Integer>();
+        windows.put("POLICY_CONTINUES_CRITICAL", 60);
+        windows.put("POLICY_CONTINUES_WARNING", 60);
+        windows.put("POLICY_UPGRADED", 10);
+        return windows;
+    }
+
+    private static ADSnmpData event(String incidentId, String eventType, String summary) {
+        ADSnmpData data = new ADSnmpData();
+        data.setAccountId("customer1");
+        data.setApplication("app");
+        data.setTriggeredBy("CPU utilization");
+        data.setIncidentId(incidentId);
+        data.setEventType(eventType);
+        data.setSummary(summary);
+        return data;
+    }
+}
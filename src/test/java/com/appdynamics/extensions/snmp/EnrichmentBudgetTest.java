@@ -0,0 +1,73 @@
+package com.appdynamics.extensions.snmp;
+
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+
+public class EnrichmentBudgetTest {
+
+    @Test
+    public void returnsLookupsCompletedInTime() {
+        EnrichmentBudget budget = new EnrichmentBudget(1000);
+        Assert.assertEquals("web", budget.await(budget.submit(constant("web")), "tier"));
+        Assert.assertFalse(budget.isPartial());
+    }
+
+    @Test
+    public void givesUpOnSlowLookupsAtTheDeadline() {
+        final CountDownLatch release = new CountDownLatch(1);
+        EnrichmentBudget budget = new EnrichmentBudget(100);
+        Future<String> slow = budget.submit(new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                release.await();
+                return "late";
+            }
+        });
+        long start = System.currentTimeMillis();
+        Assert.assertNull(budget.await(slow, "tier"));
+        Assert.assertTrue(System.currentTimeMillis() - start < 1000);
+        Assert.assertTrue(budget.isPartial());
+        Assert.assertTrue(budget.isExpired());
+        Assert.assertTrue(slow.isCancelled());
+        release.countDown();
+    }
+
+    @Test
+    public void marksFailedLookupsPartial() {
+        EnrichmentBudget budget = new EnrichmentBudget(0);
+        Future<String> failing = budget.submit(new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                throw new IllegalStateException("controller unavailable");
+            }
+        });
+        Assert.assertNull(budget.await(failing, "tier"));
+        Assert.assertTrue(budget.isPartial());
+        Assert.assertFalse(budget.isExpired());
+    }
+
+    @Test
+    public void skipsLookupsSubmittedAfterTheDeadline() throws Exception {
+        EnrichmentBudget budget = new EnrichmentBudget(1);
+        Thread.sleep(10);
+        Assert.assertTrue(budget.isExpired());
+        Future<String> skipped = budget.submit(constant("web"));
+        Assert.assertTrue(skipped.isDone());
+        Assert.assertNull(budget.await(skipped, "tier"));
+        Assert.assertTrue(budget.isPartial());
+    }
+
+    private static Callable<String> constant(final String value) {
+        return new Callable<String>() {
+            @Override
+            public String call() {
+                return value;
+            }
+        };
+    }
+}
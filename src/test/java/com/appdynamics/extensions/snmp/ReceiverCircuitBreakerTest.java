@@ -0,0 +1,118 @@
+package com.appdynamics.extensions.snmp;
+
+
+import com.appdynamics.extensions.snmp.config.Configuration;
+import com.appdynamics.extensions.snmp.config.Receiver;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class ReceiverCircuitBreakerTest {
+
+    private final AtomicReference<Boolean> reachable = new AtomicReference<Boolean>(Boolean.TRUE);
+    private final CountDownLatch probed = new CountDownLatch(1);
+    private final ReceiverCircuitBreaker breaker = new ReceiverCircuitBreaker(new ReceiverCircuitBreaker.Prober() {
+        @Override
+        public Boolean probe(Configuration config, Receiver receiver) {
+            probed.countDown();
+            return reachable.get();
+        }
+    });
+
+    @After
+    public void close() {
+        breaker.close();
+    }
+
+    @Test
+    public void opensAfterConsecutiveFailuresAndClosesOnceProbed() throws InterruptedException {
+        Configuration config = config(2);
+        Receiver dead = receiver(162);
+        Receiver healthy = receiver(1162);
+        breaker.recordFailure(config, dead);
+        Assert.assertTrue(breaker.allows(dead));
+        breaker.recordFailure(config, dead);
+        Assert.assertFalse(breaker.allows(dead));
+        Assert.assertTrue(breaker.allows(healthy));
+
+        Assert.assertTrue(probed.await(5, TimeUnit.SECONDS));
+        waitUntilAllowed(dead);
+    }
+
+    @Test
+    public void successResetsTheFailureCount() {
+        Configuration config = config(2);
+        Receiver receiver = receiver(162);
+        breaker.recordFailure(config, receiver);
+        breaker.recordSuccess(receiver);
+        breaker.recordFailure(config, receiver);
+        Assert.assertTrue(breaker.allows(receiver));
+    }
+
+    @Test
+    public void halfOpensWhenTheReceiverCanNotBeProbed() throws InterruptedException {
+        reachable.set(null);
+        Configuration config = config(3);
+        Receiver receiver = receiver(162);
+        for (int i = 0; i < 3; i++) {
+            breaker.recordFailure(config, receiver);
+        }
+        Assert.assertFalse(breaker.allows(receiver));
+        Assert.assertTrue(probed.await(5, TimeUnit.SECONDS));
+        waitUntilAllowed(receiver);
+        //the next failure opens the circuit again
+        breaker.recordFailure(config, receiver);
+        Assert.assertFalse(breaker.allows(receiver));
+    }
+
+    @Test
+    public void halfOpensAfterUnansweredProbes() throws InterruptedException {
+        reachable.set(Boolean.FALSE);
+        Configuration config = config(1);
+        Receiver receiver = receiver(162);
+        breaker.recordFailure(config, receiver);
+        Assert.assertFalse(breaker.allows(receiver));
+        //probes after 1, 2 and 4 seconds go unanswered, then the next trap decides
+        long deadline = System.currentTimeMillis() + 15000;
+        while (!breaker.allows(receiver) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertTrue(breaker.allows(receiver));
+        breaker.recordFailure(config, receiver);
+        Assert.assertFalse(breaker.allows(receiver));
+    }
+
+    @Test
+    public void backsOffExponentially() {
+        Configuration config = config(1);
+        Assert.assertEquals(1000, ReceiverCircuitBreaker.getBackoff(config, 1));
+        Assert.assertEquals(4000, ReceiverCircuitBreaker.getBackoff(config, 3));
+        Assert.assertEquals(TimeUnit.MINUTES.toMillis(5), ReceiverCircuitBreaker.getBackoff(config, 30));
+    }
+
+    private void waitUntilAllowed(Receiver receiver) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!breaker.allows(receiver) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertTrue(breaker.allows(receiver));
+    }
+
+    private static Configuration config(int failureThreshold) {
+        Configuration config = new Configuration();
+        config.setReceiverFailureThreshold(failureThreshold);
+        config.setReceiverBackoffInSeconds(1);
+        return config;
+    }
+
+    private static Receiver receiver(int port) {
+        Receiver receiver = new Receiver();
+        receiver.setHost("127.0.0.1");
+        receiver.setPort(port);
+        return receiver;
+    }
+}
@@ -0,0 +1,171 @@
+package com.appdynamics.extensions.snmp;
+
+
+import com.appdynamics.extensions.alerts.customevents.EvaluationEntity;
+import com.appdynamics.extensions.alerts.customevents.HealthRuleViolationEvent;
+import com.appdynamics.extensions.snmp.api.*;
+import com.appdynamics.extensions.snmp.config.Configuration;
+import com.appdynamics.extensions.snmp.config.ControllerConfig;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+public class SNMPDataBuilderTest {
+
+    private static final String NODES = "http://controller:8090/controller/rest/applications/7/nodes";
+
+    @Test
+    public void resolvesTiersAndNodesFromOneNodesRequest() {
+        TopologyService service = new TopologyService();
+        ADSnmpData data = new SNMPDataBuilder(config(), null, service).buildFromHealthRuleViolationEvent(event());
+        Assert.assertEquals(Arrays.asList(NODES), service.endpoints);
+        assertEnriched(data);
+    }
+
+    @Test
+    public void fetchesTheNodesWhenTheProviderHasNoTopology() {
+        TopologyService service = new TopologyService();
+        TopologyProvider empty = new TopologyProvider() {
+            @Override
+            public Topology getTopology(int appId) {
+                return null;
+            }
+        };
+        ADSnmpData data = new SNMPDataBuilder(config(), empty, service).buildFromHealthRuleViolationEvent(event());
+        Assert.assertEquals(Arrays.asList(NODES), service.endpoints);
+        assertEnriched(data);
+    }
+
+    @Test
+    public void looksUpTiersAndNodesOneByOneWhenTheNodesRequestFails() {
+        TopologyService service = new TopologyService();
+        service.failBulk = true;
+        ADSnmpData data = new SNMPDataBuilder(config(), null, service).buildFromHealthRuleViolationEvent(event());
+        Assert.assertEquals(3, service.endpoints.size());
+        Assert.assertTrue(service.endpoints.contains(NODES + "/node-2"));
+        assertEnriched(data);
+    }
+
+    @Test
+    public void resolvesFromTheTopologyAfterTheDeadline() {
+        TopologyService service = new TopologyService();
+        Configuration config = config();
+        config.setEnrichmentTimeoutInMillis(200);
+        HealthRuleViolationEvent event = event();
+        //the tier of the business transaction is looked up until the deadline, the nodes request completed before
+        event.setAffectedEntityType("BUSINESS_TRANSACTION");
+        event.setAffectedEntityID("5");
+        event.setEvaluationEntity(Arrays.asList(entity("APPLICATION_COMPONENT_NODE", "node-2")));
+        try {
+            ADSnmpData data = new SNMPDataBuilder(config, null, service).buildFromHealthRuleViolationEvent(event);
+            Assert.assertEquals(SNMPDataBuilder.PARTIAL_ENRICHMENT, data.getSubtype());
+            Assert.assertEquals("host-2", data.getMachines());
+            Assert.assertEquals("10.0.0.2", data.getIpAddresses());
+            Assert.assertEquals("db", data.getTiers());
+            Assert.assertEquals(Arrays.asList(NODES), service.endpoints);
+        } finally {
+            service.releaseBTs.countDown();
+        }
+    }
+
+    private static void assertEnriched(ADSnmpData data) {
+        Assert.assertEquals(" ", data.getSubtype());
+        Assert.assertEquals("host-1,host-2", data.getMachines());
+        Assert.assertEquals("10.0.0.1,10.0.0.2", data.getIpAddresses());
+        Assert.assertEquals(new HashSet<String>(Arrays.asList("web", "db")), new HashSet<String>(Arrays.asList(data.getTiers().split(","))));
+        Assert.assertEquals("node-2", data.getNodes());
+    }
+
+    private static Configuration config() {
+        ControllerConfig controller = new ControllerConfig();
+        controller.setHost("controller");
+        controller.setPort(8090);
+        Configuration config = new Configuration();
+        config.setController(controller);
+        config.setFetchMachineInfoFromApi(true);
+        config.setEnrichmentTimeoutInMillis(5000);
+        return config;
+    }
+
+    //a tier and a node of another tier are affected
+    private static HealthRuleViolationEvent event() {
+        HealthRuleViolationEvent event = new HealthRuleViolationEvent();
+        event.setAppName("app");
+        event.setAppID("7");
+        event.setHealthRuleName("CPU");
+        event.setAffectedEntityType("APPLICATION");
+        event.setAffectedEntityName("app");
+        event.setDeepLinkUrl("http://controller:8090/#location=APP_INCIDENT_DETAIL&incident=");
+        event.setIncidentID("1");
+        event.setEvaluationEntity(Arrays.asList(entity("APPLICATION_COMPONENT", "web"), entity("APPLICATION_COMPONENT_NODE", "node-2")));
+        return event;
+    }
+
+    private static EvaluationEntity entity(String type, String name) {
+        EvaluationEntity entity = new EvaluationEntity();
+        entity.setType(type);
+        entity.setName(name);
+        return entity;
+    }
+
+    private static Node node(String name, String tier, String machine, String ip) {
+        Node node = new Node();
+        node.setName(name);
+        node.setTierName(tier);
+        node.setMachineName(machine);
+        node.setIpAddresses(Arrays.asList(ip));
+        return node;
+    }
+
+    /**
+     * Controller of an application with a web and a db tier, recording the endpoints it was asked for.
+     */
+    private static class TopologyService implements IService {
+
+        final List<String> endpoints = Collections.synchronizedList(new ArrayList<String>());
+        volatile boolean failBulk;
+        final CountDownLatch releaseBTs = new CountDownLatch(1);
+
+        private final Node web = node("node-1", "web", "host-1", "10.0.0.1");
+        private final Node db = node("node-2", "db", "host-2", "10.0.0.2");
+
+        @Override
+        public List<BusinessTransaction> getBTs(HttpClientBuilder httpClientBuilder, String endpoint) throws ServiceException {
+            throw new UnsupportedOperationException(endpoint);
+        }
+
+        @Override
+        public void getBTs(HttpClientBuilder httpClientBuilder, String endpoint, BusinessTransactionHandler handler) throws ServiceException {
+            try {
+                releaseBTs.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            throw new ServiceException("controller unavailable", null);
+        }
+
+        @Override
+        public List<Node> getNodes(HttpClientBuilder httpClientBuilder, String endpoint) throws ServiceException {
+            endpoints.add(endpoint);
+            if (endpoint.equals(NODES)) {
+                if (failBulk) {
+                    throw new ServiceException("controller unavailable", null);
+                }
+                return Arrays.asList(web, db);
+            }
+            if (endpoint.endsWith("/tiers/web/nodes")) {
+                return Arrays.asList(web);
+            }
+            if (endpoint.endsWith("/nodes/node-2")) {
+                return Arrays.asList(db);
+            }
+            return Collections.emptyList();
+        }
+    }
+}
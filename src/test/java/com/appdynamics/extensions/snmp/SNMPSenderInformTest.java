@@ -0,0 +1,183 @@
+package com.appdynamics.extensions.snmp;
+
+
+import com.appdynamics.extensions.snmp.config.Configuration;
+import com.appdynamics.extensions.snmp.config.Receiver;
+import com.appdynamics.extensions.snmp.mib.AppdCtlrMib;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.snmp4j.CommandResponder;
+import org.snmp4j.CommandResponderEvent;
+import org.snmp4j.MessageException;
+import org.snmp4j.PDU;
+import org.snmp4j.Snmp;
+import org.snmp4j.mp.StatusInformation;
+import org.snmp4j.smi.UdpAddress;
+import org.snmp4j.transport.DefaultUdpTransportMapping;
+
+import java.io.IOException;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class SNMPSenderInformTest {
+
+    private final SNMPSender sender = new SNMPSender();
+    private final AtomicInteger informs = new AtomicInteger();
+    private int port;
+    private Snmp receiver;
+
+    @Before
+    public void startReceiver() throws IOException {
+        port = unusedPort();
+        receiver = listen(port, 0);
+    }
+
+    /**
+     * @return a receiver acknowledging INFORMs after the delay
+     */
+    private Snmp listen(int port, final long delayInMillis) throws IOException {
+        Snmp receiver = new Snmp(new DefaultUdpTransportMapping(new UdpAddress(InetAddress.getLoopbackAddress(), port)));
+        receiver.addCommandResponder(new CommandResponder() {
+            @Override
+            public void processPdu(CommandResponderEvent event) {
+                if (event.getPDU().getType() != PDU.INFORM) {
+                    return;
+                }
+                informs.incrementAndGet();
+                try {
+                    Thread.sleep(delayInMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                PDU response = (PDU) event.getPDU().clone();
+                response.setType(PDU.RESPONSE);
+                try {
+                    event.getMessageDispatcher().returnResponsePdu(event.getMessageProcessingModel(), event.getSecurityModel(),
+                            event.getSecurityName(), event.getSecurityLevel(), response, event.getMaxSizeResponsePDU(),
+                            event.getStateReference(), new StatusInformation());
+                } catch (MessageException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        });
+        receiver.listen();
+        return receiver;
+    }
+
+    @After
+    public void stop() throws IOException {
+        sender.close();
+        receiver.close();
+    }
+
+    @Test
+    public void succeedsOnceTheReceiverAcknowledged() {
+        Configuration config = config(receiver(port));
+        sender.sendTrap(config, data(), AppdCtlrMib.V1_EVENT);
+        Assert.assertEquals(1, informs.get());
+    }
+
+    @Test
+    public void reportsReceiversThatDidNotAcknowledge() throws IOException {
+        Receiver acknowledging = receiver(port);
+        Receiver silent = receiver(unusedPort());
+        try {
+            sender.sendTrap(config(acknowledging, silent), data(), AppdCtlrMib.V1_EVENT);
+            Assert.fail("the silent receiver did not acknowledge");
+        } catch (SNMPTrapException e) {
+            Assert.assertEquals(1, e.getFailedReceivers().size());
+            Assert.assertSame(silent, e.getFailedReceivers().get(0));
+        }
+        Assert.assertEquals(1, informs.get());
+    }
+
+    @Test
+    public void slowReceiversDoNotHoldUpTheEvent() throws IOException {
+        int slowPort = unusedPort();
+        Snmp slowReceiver = listen(slowPort, 3000);
+        try {
+            Receiver fast = receiver(port);
+            Receiver slow = receiver(slowPort);
+            Configuration config = config(slow, fast);
+            config.setReceiverTimeoutInMillis(5000);
+            config.setInformRetries(0);
+            config.setSendTimeoutInMillis(1000);
+            long start = System.currentTimeMillis();
+            try {
+                sender.sendTrap(config, data(), AppdCtlrMib.V1_EVENT);
+                Assert.fail("the slow receiver did not acknowledge within the event deadline");
+            } catch (SNMPTrapException e) {
+                Assert.assertEquals(1, e.getFailedReceivers().size());
+                Assert.assertSame(slow, e.getFailedReceivers().get(0));
+            }
+            //the event deadline, not the slow receiver's timeout
+            Assert.assertTrue(System.currentTimeMillis() - start < config.getSendTimeoutInMillis() + 250);
+            Assert.assertEquals(2, informs.get());
+        } finally {
+            slowReceiver.close();
+        }
+    }
+
+    @Test
+    public void doesNotWaitForPacedTraps() throws Exception {
+        Receiver paced = receiver(port);
+        paced.setMaxTrapsPerSecond(2);
+        paced.setBurst(1);
+        Configuration config = config(paced);
+        long start = System.currentTimeMillis();
+        List<SNMPSender.Delivery> deliveries = new ArrayList<SNMPSender.Delivery>();
+        for (int i = 0; i < 3; i++) {
+            SNMPSender.Delivery delivery = sender.dispatchTrap(config, data(), AppdCtlrMib.V1_EVENT, Arrays.asList(paced));
+            delivery.throwIfFailed();
+            deliveries.add(delivery);
+        }
+        //the second and third trap wait for the pacing, 500 ms apart
+        Assert.assertTrue(System.currentTimeMillis() - start < 400);
+        for (SNMPSender.Delivery delivery : deliveries) {
+            Assert.assertTrue(delivery.getPaced().get(5, TimeUnit.SECONDS).isEmpty());
+        }
+        Assert.assertEquals(3, informs.get());
+    }
+
+    private static Configuration config(Receiver... receivers) {
+        Configuration config = new Configuration();
+        config.setReceivers(receivers);
+        config.setSnmpVersion(SNMPSender.SNMP_V2);
+        config.setCommunity("public");
+        config.setSenderHost("127.0.0.1");
+        config.setUseInform(true);
+        config.setReceiverTimeoutInMillis(500);
+        config.setSendTimeoutInMillis(2000);
+        return config;
+    }
+
+    private static ADSnmpData data() {
+        ADSnmpData data = new ADSnmpData();
+        data.setApplication("app");
+        data.setSummary("CPU utilization is too high");
+        return data;
+    }
+
+    private static Receiver receiver(int port) {
+        Receiver receiver = new Receiver();
+        receiver.setHost("127.0.0.1");
+        receiver.setPort(port);
+        return receiver;
+    }
+
+    private static int unusedPort() throws IOException {
+        DatagramSocket socket = new DatagramSocket(0, InetAddress.getLoopbackAddress());
+        try {
+            return socket.getLocalPort();
+        } finally {
+            socket.close();
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package com.appdynamics.extensions.snmp;
+
+
+import com.appdynamics.extensions.snmp.config.Configuration;
+import com.appdynamics.extensions.snmp.config.Receiver;
+import com.appdynamics.extensions.snmp.mib.AppdCtlrMib;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.snmp4j.CommandResponder;
+import org.snmp4j.CommandResponderEvent;
+import org.snmp4j.PDU;
+import org.snmp4j.PDUv1;
+import org.snmp4j.Snmp;
+import org.snmp4j.asn1.BEROutputStream;
+import org.snmp4j.mp.SnmpConstants;
+import org.snmp4j.smi.IpAddress;
+import org.snmp4j.smi.OctetString;
+import org.snmp4j.smi.UdpAddress;
+import org.snmp4j.smi.VariableBinding;
+import org.snmp4j.transport.DefaultUdpTransportMapping;
+
+import java.io.IOException;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Unconfirmed v1 and v2c traps, which are encoded once and written to every receiver.
+ */
+public class SNMPSenderTrapTest {
+
+    private final SNMPSender sender = new SNMPSender();
+    private final List<TrapReceiver> receivers = new ArrayList<TrapReceiver>();
+
+    @Before
+    public void startReceivers() throws IOException {
+        receivers.add(new TrapReceiver());
+        receivers.add(new TrapReceiver());
+    }
+
+    @After
+    public void stop() throws IOException {
+        sender.close();
+        for (TrapReceiver receiver : receivers) {
+            receiver.close();
+        }
+    }
+
+    @Test
+    public void sendsTheSameV2cTrapToEveryReceiver() throws Exception {
+        ADSnmpData data = data();
+        sender.sendTrap(config(SNMPSender.SNMP_V2), data, AppdCtlrMib.V1_EVENT);
+        List<byte[]> received = new ArrayList<byte[]>();
+        for (TrapReceiver receiver : receivers) {
+            CommandResponderEvent event = receiver.take();
+            Assert.assertEquals(SnmpConstants.version2c, event.getMessageProcessingModel());
+            Assert.assertEquals(new OctetString("public"), new OctetString(event.getSecurityName()));
+            PDU pdu = event.getPDU();
+            Assert.assertEquals(PDU.NOTIFICATION, pdu.getType());
+            Assert.assertEquals(SnmpConstants.sysUpTime, pdu.get(0).getOid());
+            Assert.assertEquals(expectedBindings(data), bindingsAfterUptime(pdu));
+            received.add(encode(pdu));
+        }
+        //encoded once, so both receivers got the same message
+        Assert.assertArrayEquals(received.get(0), received.get(1));
+    }
+
+    @Test
+    public void sendsTheSameV1TrapToEveryReceiver() throws Exception {
+        ADSnmpData data = data();
+        sender.sendTrap(config(SNMPSender.SNMP_V1), data, AppdCtlrMib.V1_EVENT);
+        List<byte[]> received = new ArrayList<byte[]>();
+        for (TrapReceiver receiver : receivers) {
+            CommandResponderEvent event = receiver.take();
+            Assert.assertEquals(SnmpConstants.version1, event.getMessageProcessingModel());
+            PDUv1 pdu = (PDUv1) event.getPDU();
+            Assert.assertEquals(PDU.V1TRAP, pdu.getType());
+            Assert.assertEquals(AppdCtlrMib.V1_EVENT, pdu.getEnterprise());
+            Assert.assertEquals(PDUv1.ENTERPRISE_SPECIFIC, pdu.getGenericTrap());
+            Assert.assertEquals(1, pdu.getSpecificTrap());
+            Assert.assertEquals(new IpAddress("127.0.0.1"), pdu.getAgentAddress());
+            Assert.assertEquals(expectedBindings(data), bindingsAfterUptime(pdu));
+            received.add(encode(pdu));
+        }
+        Assert.assertArrayEquals(received.get(0), received.get(1));
+    }
+
+    private static byte[] encode(PDU pdu) throws IOException {
+        BEROutputStream out = new BEROutputStream(ByteBuffer.allocate(pdu.getBERLength()));
+        pdu.encodeBER(out);
+        return out.getBuffer().array();
+    }
+
+    //sysUpTime differs between the expected and the sent trap
+    private static List<VariableBinding> expectedBindings(ADSnmpData data) {
+        PDU expected = new PDU();
+        expected.add(new VariableBinding(SnmpConstants.snmpTrapOID, AppdCtlrMib.V1_EVENT));
+        expected.add(new VariableBinding(SnmpConstants.snmpTrapAddress, new IpAddress("127.0.0.1")));
+        ADSnmpDataSchema.addVariableBindings(expected, data);
+        return new ArrayList<VariableBinding>(expected.getVariableBindings());
+    }
+
+    private static List<VariableBinding> bindingsAfterUptime(PDU pdu) {
+        List<? extends VariableBinding> bindings = pdu.getVariableBindings();
+        return new ArrayList<VariableBinding>(bindings.subList(1, bindings.size()));
+    }
+
+    private Configuration config(int version) {
+        Receiver[] configured = new Receiver[receivers.size()];
+        for (int i = 0; i < configured.length; i++) {
+            configured[i] = new Receiver();
+            configured[i].setHost("127.0.0.1");
+            configured[i].setPort(receivers.get(i).port);
+        }
+        Configuration config = new Configuration();
+        config.setReceivers(configured);
+        config.setSnmpVersion(version);
+        config.setCommunity("public");
+        config.setSenderHost("127.0.0.1");
+        config.setReceiverTimeoutInMillis(500);
+        config.setSendTimeoutInMillis(2000);
+        return config;
+    }
+
+    private static ADSnmpData data() {
+        ADSnmpData data = new ADSnmpData();
+        data.setApplication("app");
+        data.setTiers("web");
+        data.setMachines("host-1");
+        data.setIpAddresses("10.0.0.1");
+        data.setSeverity("ERROR");
+        data.setSummary("CPU utilization is too high");
+        return data;
+    }
+
+    /**
+     * Loopback receiver queueing the traps it got.
+     */
+    private static class TrapReceiver {
+
+        private final int port;
+        private final Snmp snmp;
+        private final LinkedBlockingQueue<CommandResponderEvent> traps = new LinkedBlockingQueue<CommandResponderEvent>();
+
+        TrapReceiver() throws IOException {
+            port = unusedPort();
+            snmp = new Snmp(new DefaultUdpTransportMapping(new UdpAddress(InetAddress.getLoopbackAddress(), port)));
+            snmp.addCommandResponder(new CommandResponder() {
+                @Override
+                public void processPdu(CommandResponderEvent event) {
+                    traps.add(event);
+                }
+            });
+            snmp.listen();
+        }
+
+        CommandResponderEvent take() throws InterruptedException {
+            CommandResponderEvent event = traps.poll(2, TimeUnit.SECONDS);
+            Assert.assertNotNull("no trap received on port " + port, event);
+            return event;
+        }
+
+        void close() throws IOException {
+            snmp.close();
+        }
+    }
+
+    private static int unusedPort() throws IOException {
+        DatagramSocket socket = new DatagramSocket(0, InetAddress.getLoopbackAddress());
+        try {
+            return socket.getLocalPort();
+        } finally {
+            socket.close();
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.appdynamics.extensions.snmp;
+
+
+import com.appdynamics.extensions.snmp.config.EngineProperties;
+import com.appdynamics.extensions.snmp.config.SnmpV3Configuration;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.snmp4j.Snmp;
+import org.snmp4j.TransportMapping;
+
+import java.io.IOException;
+
+public class SnmpSessionPoolTest {
+
+    private final SnmpSessionPool pool = new SnmpSessionPool();
+
+    @After
+    public void close() {
+        pool.close();
+    }
+
+    @Test
+    public void sharesOneSessionPerVersion() throws IOException {
+        Snmp v1 = pool.getCommunitySession(SNMPSender.SNMP_V1);
+        Assert.assertSame(v1, pool.getCommunitySession(SNMPSender.SNMP_V1));
+        Assert.assertNotSame(v1, pool.getCommunitySession(SNMPSender.SNMP_V2));
+    }
+
+    @Test
+    public void sharesOneSessionPerUser() throws IOException {
+        EngineProperties engineProperties = new EngineProperties("engine.properties");
+        Snmp session = pool.getUserSession(user("alice", "secret-1"), engineProperties);
+        Assert.assertSame(session, pool.getUserSession(user("alice", "secret-1"), engineProperties));
+        Assert.assertNotSame(session, pool.getUserSession(user("bob", "secret-1"), engineProperties));
+        //a changed password needs a new USM user
+        Assert.assertNotSame(session, pool.getUserSession(user("alice", "secret-2"), engineProperties));
+    }
+
+    @Test
+    public void keysDoNotContainPasswords() {
+        String key = SnmpSessionPool.userKey(user("alice", "secret-1"));
+        Assert.assertFalse(key.contains("secret"));
+        Assert.assertEquals(key, SnmpSessionPool.userKey(user("alice", "secret-1")));
+        Assert.assertFalse(key.equals(SnmpSessionPool.userKey(user("alice", "secret-2"))));
+    }
+
+    @Test
+    @SuppressWarnings("rawtypes")
+    public void closeReleasesTheSessions() throws IOException {
+        Snmp session = pool.getCommunitySession(SNMPSender.SNMP_V2);
+        TransportMapping transport = (TransportMapping) session.getMessageDispatcher().getTransportMappings().iterator().next();
+        Assert.assertTrue(transport.isListening());
+        pool.close();
+        Assert.assertFalse(transport.isListening());
+        //the pool opens new sessions on demand
+        Assert.assertNotSame(session, pool.getCommunitySession(SNMPSender.SNMP_V2));
+    }
+
+    private static SnmpV3Configuration user(String username, String password) {
+        SnmpV3Configuration config = new SnmpV3Configuration();
+        config.setSecurityLevel(3);
+        config.setUsername(username);
+        config.setAuthProtocol("SHA");
+        config.setPassword(password);
+        config.setPrivProtocol("AES128");
+        config.setPrivProtocolPassword("private-" + password);
+        return config;
+    }
+}
@@ -0,0 +1,155 @@
+package com.appdynamics.extensions.snmp;
+
+
+import com.appdynamics.extensions.snmp.config.Receiver;
+import com.appdynamics.extensions.snmp.mib.AppdCtlrMib;
+import com.google.common.io.Files;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.List;
+
+public class TrapJournalTest {
+
+    private File dir;
+
+    @Before
+    public void createDir() {
+        dir = Files.createTempDir();
+    }
+
+    @After
+    public void deleteDir() {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    @Test
+    public void adoptsThePendingTrapsOfAClosedJournal() throws IOException {
+        TrapJournal journal = TrapJournal.open(dir, 4096);
+        TrapJournal.Entry sent = journal.append(trap("sent", receiver("10.0.0.1", 162)));
+        journal.append(trap("pending", receiver("10.0.0.2", 1162)));
+        journal.complete(sent);
+        Assert.assertEquals(1, journal.getPending());
+        journal.close();
+
+        TrapJournal next = TrapJournal.open(dir, 4096);
+        List<SpooledTrap> adopted = next.adoptOrphans();
+        Assert.assertEquals(1, adopted.size());
+        SpooledTrap trap = adopted.get(0);
+        Assert.assertEquals("pending", trap.getSnmpData().getApplication());
+        Assert.assertNull(trap.getSnmpData().getTiers());
+        Assert.assertEquals(AppdCtlrMib.V1_EVENT, trap.getTrapOid());
+        Assert.assertEquals("10.0.0.2", trap.getReceivers().get(0).getHost());
+        Assert.assertEquals(1162, trap.getReceivers().get(0).getPort());
+        //adopted segments are gone
+        Assert.assertTrue(next.adoptOrphans().isEmpty());
+        next.close();
+    }
+
+    @Test
+    public void doesNotAdoptSegmentsInUse() throws IOException {
+        TrapJournal journal = TrapJournal.open(dir, 4096);
+        journal.append(trap("pending", receiver("10.0.0.1", 162)));
+        Assert.assertTrue(TrapJournal.open(dir, 4096).adoptOrphans().isEmpty());
+        journal.close();
+    }
+
+    @Test
+    public void namesSegmentsOnceTheyHaveTheirHeader() throws IOException {
+        TrapJournal journal = TrapJournal.open(dir, 4096);
+        journal.append(trap("pending", receiver("10.0.0.1", 162)));
+        File[] files = dir.listFiles();
+        Assert.assertEquals(1, files.length);
+        Assert.assertTrue(files[0].getName().endsWith(TrapJournal.SUFFIX));
+        journal.close();
+    }
+
+    @Test
+    public void leavesSegmentsBeingCreatedAlone() throws IOException {
+        //another process created the file but did not lock it and write its header yet
+        File creating = File.createTempFile("traps-", TrapJournal.PARTIAL_SUFFIX, dir);
+        Assert.assertTrue(TrapJournal.open(dir, 4096).adoptOrphans().isEmpty());
+        Assert.assertTrue(creating.exists());
+        //left over by a process that died while creating it
+        Assert.assertTrue(creating.setLastModified(System.currentTimeMillis() - 120000));
+        Assert.assertTrue(TrapJournal.open(dir, 4096).adoptOrphans().isEmpty());
+        Assert.assertFalse(creating.exists());
+    }
+
+    @Test
+    public void rotatesFullSegmentsAndDeletesCompletedOnes() throws IOException {
+        TrapJournal journal = TrapJournal.open(dir, 1024);
+        TrapJournal.Entry first = journal.append(trap("first", receiver("10.0.0.1", 162)));
+        TrapJournal.Entry last = first;
+        for (int i = 0; i < 10; i++) {
+            last = journal.append(trap("app" + i, receiver("10.0.0.1", 162)));
+        }
+        int segments = dir.listFiles().length;
+        Assert.assertTrue(segments > 1);
+        journal.complete(first);
+        Assert.assertEquals(10, journal.getPending());
+        journal.complete(last);
+        Assert.assertEquals(9, journal.getPending());
+        journal.close();
+        Assert.assertEquals(9, TrapJournal.open(dir, 1024).adoptOrphans().size());
+    }
+
+    @Test
+    public void stopsAtATornRecord() throws IOException {
+        TrapJournal journal = TrapJournal.open(dir, 4096);
+        journal.append(trap("first", receiver("10.0.0.1", 162)));
+        journal.append(trap("torn", receiver("10.0.0.1", 162)));
+        journal.close();
+        File segment = dir.listFiles()[0];
+        RandomAccessFile raf = new RandomAccessFile(segment, "rw");
+        try {
+            //corrupt the last byte of the second record
+            long offset = 8;
+            raf.seek(offset);
+            offset += 9 + raf.readInt();
+            raf.seek(offset);
+            long end = offset + 9 + raf.readInt() - 1;
+            raf.seek(end);
+            byte last = raf.readByte();
+            raf.seek(end);
+            raf.writeByte(last ^ 0xFF);
+        } finally {
+            raf.close();
+        }
+        List<SpooledTrap> adopted = TrapJournal.open(dir, 4096).adoptOrphans();
+        Assert.assertEquals(1, adopted.size());
+        Assert.assertEquals("first", adopted.get(0).getSnmpData().getApplication());
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsTrapsLargerThanASegment() throws IOException {
+        TrapJournal.open(dir, 64).append(trap("app", receiver("10.0.0.1", 162)));
+    }
+
+    private static SpooledTrap trap(String application, Receiver receiver) {
+        ADSnmpData data = new ADSnmpData();
+        data.setApplication(application);
+        data.setTriggeredBy("CPU utilization");
+        long now = System.currentTimeMillis();
+        return new SpooledTrap(now, 0, now, AppdCtlrMib.V1_EVENT, Arrays.asList(receiver), data);
+    }
+
+    private static Receiver receiver(String host, int port) {
+        Receiver receiver = new Receiver();
+        receiver.setHost(host);
+        receiver.setPort(port);
+        return receiver;
+    }
+}
@@ -0,0 +1,84 @@
+package com.appdynamics.extensions.snmp;
+
+
+import com.appdynamics.extensions.snmp.config.Receiver;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TrapShaperTest {
+
+    private final TrapShaper shaper = new TrapShaper();
+    private final AtomicInteger started = new AtomicInteger();
+    private final TrapShaper.Dispatch dispatch = new TrapShaper.Dispatch() {
+        @Override
+        public ListenableFuture<Void> start() {
+            started.incrementAndGet();
+            return Futures.immediateFuture(null);
+        }
+    };
+
+    @After
+    public void close() {
+        shaper.close();
+    }
+
+    @Test
+    public void sendsUnlimitedReceiversRightAway() {
+        for (int i = 0; i < 100; i++) {
+            Assert.assertTrue(shaper.submit(receiver(0, 0, 0), dispatch).isDone());
+        }
+        Assert.assertEquals(100, started.get());
+    }
+
+    @Test
+    public void pacesTheTrapsBeyondTheBurst() throws InterruptedException, ExecutionException, TimeoutException {
+        Receiver receiver = receiver(10, 2, 3);
+        long start = System.nanoTime();
+        List<ListenableFuture<Void>> sends = new ArrayList<ListenableFuture<Void>>();
+        for (int i = 0; i < 5; i++) {
+            sends.add(shaper.submit(receiver, dispatch));
+        }
+        //the burst goes out right away
+        Assert.assertEquals(2, started.get());
+        Assert.assertNull("the queue is full", shaper.submit(receiver, dispatch));
+        for (ListenableFuture<Void> send : sends) {
+            send.get(5, TimeUnit.SECONDS);
+        }
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        Assert.assertTrue("paced at 10/s, took " + elapsed + " ms", elapsed >= 250);
+        Assert.assertEquals(5, started.get());
+        Assert.assertEquals(3, shaper.getShaped(receiver));
+        Assert.assertEquals(1, shaper.getDropped(receiver));
+    }
+
+    @Test
+    public void skipsTrapsTheSenderGaveUpOn() throws InterruptedException, ExecutionException, TimeoutException {
+        Receiver receiver = receiver(10, 1, 10);
+        shaper.submit(receiver, dispatch);
+        ListenableFuture<Void> abandoned = shaper.submit(receiver, dispatch);
+        ListenableFuture<Void> next = shaper.submit(receiver, dispatch);
+        abandoned.cancel(true);
+        next.get(5, TimeUnit.SECONDS);
+        Assert.assertEquals(2, started.get());
+    }
+
+    private static Receiver receiver(int maxTrapsPerSecond, int burst, int queueSize) {
+        Receiver receiver = new Receiver();
+        receiver.setHost("127.0.0.1");
+        receiver.setPort(162);
+        receiver.setMaxTrapsPerSecond(maxTrapsPerSecond);
+        receiver.setBurst(burst);
+        receiver.setQueueSize(queueSize);
+        return receiver;
+    }
+}
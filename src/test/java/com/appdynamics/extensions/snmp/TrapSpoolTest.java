@@ -0,0 +1,190 @@
+package com.appdynamics.extensions.snmp;
+
+
+import com.appdynamics.extensions.snmp.config.Configuration;
+import com.appdynamics.extensions.snmp.config.Receiver;
+import com.appdynamics.extensions.snmp.mib.AppdCtlrMib;
+import com.google.common.io.Files;
+import com.google.common.util.concurrent.ListenableFuture;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.snmp4j.smi.OID;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TrapSpoolTest {
+
+    private final Receiver up = receiver(162);
+    private final Receiver down = receiver(1162);
+    private final FakeSender sender = new FakeSender();
+    private final List<TrapSpool> spools = new ArrayList<TrapSpool>();
+    private File dir;
+
+    @Before
+    public void createDir() {
+        dir = Files.createTempDir();
+    }
+
+    @After
+    public void deleteDir() {
+        for (TrapSpool spool : spools) {
+            spool.close();
+        }
+        sender.close();
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    @Test
+    public void resendsToTheFailedReceiversUntilTheyGotTheTrap() throws Exception {
+        sender.failures(down, 2);
+        TrapSpool spool = open(config(5, up, down));
+        try {
+            spool.sendTrap(data(), AppdCtlrMib.V1_EVENT);
+            Assert.fail("the receiver is down");
+        } catch (SNMPTrapException e) {
+            Assert.assertEquals(Arrays.asList(down), e.getFailedReceivers());
+        }
+        awaitPending(spool, 0);
+        Assert.assertEquals(1, sender.sends(up));
+        Assert.assertEquals(3, sender.sends(down));
+    }
+
+    @Test
+    public void givesUpAfterSpoolMaxAttempts() throws Exception {
+        sender.failures(down, Integer.MAX_VALUE);
+        TrapSpool spool = open(config(3, down));
+        try {
+            spool.sendTrap(data(), AppdCtlrMib.V1_EVENT);
+            Assert.fail("the receiver is down");
+        } catch (SNMPTrapException expected) {
+        }
+        awaitPending(spool, 0);
+        Thread.sleep(100);
+        Assert.assertEquals(3, sender.sends(down));
+    }
+
+    @Test
+    public void adoptsTheTrapsOfAnEarlierProcessOnceTheyAreDue() throws Exception {
+        long now = System.currentTimeMillis();
+        TrapJournal earlier = TrapJournal.open(dir, 4096);
+        earlier.append(new SpooledTrap(now, 1, now, AppdCtlrMib.V1_EVENT, Arrays.asList(receiver(up.getPort())), data()));
+        earlier.append(new SpooledTrap(now, 1, now + TimeUnit.HOURS.toMillis(1), AppdCtlrMib.V1_EVENT, Arrays.asList(receiver(down.getPort())), data()));
+        earlier.close();
+
+        TrapSpool spool = open(config(5, up, down));
+        awaitPending(spool, 1);
+        Assert.assertEquals(1, sender.sends(up));
+        //the backoff of the earlier process still holds
+        Assert.assertEquals(0, sender.sends(down));
+    }
+
+    @Test
+    public void dropsAdoptedTrapsThatAreTooOldOrForRemovedReceivers() throws Exception {
+        long now = System.currentTimeMillis();
+        long dayAgo = now - TimeUnit.DAYS.toMillis(1);
+        TrapJournal earlier = TrapJournal.open(dir, 4096);
+        earlier.append(new SpooledTrap(dayAgo, 1, now, AppdCtlrMib.V1_EVENT, Arrays.asList(receiver(up.getPort())), data()));
+        earlier.append(new SpooledTrap(now, 1, now, AppdCtlrMib.V1_EVENT, Arrays.asList(receiver(2162)), data()));
+        earlier.close();
+
+        Configuration config = config(5, up);
+        config.setSpoolMaxAgeInMinutes(60);
+        TrapSpool spool = open(config);
+        awaitPending(spool, 0);
+        Assert.assertEquals(0, sender.sends(up));
+        Assert.assertTrue(sender.sent.isEmpty());
+    }
+
+    private TrapSpool open(Configuration config) throws IOException {
+        TrapSpool spool = new TrapSpool(config, sender, TrapJournal.open(dir, 4096));
+        spools.add(spool);
+        spool.start();
+        return spool;
+    }
+
+    private static void awaitPending(TrapSpool spool, int pending) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (spool.getPending() != pending && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(pending, spool.getPending());
+    }
+
+    private static Configuration config(int maxAttempts, Receiver... receivers) {
+        Configuration config = new Configuration();
+        config.setReceivers(receivers);
+        config.setSpoolMaxAttempts(maxAttempts);
+        //retried right away
+        config.setSpoolRetryIntervalInSeconds(0);
+        return config;
+    }
+
+    private static ADSnmpData data() {
+        ADSnmpData data = new ADSnmpData();
+        data.setApplication("app");
+        data.setSummary("CPU utilization is too high");
+        return data;
+    }
+
+    private static Receiver receiver(int port) {
+        Receiver receiver = new Receiver();
+        receiver.setHost("127.0.0.1");
+        receiver.setPort(port);
+        return receiver;
+    }
+
+    /**
+     * Records the receivers it was asked to send to and fails the first sends to the receivers it is told to.
+     */
+    private static class FakeSender extends SNMPSender {
+
+        final List<Integer> sent = new CopyOnWriteArrayList<Integer>();
+        private final ConcurrentMap<Integer, AtomicInteger> failures = new ConcurrentHashMap<Integer, AtomicInteger>();
+
+        void failures(Receiver receiver, int count) {
+            failures.put(receiver.getPort(), new AtomicInteger(count));
+        }
+
+        int sends(Receiver receiver) {
+            return Collections.frequency(sent, receiver.getPort());
+        }
+
+        @Override
+        Delivery dispatchTrap(Configuration config, ADSnmpData snmpData, OID trapOid, List<Receiver> receivers) {
+            List<String> errors = new ArrayList<String>();
+            List<Receiver> failed = new ArrayList<Receiver>();
+            for (Receiver receiver : receivers) {
+                sent.add(receiver.getPort());
+                AtomicInteger remaining = failures.get(receiver.getPort());
+                if (remaining != null && remaining.getAndDecrement() > 0) {
+                    errors.add(receiver.getHost() + ":" + receiver.getPort() + " is down");
+                    failed.add(receiver);
+                }
+            }
+            return new Delivery(errors, failed, Collections.<ListenableFuture<Receiver>>emptyList());
+        }
+
+        @Override
+        public void sendTrap(Configuration config, ADSnmpData snmpData, OID trapOid, List<Receiver> receivers) {
+            dispatchTrap(config, snmpData, trapOid, receivers).throwIfFailed();
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.appdynamics.extensions.snmp.daemon;
+
+
+import com.appdynamics.extensions.EventArgs;
+import com.appdynamics.extensions.alerts.customevents.Event;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class AlertDaemonTest {
+
+    private static final int EVENTS = 10;
+
+    @Test
+    public void leaderProcessesTheEventsOfItsFollowersBeforeLeaving() throws Exception {
+        final AtomicInteger processed = new AtomicInteger();
+        final AlertDaemon leader = AlertDaemon.bind(0, 1, 100, new AlertDaemon.Processor() {
+            @Override
+            public boolean process(Event event) {
+                try {
+                    //the events take longer to process than the idle window
+                    Thread.sleep(100);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                processed.incrementAndGet();
+                return true;
+            }
+        });
+        final AtomicInteger processedWhenLeft = new AtomicInteger(-1);
+        Thread serving = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                leader.serve(200);
+                processedWhenLeft.set(processed.get());
+            }
+        });
+        ExecutorService followers = Executors.newFixedThreadPool(4);
+        try {
+            //a second invocation loses the election and becomes a follower
+            try {
+                AlertDaemon.bind(leader.getPort(), 1, false).stop();
+                Assert.fail("the port is taken by the leader");
+            } catch (IOException expected) {
+            }
+            serving.start();
+            final String[] args = new EventArgs().getHealthRuleViolationEventWithOneEvalEntityAndTriggerNoBaseline();
+            List<Future<Boolean>> acks = new ArrayList<Future<Boolean>>();
+            for (int i = 0; i < EVENTS; i++) {
+                acks.add(followers.submit(new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() {
+                        return new AlertForwarder(leader.getPort()).forward(args);
+                    }
+                }));
+            }
+            for (Future<Boolean> ack : acks) {
+                Assert.assertTrue(ack.get(10, TimeUnit.SECONDS));
+            }
+            serving.join(10000);
+            Assert.assertFalse(serving.isAlive());
+            Assert.assertEquals(EVENTS, processedWhenLeft.get());
+        } finally {
+            followers.shutdownNow();
+            leader.stop();
+        }
+    }
+
+    @Test
+    public void rejectsArgumentsThatAreNotAnEvent() throws Exception {
+        final AtomicInteger processed = new AtomicInteger();
+        AlertDaemon daemon = AlertDaemon.bind(0, 1, 100, new AlertDaemon.Processor() {
+            @Override
+            public boolean process(Event event) {
+                processed.incrementAndGet();
+                return true;
+            }
+        });
+        try {
+            //the invocation then has to report the event itself
+            Assert.assertFalse(daemon.submit(new String[0]));
+        } finally {
+            daemon.stop();
+        }
+        Assert.assertEquals(0, processed.get());
+    }
+}
@@ -0,0 +1,39 @@
+package com.appdynamics.extensions.snmp.daemon;
+
+
+import com.appdynamics.extensions.EventArgs;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.*;
+
+public class AlertProtocolTest {
+
+    @Test
+    public void canRoundTripArguments() throws IOException {
+        String[] args = new EventArgs().getHealthRuleViolationEventWithMultipleEvalEntityAndATriggerNoBaseline();
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        AlertProtocol.writeArgs(new DataOutputStream(bos), args);
+        String[] read = AlertProtocol.readArgs(new DataInputStream(new ByteArrayInputStream(bos.toByteArray())));
+        Assert.assertArrayEquals(args, read);
+    }
+
+    @Test
+    public void readsTheRequestsOfTheShellScript() throws IOException {
+        String[] args = new EventArgs().getHealthRuleViolationEventWithMultipleEvalEntityAndATriggerNoBaseline();
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        bos.write(("ARGV" + args.length + "\0").getBytes("UTF-8"));
+        for (String arg : args) {
+            bos.write((arg + "\0").getBytes("UTF-8"));
+        }
+        String[] read = AlertProtocol.readArgs(new DataInputStream(new ByteArrayInputStream(bos.toByteArray())));
+        Assert.assertArrayEquals(args, read);
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsUnknownHeader() throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        new DataOutputStream(bos).writeInt(42);
+        AlertProtocol.readArgs(new DataInputStream(new ByteArrayInputStream(bos.toByteArray())));
+    }
+}
@@ -0,0 +1,106 @@
+package com.appdynamics.extensions.snmp.daemon;
+
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class DispatchQueueTest {
+
+    @Test
+    public void takesTheMostUrgentEventFirst() {
+        DispatchQueue<String> queue = new DispatchQueue<String>(10);
+        queue.offer("info-1", null, EventPriority.LOW, false);
+        queue.offer("info-2", null, EventPriority.LOW, false);
+        queue.offer("warn", null, EventPriority.NORMAL, false);
+        queue.offer("critical", null, EventPriority.CRITICAL, false);
+        Assert.assertEquals("critical", queue.poll());
+        Assert.assertEquals("warn", queue.poll());
+        Assert.assertEquals("info-1", queue.poll());
+        Assert.assertEquals("info-2", queue.poll());
+        Assert.assertNull(queue.poll());
+    }
+
+    @Test
+    public void shedsTheLeastUrgentEventsWhenFull() {
+        DispatchQueue<String> queue = new DispatchQueue<String>(3);
+        Assert.assertNull(queue.offer("info-1", null, EventPriority.LOW, false));
+        Assert.assertNull(queue.offer("info-2", null, EventPriority.LOW, false));
+        Assert.assertNull(queue.offer("warning", null, EventPriority.HIGH, false));
+        //the oldest informational event makes room
+        Assert.assertEquals("info-1", queue.offer("critical", null, EventPriority.CRITICAL, false));
+        //nothing less urgent is queued
+        Assert.assertEquals("info-3", queue.offer("info-3", null, EventPriority.LOW, false));
+        Assert.assertEquals("info-2", queue.offer("warn", null, EventPriority.NORMAL, false));
+        Assert.assertEquals("warn", queue.offer("error", null, EventPriority.HIGH, false));
+        Assert.assertEquals(3, queue.size());
+        Assert.assertEquals(3, queue.getShed(EventPriority.LOW));
+        Assert.assertEquals(1, queue.getShed(EventPriority.NORMAL));
+        Assert.assertEquals(0, queue.getShed(EventPriority.CRITICAL));
+        Assert.assertEquals(4, queue.getShed());
+        Assert.assertEquals("critical", queue.poll());
+        Assert.assertEquals("warning", queue.poll());
+        Assert.assertEquals("error", queue.poll());
+    }
+
+    @Test
+    public void removesQueuedEvents() {
+        DispatchQueue<String> queue = new DispatchQueue<String>(1);
+        queue.offer("warning", null, EventPriority.HIGH, false);
+        Assert.assertFalse(queue.remove("other"));
+        Assert.assertTrue(queue.remove("warning"));
+        Assert.assertNull(queue.offer("info", null, EventPriority.LOW, false));
+    }
+
+    @Test
+    public void keepsTheOrderOfAnIncident() {
+        DispatchQueue<String> queue = new DispatchQueue<String>(10);
+        queue.offer("continues", "incident-1", EventPriority.LOW, false);
+        queue.offer("info", null, EventPriority.LOW, false);
+        queue.offer("close", "incident-1", EventPriority.NORMAL, true);
+        queue.offer("downgrade", "incident-2", EventPriority.HIGH, false);
+        queue.offer("upgrade", "incident-2", EventPriority.CRITICAL, false);
+        //the downgrade is raised along with the upgrade received after it
+        Assert.assertEquals("downgrade", queue.poll());
+        queue.done("incident-2");
+        Assert.assertEquals("upgrade", queue.poll());
+        queue.done("incident-2");
+        //the continue is raised along with the close received after it
+        Assert.assertEquals("continues", queue.poll());
+        queue.done("incident-1");
+        Assert.assertEquals("close", queue.poll());
+        queue.done("incident-1");
+        Assert.assertEquals("info", queue.poll());
+        Assert.assertNull(queue.poll());
+    }
+
+    @Test
+    public void holdsBackAnIncidentUntilItsEventIsDone() {
+        DispatchQueue<String> queue = new DispatchQueue<String>(10);
+        queue.offer("open", "incident-1", EventPriority.CRITICAL, false);
+        queue.offer("close", "incident-1", EventPriority.NORMAL, true);
+        queue.offer("info", null, EventPriority.LOW, false);
+        Assert.assertEquals("open", queue.poll());
+        //a second worker must not send the close while the open is being sent
+        Assert.assertEquals("info", queue.poll());
+        Assert.assertNull(queue.poll());
+        queue.done("incident-1");
+        Assert.assertEquals("close", queue.poll());
+    }
+
+    @Test
+    public void neverShedsClosesAndCancels() {
+        DispatchQueue<String> queue = new DispatchQueue<String>(2);
+        queue.offer("close-1", "incident-1", EventPriority.NORMAL, true);
+        queue.offer("info", null, EventPriority.LOW, false);
+        //a critical flood sheds the informational event, but not the close
+        Assert.assertEquals("info", queue.offer("critical-1", "incident-2", EventPriority.CRITICAL, false));
+        Assert.assertEquals("critical-2", queue.offer("critical-2", "incident-3", EventPriority.CRITICAL, false));
+        //nothing less urgent makes room, the close is queued beyond the capacity
+        Assert.assertNull(queue.offer("cancel", "incident-4", EventPriority.NORMAL, true));
+        Assert.assertEquals(3, queue.size());
+        Assert.assertEquals(0, queue.getShed(EventPriority.NORMAL));
+        Assert.assertEquals("critical-1", queue.poll());
+        Assert.assertEquals("close-1", queue.poll());
+        Assert.assertEquals("cancel", queue.poll());
+    }
+}
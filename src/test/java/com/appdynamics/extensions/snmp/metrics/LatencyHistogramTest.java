@@ -0,0 +1,61 @@
+package com.appdynamics.extensions.snmp.metrics;
+
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void bucketsCoverAllValuesInOrder() {
+        long previous = -1;
+        for (int bucket = 0; bucket < LatencyHistogram.BUCKETS; bucket++) {
+            long highest = LatencyHistogram.highestValueOf(bucket);
+            Assert.assertEquals(bucket, LatencyHistogram.bucketOf(previous + 1));
+            Assert.assertEquals(bucket, LatencyHistogram.bucketOf(highest));
+            previous = highest;
+        }
+    }
+
+    @Test
+    public void reportsPercentilesWithinTheBucketPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(TimeUnit.MICROSECONDS.toNanos(i));
+        }
+        Assert.assertEquals(1000, histogram.getCount());
+        Assert.assertEquals(TimeUnit.MICROSECONDS.toNanos(1000), histogram.getMaxNanos());
+        assertClose(TimeUnit.MICROSECONDS.toNanos(500), histogram.getValueAtPercentile(50));
+        assertClose(TimeUnit.MICROSECONDS.toNanos(990), histogram.getValueAtPercentile(99));
+        Assert.assertEquals(TimeUnit.MICROSECONDS.toNanos(1000), histogram.getValueAtPercentile(99.9));
+        Assert.assertEquals(TimeUnit.MICROSECONDS.toNanos(1000), histogram.getValueAtPercentile(100));
+    }
+
+    @Test
+    public void clampsValuesOutsideTheRange() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        Assert.assertEquals(0, histogram.getValueAtPercentile(50));
+        histogram.record(-5);
+        histogram.record(Long.MAX_VALUE);
+        Assert.assertEquals(0, histogram.getValueAtPercentile(50));
+        Assert.assertEquals(histogram.getMaxNanos(), histogram.getValueAtPercentile(100));
+    }
+
+    @Test
+    public void summarizesRecordedStages() {
+        PipelineStage stage = PipelineMetrics.stage("test.summary");
+        long start = System.nanoTime();
+        stage.record(start);
+        stage.recordFailure(start);
+        Assert.assertEquals(2, stage.getCount());
+        Assert.assertEquals(1, stage.getFailures());
+        Assert.assertSame(stage, PipelineMetrics.stage("test.summary"));
+        Assert.assertTrue(PipelineMetrics.summary().contains("test.summary n=2 failed=1 "));
+    }
+
+    private static void assertClose(long expected, long actual) {
+        Assert.assertTrue(expected + " ~ " + actual, Math.abs(expected - actual) <= expected / 16);
+    }
+}
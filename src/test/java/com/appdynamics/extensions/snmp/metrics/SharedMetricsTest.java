@@ -0,0 +1,161 @@
+package com.appdynamics.extensions.snmp.metrics;
+
+
+import com.google.common.io.Files;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+public class SharedMetricsTest {
+
+    private File dir;
+    private File file;
+
+    @Before
+    public void createDir() {
+        dir = Files.createTempDir();
+        file = new File(dir, "metrics.dat");
+    }
+
+    @After
+    public void deleteDir() {
+        file.delete();
+        dir.delete();
+    }
+
+    @Test
+    public void mappingsOfTheSameFileShareTheirCounters() throws IOException {
+        SharedMetrics first = SharedMetrics.map(file);
+        SharedMetrics second = SharedMetrics.map(file);
+        Assert.assertEquals(SharedMetrics.SIZE, file.length());
+        first.increment(SharedMetrics.Counter.EVENTS);
+        second.increment(SharedMetrics.Counter.EVENTS);
+        Assert.assertEquals(2, first.get(SharedMetrics.Counter.EVENTS));
+        Assert.assertEquals(0, second.get(SharedMetrics.Counter.PROCESSES));
+
+        int slot = first.slotOf("send.10.0.0.1:162");
+        Assert.assertEquals(slot, second.slotOf("send.10.0.0.1:162"));
+        Assert.assertTrue(slot != first.slotOf("send.10.0.0.2:162"));
+        first.record(slot, 1000, false);
+        second.record(slot, 3000, true);
+
+        SharedMetrics.Stage stage = stageNamed(SharedMetrics.map(file).getStages(), "send.10.0.0.1:162");
+        Assert.assertEquals(2, stage.count);
+        Assert.assertEquals(1, stage.failures);
+        Assert.assertEquals(4000, stage.totalNanos);
+    }
+
+    @Test
+    public void countsConcurrentUpdatesOnce() throws Exception {
+        final SharedMetrics[] mappings = {SharedMetrics.map(file), SharedMetrics.map(file)};
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < 4; i++) {
+            final SharedMetrics metrics = mappings[i % 2];
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int j = 0; j < 10000; j++) {
+                        metrics.increment(SharedMetrics.Counter.EVENTS);
+                        metrics.record(metrics.slotOf("stage" + (j % 10)), 1, false);
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Assert.assertEquals(40000, mappings[0].get(SharedMetrics.Counter.EVENTS));
+        List<SharedMetrics.Stage> stages = mappings[1].getStages();
+        Assert.assertEquals(10, stages.size());
+        for (SharedMetrics.Stage stage : stages) {
+            Assert.assertEquals(4000, stage.count);
+        }
+    }
+
+    @Test
+    public void truncatesLongStageNames() throws IOException {
+        SharedMetrics metrics = SharedMetrics.map(file);
+        StringBuilder name = new StringBuilder("send.");
+        while (name.length() < 100) {
+            name.append("very-long-host-name.");
+        }
+        int slot = metrics.slotOf(name.toString());
+        Assert.assertTrue(slot >= 0);
+        Assert.assertEquals(slot, metrics.slotOf(name.toString()));
+        Assert.assertEquals(SharedMetrics.MAX_NAME_LENGTH, metrics.getStages().get(0).name.length());
+    }
+
+    @Test
+    public void givesUpOnSlotsOfDeadProcesses() throws IOException {
+        SharedMetrics metrics = SharedMetrics.map(file);
+        //processes that died between claiming the slots and writing their names
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, SharedMetrics.SIZE);
+            buffer.order(ByteOrder.nativeOrder());
+            for (int slot = 0; slot < SharedMetrics.SLOTS; slot++) {
+                buffer.putLong(SharedMetrics.HEADER_SIZE + slot * SharedMetrics.SLOT_SIZE, -1);
+            }
+        } finally {
+            raf.close();
+        }
+        Assert.assertEquals(-1, metrics.slotOf("pdu.build"));
+        Assert.assertTrue(metrics.getStages().isEmpty());
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsFilesOfOtherVersions() throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.writeLong(42);
+        } finally {
+            raf.close();
+        }
+        SharedMetrics.map(file);
+    }
+
+    @Test
+    public void printsTotalsAndRates() throws IOException {
+        SharedMetrics metrics = SharedMetrics.map(file);
+        metrics.increment(SharedMetrics.Counter.EVENTS);
+        SharedMetricsReader.Snapshot before = new SharedMetricsReader.Snapshot(metrics);
+        metrics.increment(SharedMetrics.Counter.EVENTS);
+        metrics.record(metrics.slotOf("pdu.build"), 2000000, false);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        SharedMetricsReader.print(new PrintStream(bytes, true), metrics, new SharedMetricsReader.Snapshot(metrics), before);
+        String printed = bytes.toString();
+        Assert.assertTrue(printed, printed.matches("(?s).*\\nevents +2 .*"));
+        Assert.assertTrue(printed, printed.matches("(?s).*\\npdu\\.build +1 +0 +2\\.000 .*"));
+    }
+
+    private static SharedMetrics.Stage stageNamed(List<SharedMetrics.Stage> stages, String name) {
+        for (SharedMetrics.Stage stage : stages) {
+            if (stage.name.equals(name)) {
+                return stage;
+            }
+        }
+        throw new AssertionError(name + " not found in " + stages);
+    }
+}
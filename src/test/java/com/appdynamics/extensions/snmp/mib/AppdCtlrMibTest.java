@@ -0,0 +1,39 @@
+package com.appdynamics.extensions.snmp.mib;
+
+
+import com.appdynamics.extensions.snmp.EventTypeEnum;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class AppdCtlrMibTest {
+
+    @Test
+    public void mibVersion1SendsTheNotificationsNode() {
+        Assert.assertEquals("1.3.6.1.4.1.40684.1.1.1.500", AppdCtlrMib.getNotification(1, EventTypeEnum.POLICY_OPEN_CRITICAL).toString());
+        Assert.assertEquals("1.3.6.1.4.1.40684.1.1.1.500", AppdCtlrMib.getOtherEventNotification(1).toString());
+    }
+
+    @Test
+    public void mibVersion2SplitsOpenAndClosed() {
+        Assert.assertEquals("1.3.6.1.4.1.40684.1.1.1.500.1", AppdCtlrMib.getNotification(2, EventTypeEnum.POLICY_OPEN_WARNING).toString());
+        Assert.assertEquals("1.3.6.1.4.1.40684.1.1.1.500.1", AppdCtlrMib.getNotification(2, EventTypeEnum.POLICY_CONTINUES_CRITICAL).toString());
+        Assert.assertEquals("1.3.6.1.4.1.40684.1.1.1.500.2", AppdCtlrMib.getNotification(2, EventTypeEnum.POLICY_CANCELED_WARNING).toString());
+        Assert.assertEquals("1.3.6.1.4.1.40684.1.1.1.500.2", AppdCtlrMib.getNotification(2, EventTypeEnum.POLICY_CLOSE_CRITICAL).toString());
+        Assert.assertEquals("1.3.6.1.4.1.40684.1.1.1.500.3", AppdCtlrMib.getOtherEventNotification(2).toString());
+    }
+
+    @Test
+    public void mibVersion3HasANotificationPerEventType() {
+        Assert.assertEquals("1.3.6.1.4.1.40684.1.1.1.500.2", AppdCtlrMib.getNotification(3, EventTypeEnum.POLICY_OPEN_CRITICAL).toString());
+        Assert.assertEquals("1.3.6.1.4.1.40684.1.1.1.500.7", AppdCtlrMib.getNotification(3, EventTypeEnum.NON_POLICY_EVENT).toString());
+        Assert.assertEquals("1.3.6.1.4.1.40684.1.1.1.500.11", AppdCtlrMib.getNotification(3, EventTypeEnum.POLICY_CONTINUES_CRITICAL).toString());
+        Assert.assertEquals("1.3.6.1.4.1.40684.1.1.1.500.5", AppdCtlrMib.getNotification(3, null).toString());
+        Assert.assertEquals("1.3.6.1.4.1.40684.1.1.1.500.7", AppdCtlrMib.getOtherEventNotification(3).toString());
+    }
+
+    @Test
+    public void unknownMibVersionHasNoNotification() {
+        Assert.assertNull(AppdCtlrMib.getNotification(4, EventTypeEnum.POLICY_OPEN_WARNING));
+        Assert.assertNull(AppdCtlrMib.getOtherEventNotification(0));
+    }
+}